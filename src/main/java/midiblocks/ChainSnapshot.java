@@ -0,0 +1,156 @@
+package midiblocks;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
+
+import processingblocks.ProcessingBlock;
+
+/**
+ * This class is an immutable snapshot of the processing block chain, used
+ * for the undo history. It is a persistent list of block descriptions, kept
+ * in reverse order: the first node describes the last block of the chain, and
+ * points to the nodes for the blocks before it. Blocks are added at the end of
+ * the chain, so adding a block makes a single node that shares all the nodes 
+ * of the previous snapshot, and changing a block only makes new nodes from
+ * that block to the end of the chain.
+ * @author Lisa Liu-Thorrold
+ *
+ */
+public final class ChainSnapshot {
+	
+	// The empty chain
+	public static final ChainSnapshot EMPTY = new ChainSnapshot(null, null);
+	
+	private final ProcessingBlockSpec spec;
+	private final ChainSnapshot rest;
+	private final int size;
+	
+	private ChainSnapshot(ProcessingBlockSpec spec, ChainSnapshot rest) {
+		this.spec = spec;
+		this.rest = rest;
+		this.size = rest == null ? 0 : rest.size + 1;
+	}
+	
+	/**
+	 * Takes a snapshot of the chain
+	 * @param chain - The processing blocks, in chain order
+	 * @return The snapshot
+	 */
+	public static ChainSnapshot of(List<ProcessingBlock> chain) {
+		return EMPTY.changedFrom(chain, 0);
+	}
+	
+	/**
+	 * @param block - The block added to the end of the chain
+	 * @return The snapshot of the chain with the block added
+	 */
+	public ChainSnapshot append(ProcessingBlock block) {
+		return new ChainSnapshot(ProcessingBlockSpec.of(block), this);
+	}
+	
+	/**
+	 * Takes a snapshot of the chain after it was changed from the given 
+	 * position on. The nodes of this snapshot for the blocks before that 
+	 * position are shared.
+	 * @param chain - The processing blocks, in chain order
+	 * @param index - The position of the first block that changed
+	 * @return The snapshot
+	 */
+	public ChainSnapshot changedFrom(List<ProcessingBlock> chain, int index) {
+		ChainSnapshot snapshot = this;
+		while (snapshot.size > index) {
+			snapshot = snapshot.rest;
+		}
+		
+		ListIterator<ProcessingBlock> blocks = chain.listIterator(
+				snapshot.size);
+		while (blocks.hasNext()) {
+			snapshot = snapshot.append(blocks.next());
+		}
+		return snapshot;
+	}
+	
+	/**
+	 * Makes a new chain from the snapshot. The blocks are new blocks, with the
+	 * names and parameters the blocks of the chain had when the snapshot was
+	 * taken, so the blocks that are in use are not changed.
+	 * @return The processing blocks, in chain order, or null if a block could
+	 * 		   not be made
+	 */
+	public LinkedList<ProcessingBlock> restore() {
+		return restoreFrom(0);
+	}
+	
+	/**
+	 * Makes new blocks for the end of the chain of the snapshot, from the
+	 * given position on
+	 * @param index - The position of the first block to make
+	 * @return The processing blocks, in chain order, or null if a block could
+	 * 		   not be made
+	 */
+	public LinkedList<ProcessingBlock> restoreFrom(int index) {
+		LinkedList<ProcessingBlock> blocks = new LinkedList<>();
+		
+		for (ChainSnapshot node = this; node.size > index; node = node.rest) {
+			ProcessingBlock block = node.spec.make();
+			if (block == null) {
+				return null;
+			}
+			blocks.addFirst(block);
+		}
+		return blocks;
+	}
+	
+	/**
+	 * The nodes of two snapshots of the same chain are shared up to the first
+	 * block that was changed between them, so the blocks before it are the
+	 * same blocks in both.
+	 * @return The number of blocks at the start of the chain whose nodes are
+	 * 		   shared with the given snapshot
+	 */
+	public int sharedSize(ChainSnapshot other) {
+		ChainSnapshot node = this;
+		ChainSnapshot otherNode = other;
+		while (node.size > otherNode.size) {
+			node = node.rest;
+		}
+		while (otherNode.size > node.size) {
+			otherNode = otherNode.rest;
+		}
+		
+		// walk both lists together until they meet
+		while (node != otherNode) {
+			node = node.rest;
+			otherNode = otherNode.rest;
+		}
+		return node.size;
+	}
+	
+	/**
+	 * @return The number of nodes of this snapshot that are not shared with
+	 * 		   the given snapshot
+	 */
+	public int countNodesNotIn(ChainSnapshot other) {
+		return size - sharedSize(other);
+	}
+	
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * @return The description of the last block of the chain, or null if the
+	 * 		   chain is empty
+	 */
+	public ProcessingBlockSpec getLast() {
+		return spec;
+	}
+	
+	/**
+	 * @return The snapshot of the chain without its last block
+	 */
+	public ChainSnapshot getRest() {
+		return rest;
+	}
+}
@@ -0,0 +1,16 @@
+package midiblocks;
+
+/**
+ * The listener interface to allow objects to be driven by the ticks of the
+ * master clock. Listeners that follow the transport (eg. to send MIDI start
+ * and stop messages) can also be told when the clock starts and stops.
+ * @author Lisa Liu-Thorrold
+ *
+ */
+public interface ClockListener {
+	void tick(long tick);
+
+	default void clockStarted(long tick) { }
+
+	default void clockStopped() { }
+}
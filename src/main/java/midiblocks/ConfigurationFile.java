@@ -0,0 +1,272 @@
+package midiblocks;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import processingblocks.ProcessingBlock;
+import scales.Scale;
+
+/**
+ * This class reads and writes the binary format of configuration files and
+ * scale libraries. A file starts with a magic number, the version of the
+ * format and the kind of file, followed by typed records:
+ * 1. A chain: the MIDI source, the number of processing blocks, then the
+ *    name and two parameters of each block
+ * 2. A scale library: the number of scales, then the mode, root note and
+ *    notes of each scale
+ * A file is read in one pass, and every field is checked as it is read. A
+ * file that is not correct throws an IOException, and nothing is returned,
+ * so a file is never half applied.
+ * @author Lisa Liu-Thorrold
+ *
+ */
+public final class ConfigurationFile {
+
+	// The suffix of binary configuration files and scale libraries
+	public static final String SUFFIX = "midb";
+
+	// "MIDB"
+	private static final int MAGIC = 0x4D494442;
+
+	// Version of the format, increased whenever the records change
+	public static final int VERSION = 1;
+
+	// Kinds of file
+	private static final byte CHAIN = 1;
+	private static final byte SCALES = 2;
+
+	// Limits on the counts in a file, so a corrupt count fails straight away
+	private static final int MAX_BLOCKS = 1024;
+	private static final int MAX_SCALES = 4096;
+	private static final int MAX_NOTES = 128;
+
+	// A regular note, or a sharp/flat note
+	private static final Pattern NOTE = Pattern.compile(
+			"[A-G]|[A-G]#/[A-G]b");
+
+	private ConfigurationFile() { }
+
+	/**
+	 * The contents of a configuration file
+	 */
+	public static final class Chain {
+
+		private final String midiSource;
+
+		// The name and two parameters of each processing block
+		private final List<String[]> blocks;
+
+		public Chain(String midiSource, List<String[]> blocks) {
+			this.midiSource = midiSource;
+			this.blocks = Collections.unmodifiableList(blocks);
+		}
+
+		public String getMidiSource() {
+			return midiSource;
+		}
+
+		public List<String[]> getBlocks() {
+			return blocks;
+		}
+	}
+
+	/**
+	 * @param file - The file to check
+	 * @return true if the file has the suffix of the binary format
+	 */
+	public static boolean isBinary(File file) {
+		return file.getName().toLowerCase().endsWith("." + SUFFIX);
+	}
+
+	/**
+	 * Writes a processing block chain to a file
+	 * @param file - The file to write
+	 * @param midiSource - The name of the MIDI source
+	 * @param chain - The processing block chain
+	 * @throws IOException if the file cannot be written
+	 */
+	public static void writeChain(File file, String midiSource,
+			List<ProcessingBlock> chain) throws IOException {
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(file)))) {
+			writeHeader(out, CHAIN);
+			out.writeUTF(midiSource);
+			out.writeInt(chain.size());
+			for (ProcessingBlock block : chain) {
+				String[] parameters = block.getParameters().split(",", 2);
+				out.writeUTF(block.getName());
+				out.writeUTF(parameters[0]);
+				out.writeUTF(parameters.length > 1 ? parameters[1] : "");
+			}
+		}
+	}
+
+	/**
+	 * Reads a processing block chain from a file. The blocks are not made,
+	 * only their names and parameters are read.
+	 * @param file - The file to read
+	 * @return The MIDI source and processing blocks of the file
+	 * @throws IOException if the file cannot be read, or is not correct
+	 */
+	public static Chain readChain(File file) throws IOException {
+		try (DataInputStream in = new DataInputStream(
+				new BufferedInputStream(new FileInputStream(file)))) {
+			readHeader(in, CHAIN);
+			String midiSource = in.readUTF();
+			int count = readCount(in, MAX_BLOCKS);
+
+			List<String[]> blocks = new ArrayList<>(count);
+			for (int i = 0; i < count; i++) {
+				String name = in.readUTF();
+				if (name.isEmpty()) {
+					throw new IOException("Processing block " + i +
+							" has no name");
+				}
+				blocks.add(new String[] {name, in.readUTF(), in.readUTF()});
+			}
+
+			readEnd(in);
+			return new Chain(midiSource, blocks);
+		} catch (EOFException e) {
+			throw new IOException("Configuration file is cut short", e);
+		}
+	}
+
+	/**
+	 * Writes a scale library to a file
+	 * @param file - The file to write
+	 * @param scales - Each scale, and its notes starting from the root note
+	 * @throws IOException if the file cannot be written
+	 */
+	public static void writeScales(File file, Map<Scale, String[]> scales)
+			throws IOException {
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(file)))) {
+			writeHeader(out, SCALES);
+			out.writeInt(scales.size());
+			for (Map.Entry<Scale, String[]> entry : scales.entrySet()) {
+				out.writeUTF(entry.getKey().getMode());
+				out.writeUTF(entry.getKey().getRootNote());
+				out.writeByte(entry.getValue().length);
+				for (String note : entry.getValue()) {
+					out.writeUTF(note);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads a scale library from a file
+	 * @param file - The file to read
+	 * @return Each scale, and its notes starting from the root note, in the
+	 * order of the file
+	 * @throws IOException if the file cannot be read, or is not correct
+	 */
+	public static Map<Scale, String[]> readScales(File file)
+			throws IOException {
+		try (DataInputStream in = new DataInputStream(
+				new BufferedInputStream(new FileInputStream(file)))) {
+			readHeader(in, SCALES);
+			int count = readCount(in, MAX_SCALES);
+
+			Map<Scale, String[]> scales = new LinkedHashMap<>();
+			for (int i = 0; i < count; i++) {
+				String mode = in.readUTF();
+				String rootNote = readNote(in);
+
+				int size = in.readUnsignedByte();
+				if (size == 0 || size > MAX_NOTES) {
+					throw new IOException("Scale " + mode + " " + rootNote +
+							" has " + size + " notes");
+				}
+
+				String[] notes = new String[size];
+				for (int j = 0; j < size; j++) {
+					notes[j] = readNote(in);
+				}
+				scales.put(new Scale(mode, rootNote), notes);
+			}
+
+			readEnd(in);
+			return scales;
+		} catch (EOFException e) {
+			throw new IOException("Scales file is cut short", e);
+		}
+	}
+
+	/**
+	 * @param note - The name of a note
+	 * @return true if the note is a regular note or a sharp/flat note
+	 */
+	public static boolean isNote(String note) {
+		return NOTE.matcher(note).matches();
+	}
+
+	/*************************************************
+	 *  Helper methods
+	 *************************************************/
+
+	private static void writeHeader(DataOutputStream out, byte kind)
+			throws IOException {
+		out.writeInt(MAGIC);
+		out.writeShort(VERSION);
+		out.writeByte(kind);
+	}
+
+	/**
+	 * Checks the magic number, version and kind of a file
+	 */
+	private static void readHeader(DataInputStream in, byte kind)
+			throws IOException {
+		if (in.readInt() != MAGIC) {
+			throw new IOException("Not a MIDIBlocks file");
+		}
+		int version = in.readUnsignedShort();
+		if (version != VERSION) {
+			throw new IOException("Unsupported file version " + version);
+		}
+		if (in.readByte() != kind) {
+			throw new IOException(kind == CHAIN ? "Not a configuration file"
+					: "Not a scales file");
+		}
+	}
+
+	private static int readCount(DataInputStream in, int max)
+			throws IOException {
+		int count = in.readInt();
+		if (count < 0 || count > max) {
+			throw new IOException("Invalid count " + count);
+		}
+		return count;
+	}
+
+	private static String readNote(DataInputStream in) throws IOException {
+		String note = in.readUTF();
+		if (!isNote(note)) {
+			throw new IOException("Invalid note " + note);
+		}
+		return note;
+	}
+
+	/**
+	 * Checks that nothing follows the last record of a file
+	 */
+	private static void readEnd(DataInputStream in) throws IOException {
+		if (in.read() != -1) {
+			throw new IOException("Unexpected data at the end of the file");
+		}
+	}
+}
@@ -0,0 +1,157 @@
+package midiblocks;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * This class watches loaded configuration files and scale libraries, so that
+ * a file changed on disk is applied again while the program is running. The
+ * folder of every watched file is registered with a WatchService, and a
+ * daemon thread waits for changes to it. When a watched file changes, its
+ * handler is called on the watcher thread.
+ * @author Lisa Liu-Thorrold
+ *
+ */
+public class ConfigurationWatcher implements Runnable {
+
+	private WatchService watchService;
+
+	private Thread watcherThread;
+
+	// The handler of each watched file
+	private final Map<Path, Consumer<File>> handlers =
+			new ConcurrentHashMap<>();
+
+	// The last modified time of each watched file when it was last handled.
+	// Editors often write a file in several steps, which are only handled
+	// once.
+	private final Map<Path, Long> lastModified = new ConcurrentHashMap<>();
+
+	// The folders registered with the watch service
+	private final Map<Path, WatchKey> folders = new ConcurrentHashMap<>();
+
+	/**
+	 * Starts watching a file. A file that is already watched has its handler
+	 * replaced.
+	 * @param file - The file to watch
+	 * @param handler - Called with the file whenever it changes
+	 * @throws IOException if the folder of the file cannot be watched
+	 */
+	public synchronized void watch(File file, Consumer<File> handler)
+			throws IOException {
+		Path path = file.toPath().toAbsolutePath();
+		Path folder = path.getParent();
+
+		if (watchService == null) {
+			watchService = FileSystems.getDefault().newWatchService();
+			watcherThread = new Thread(this, "Configuration watcher");
+			watcherThread.setDaemon(true);
+			watcherThread.start();
+		}
+
+		if (!folders.containsKey(folder)) {
+			folders.put(folder, folder.register(watchService, ENTRY_MODIFY,
+					ENTRY_CREATE));
+		}
+
+		lastModified.put(path, file.lastModified());
+		handlers.put(path, handler);
+	}
+
+	/**
+	 * Stops watching a file
+	 * @param file - The file to stop watching
+	 */
+	public synchronized void unwatch(File file) {
+		Path path = file.toPath().toAbsolutePath();
+		handlers.remove(path);
+		lastModified.remove(path);
+
+		// Stop watching the folder once none of its files are watched
+		Path folder = path.getParent();
+		for (Path watched : handlers.keySet()) {
+			if (watched.getParent().equals(folder)) {
+				return;
+			}
+		}
+		WatchKey key = folders.remove(folder);
+		if (key != null) {
+			key.cancel();
+		}
+	}
+
+	/**
+	 * Stops watching every file, and stops the watcher thread
+	 */
+	public synchronized void close() {
+		handlers.clear();
+		lastModified.clear();
+		folders.clear();
+		if (watchService != null) {
+			try {
+				watchService.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			watchService = null;
+			watcherThread = null;
+		}
+	}
+
+	@Override
+	public void run() {
+		WatchService service = watchService;
+		while (true) {
+			WatchKey key;
+			try {
+				key = service.take();
+			} catch (InterruptedException | ClosedWatchServiceException e) {
+				return;
+			}
+
+			Path folder = (Path) key.watchable();
+			for (WatchEvent<?> event : key.pollEvents()) {
+				if (event.kind() == ENTRY_MODIFY || event.kind() == ENTRY_CREATE) {
+					changed(folder.resolve((Path) event.context()));
+				}
+			}
+			key.reset();
+		}
+	}
+
+	/*************************************************
+	 *  Helper methods
+	 *************************************************/
+
+	/**
+	 * Calls the handler of a file that has changed, if it is watched and has
+	 * been modified since it was last handled
+	 */
+	private void changed(Path path) {
+		Consumer<File> handler = handlers.get(path);
+		if (handler == null) {
+			return;
+		}
+
+		File file = path.toFile();
+		long modified = file.lastModified();
+		Long previous = lastModified.put(path, modified);
+		if (modified == 0 || (previous != null && previous == modified)) {
+			return;
+		}
+
+		handler.accept(file);
+	}
+}
@@ -0,0 +1,19 @@
+package midiblocks;
+
+/**
+ * The thread on which a listener of an EventEmitter is invoked
+ * @author Lisa Liu-Thorrold
+ *
+ */
+public enum DispatchLane {
+	
+	// On the thread that emitted the event, before emit returns
+	SYNC,
+	
+	// On the event dispatch thread, so the listener can update the GUI
+	EDT,
+	
+	// On a background thread shared by every emitter. Events are delivered
+	// in the order they are emitted, and are dropped if too many are waiting.
+	ASYNC
+}
@@ -1,6 +1,4 @@
 package midiblocks;
-import java.util.ArrayList;
-import java.util.Iterator;
 
 import javax.sound.midi.MidiDevice;
 import javax.sound.midi.MidiMessage;
@@ -29,7 +27,7 @@ public class DriverInputProcessor implements InputProcessor,
 	private final NoteDictionary noteDictionary;
 	
 	// Observers that are listening to events from this class/object 
-	private final ArrayList<Observer> observers = new ArrayList<>();
+	private final ObserverList observers = new ObserverList();
 
 	// To convert 127 keys to 88 keys
 	private static final int KEY_OFFSET = 8;
@@ -38,15 +36,27 @@ public class DriverInputProcessor implements InputProcessor,
 	// input receiver
 	private static final int NOTE_ON = 0x90;
 	private static final int NOTE_OFF = 0x80;
+	private static final int PROGRAM_CHANGE = 0xC0;
+	
+	// Locks the master clock to clock messages from the device
+	private final MidiClockSync midiClockSync;
+	
+	// The presets switched to by program change messages
+	private final PresetBank presetBank;
 
 	/**
 	 * This class connects the specified MIDI driver level input device
 	 * by the user and listens for MIDI events and sends them on to the
 	 * Processing Block Controller for further processing.
 	 * @param deviceName - The name of the MIDI driver level input device.
+	 * @param midiClockSync - Receives the MIDI clock messages from the device
+	 * @param presetBank - The presets switched to by program changes
 	 */
-	public DriverInputProcessor(String deviceName) {
+	public DriverInputProcessor(String deviceName, MidiClockSync midiClockSync,
+			PresetBank presetBank) {
 		noteDictionary = new NoteDictionary();
+		this.midiClockSync = midiClockSync;
+		this.presetBank = presetBank;
 		//try and establish a connection with the device
 		connect(deviceName);	
 	}
@@ -103,7 +113,9 @@ public class DriverInputProcessor implements InputProcessor,
 
 		/**
 		 * This method is invoked when a MIDI message is received.
-		 * This method only listens for Note On and Note Off messages.
+		 * This method listens for Note On and Note Off messages, program
+		 * changes and the MIDI clock messages (timing clock, start, stop and
+		 * continue).
 		 */
 		@Override
 		public void send(MidiMessage midiMessage, long timeStamp) {
@@ -114,10 +126,37 @@ public class DriverInputProcessor implements InputProcessor,
 				if((shortMessage.getCommand() == NOTE_ON) ||
 						(shortMessage.getCommand() == NOTE_OFF)) {
 					processMessage(shortMessage);
+				} else if (shortMessage.getCommand() == PROGRAM_CHANGE) {
+					if (presetBank != null) {
+						presetBank.select(shortMessage.getData1());
+					}
+				} else if (midiClockSync != null) {
+					processClockMessage(shortMessage);
 				}
 
 			}
 		}
+		
+		/**
+		 * This method passes MIDI clock messages on to the clock sync
+		 * @param shortMessage - The MIDI message to process
+		 */
+		private void processClockMessage(ShortMessage shortMessage) {
+			switch (shortMessage.getStatus()) {
+			case MidiClockOutput.TIMING_CLOCK:
+				midiClockSync.clockPulse(System.nanoTime());
+				break;
+			case MidiClockOutput.START:
+				midiClockSync.start();
+				break;
+			case MidiClockOutput.CONTINUE:
+				midiClockSync.continuePlayback();
+				break;
+			case MidiClockOutput.STOP:
+				midiClockSync.stop();
+				break;
+			}
+		}
 
 		/** 
 		 * This method processes the midi message received, and sends the
@@ -183,9 +222,7 @@ public class DriverInputProcessor implements InputProcessor,
 	 */
 	@Override
 	public void notifyObservers(Note note, Boolean noteOn) {
-		for (Observer observer : observers) {
-            observer.update(note, noteOn);
-		}
+		observers.notifyObservers(note, noteOn);
 	}
 
 	/**
@@ -209,16 +246,14 @@ public class DriverInputProcessor implements InputProcessor,
 	 */
 	@Override
 	public void removeAllObservers() {
-		Iterator<Observer> iterator = observers.iterator();
+		Observer[] removed = observers.clear();
 
-		while (iterator.hasNext()) {
-			Observer observer = iterator.next();
+		for (int i = 0; i < removed.length; i++) {
 			// stop processing block controller from continuing
 			// to process previous input (eg. gates/ arpeggiator)
-			if (observer instanceof ProcessingBlockController) {
-				((ProcessingBlockController) observer).changeMidiSource();
+			if (removed[i] instanceof ProcessingBlockController) {
+				((ProcessingBlockController) removed[i]).changeMidiSource();
 			}
-	         iterator.remove();
 		}
 	}
 
@@ -1,8 +1,10 @@
 package midiblocks;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.awt.EventQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 
 
@@ -16,64 +18,244 @@ import java.util.function.Consumer;
  * An EventEmitter is responsible for managing a set of listeners and publishing
  * events to those listeners when it is informed that the particular event
  * has occurred. The publication works in a simple multicast fashion.
+ * 
+ * The listeners of each event type are kept in an array, indexed by the id of
+ * the event type. The arrays are copied when a listener is added or removed,
+ * and never changed once they are published, so an event is emitted by a
+ * plain loop over an array, with no locking and no allocation.
+ * 
+ * A listener can be given a dispatch lane, so that it is invoked on the event
+ * dispatch thread or a background thread rather than the thread that emitted
+ * the event. It can also coalesce events, so that a burst of events waiting
+ * for it is delivered once. Slow listeners then cannot hold up the thread
+ * that emits the event, such as the clock or the MIDI input.
  */
 public class EventEmitter {
-	private Map<String, List<Consumer<Payload>>> _listeners = new HashMap<>();
+	
+	@SuppressWarnings("unchecked")
+	private static final Consumer<Payload>[] NO_LISTENERS = 
+			(Consumer<Payload>[]) new Consumer<?>[0];
+	
+	// Maximum number of events waiting for the background thread
+	private static final int ASYNC_CAPACITY = 1024;
+	
+	// The background thread of the ASYNC lane
+	private static final ThreadPoolExecutor asyncExecutor = 
+			new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, 
+					new ArrayBlockingQueue<>(ASYNC_CAPACITY), runnable -> {
+						Thread thread = new Thread(runnable, "Event dispatch");
+						thread.setDaemon(true);
+						return thread;
+					});
+	
+	// The listeners of each event type, indexed by the id of the type
+	private volatile Consumer<Payload>[][] _listeners = newTable(0);
 
 	/**
 	 * Adds a new listener to be invoked whenever an event of the specified
 	 * is emitted.
-	 * @param eventType - The name of the event to listen to
+	 * @param eventType - The event to listen to
 	 * @param listener - Function to invoke when the eventType is emitted.
+	 * @return The subscription, which removes the listener when unsubscribed
 	 */
-	public ListenerSubscription addListener(String eventType, 
+	public synchronized ListenerSubscription addListener(EventType eventType, 
 			Consumer<Payload> listener) {
-		if (_listeners.get(eventType) == null) {
-			_listeners.put(eventType, new ArrayList<>());
+		Consumer<Payload>[][] table = _listeners;
+		int id = eventType.getId();
+		
+		if (id >= table.length) {
+			Consumer<Payload>[][] grown = newTable(id + 1);
+			System.arraycopy(table, 0, grown, 0, table.length);
+			table = grown;
+		} else {
+			table = table.clone();
 		}
 
-		int key = _listeners.get(eventType).size();
-		_listeners.get(eventType).add(listener);
-
-		return new ListenerSubscription(this, eventType, key);
+		Consumer<Payload>[] listeners = table[id];
+		Consumer<Payload>[] added = newArray(listeners.length + 1);
+		System.arraycopy(listeners, 0, added, 0, listeners.length);
+		added[listeners.length] = listener;
+		table[id] = added;
+		
+		_listeners = table;
+		return new ListenerSubscription(this, eventType, listener);
+	}
+	
+	/**
+	 * Adds a new listener to be invoked on the given lane whenever an event of
+	 * the specified type is emitted.
+	 * @param eventType - The event to listen to
+	 * @param lane - The thread the listener is invoked on
+	 * @param coalesce - If true, an event emitted while an earlier event is
+	 * 					 still waiting to be delivered to the listener is
+	 * 					 dropped, as the listener has yet to see the latest
+	 * 					 state. This has no effect on the SYNC lane.
+	 * @param listener - Function to invoke when the eventType is emitted.
+	 * @return The subscription, which removes the listener when unsubscribed
+	 */
+	public ListenerSubscription addListener(EventType eventType, 
+			DispatchLane lane, boolean coalesce, Consumer<Payload> listener) {
+		if (lane == DispatchLane.SYNC) {
+			return addListener(eventType, listener);
+		}
+		return addListener(eventType, 
+				new LaneListener(listener, lane, coalesce));
+	}
+	
+	/**
+	 * Removes a listener of the specified event. If the listener was added
+	 * more than once, only one of them is removed.
+	 * @param eventType - The event the listener listens to
+	 * @param listener - The listener to remove
+	 * @return true if the listener was removed
+	 */
+	public synchronized boolean removeListener(EventType eventType, 
+			Consumer<Payload> listener) {
+		Consumer<Payload>[][] table = _listeners;
+		int id = eventType.getId();
+		if (id >= table.length) {
+			return false;
+		}
+		
+		Consumer<Payload>[] listeners = table[id];
+		for (int i = 0; i < listeners.length; i++) {
+			if (listeners[i] == listener || 
+					(listeners[i] instanceof LaneListener && 
+					((LaneListener) listeners[i]).listener == listener)) {
+				
+				// events still waiting for it are not delivered
+				if (listeners[i] instanceof LaneListener) {
+					((LaneListener) listeners[i]).removed = true;
+				}
+				
+				Consumer<Payload>[] removed = newArray(listeners.length - 1);
+				System.arraycopy(listeners, 0, removed, 0, i);
+				System.arraycopy(listeners, i + 1, removed, i, 
+						removed.length - i);
+				
+				table = table.clone();
+				table[id] = removed;
+				_listeners = table;
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Removes every listener of every event
+	 */
+	public synchronized void removeAllListeners() {
+		for (Consumer<Payload>[] listeners : _listeners) {
+			for (Consumer<Payload> listener : listeners) {
+				if (listener instanceof LaneListener) {
+					((LaneListener) listener).removed = true;
+				}
+			}
+		}
+		_listeners = newTable(0);
+	}
+	
+	/**
+	 * @param eventType - The event
+	 * @return The number of listeners of the event
+	 */
+	public int getListenerCount(EventType eventType) {
+		Consumer<Payload>[][] table = _listeners;
+		int id = eventType.getId();
+		return id < table.length ? table[id].length : 0;
 	}
 
 	/**
 	 * Emits an event of the given type. All registered handlers for that type
 	 * will be invoked.
-	 * @param eventType - The name of the event to emit
+	 * @param eventType - The event to emit
 	 */
-	public void emit(String eventType) {
-
-		List<Consumer<Payload>> listeners = _listeners.get(eventType);
-		if (listeners == null) {
+	public void emit(EventType eventType) {
+		Consumer<Payload>[][] table = _listeners;
+		int id = eventType.getId();
+		if (id >= table.length) {
 			return;
 		}
 
-		listeners.stream().filter(listener -> listener != null).forEach(
-				listener -> listener.accept(new Payload()));
+		Consumer<Payload>[] listeners = table[id];
+		for (int i = 0; i < listeners.length; i++) {
+			listeners[i].accept(Payload.EMPTY);
+		}
 	}
-
-}
-
-/**
- * Event payload
- */
-class Payload {}
-
-/**
- * A subscription token for identifying a particular listener subscription.
- */
-class ListenerSubscription {
-	private EventEmitter emitter;
-	private String eventType;
-	private int key;
-
-	public ListenerSubscription(EventEmitter emitter, String eventType, 
-			int key) {
-		this.emitter = emitter;
-		this.eventType = eventType;
-		this.key = key;
+	
+	/**
+	 * A listener that is invoked on the event dispatch thread or the
+	 * background thread
+	 */
+	private static final class LaneListener implements Consumer<Payload>, 
+			Runnable {
+		
+		private final Consumer<Payload> listener;
+		private final DispatchLane lane;
+		private final boolean coalesce;
+		
+		// Whether an event is waiting to be delivered
+		private final AtomicBoolean pending = new AtomicBoolean();
+		
+		private volatile boolean removed;
+		
+		private LaneListener(Consumer<Payload> listener, DispatchLane lane,
+				boolean coalesce) {
+			this.listener = listener;
+			this.lane = lane;
+			this.coalesce = coalesce;
+		}
+		
+		@Override
+		public void accept(Payload payload) {
+			if (coalesce && !pending.compareAndSet(false, true)) {
+				return;
+			}
+			
+			if (lane == DispatchLane.EDT) {
+				EventQueue.invokeLater(this);
+				return;
+			}
+			
+			try {
+				asyncExecutor.execute(this);
+			} catch (RejectedExecutionException e) {
+				// too many events are waiting, so this one is dropped
+				pending.set(false);
+			}
+		}
+		
+		@Override
+		public void run() {
+			// an event emitted from here on is delivered again
+			pending.set(false);
+			if (!removed) {
+				listener.accept(Payload.EMPTY);
+			}
+		}
+	}
+	
+	/*************************************************
+	 *  Helper methods
+	 *************************************************/
+	
+	@SuppressWarnings("unchecked")
+	private static Consumer<Payload>[] newArray(int length) {
+		return (Consumer<Payload>[]) new Consumer<?>[length];
+	}
+	
+	/**
+	 * @return A table with no listeners for any of its event types
+	 */
+	@SuppressWarnings("unchecked")
+	private static Consumer<Payload>[][] newTable(int length) {
+		Consumer<Payload>[][] table = 
+				(Consumer<Payload>[][]) new Consumer<?>[length][];
+		for (int i = 0; i < length; i++) {
+			table[i] = NO_LISTENERS;
+		}
+		return table;
 	}
 
 }
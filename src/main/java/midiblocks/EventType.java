@@ -0,0 +1,62 @@
+package midiblocks;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This class is the key of an event that can be emitted by an EventEmitter.
+ * Each event type is given a small id when it is made, which an emitter uses
+ * to index its listeners directly, so emitting an event does not look up its
+ * name. There is only ever one event type with a given name.
+ * @author Lisa Liu-Thorrold
+ *
+ */
+public final class EventType {
+
+	// Every event type made so far, by name
+	private static final Map<String, EventType> types = new HashMap<>();
+
+	private final String name;
+	private final int id;
+
+	private EventType(String name, int id) {
+		this.name = name;
+		this.id = id;
+	}
+
+	/**
+	 * Returns the event type with the given name, making it if it does not
+	 * exist yet. This is meant to be called once for each event, when the
+	 * event type constant is declared.
+	 * @param name - The name of the event
+	 * @return The event type
+	 */
+	public static synchronized EventType of(String name) {
+		EventType type = types.get(name);
+		if (type == null) {
+			type = new EventType(name, types.size());
+			types.put(name, type);
+		}
+		return type;
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+
+	/*************************************************
+	 * Getter methods
+	 *************************************************/
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return The index of the event type in the listeners of an emitter
+	 */
+	int getId() {
+		return id;
+	}
+}
@@ -1,7 +1,5 @@
 package midiblocks;
 import java.io.File;
-import java.util.ArrayList;
-import java.util.Iterator;
 
 import javax.sound.midi.MidiMessage;
 import javax.sound.midi.MidiSystem;
@@ -43,7 +41,7 @@ public class FileInputProcessor extends EventEmitter implements InputProcessor,
 	private volatile Boolean running;
 	
 	/* Observers that are listening to events from this class/object */
-	private final ArrayList<Observer> observers = new ArrayList<>();
+	private final ObserverList observers = new ObserverList();
 
 	/**
 	 * This class processes the MIDI file input specified by the user by the
@@ -217,9 +215,7 @@ public class FileInputProcessor extends EventEmitter implements InputProcessor,
 	 */
 	@Override
 	public void notifyObservers(Note note, Boolean noteOn) {
-		for (Observer observer : observers) {
-			observer.update(note, noteOn);
-		}
+		observers.notifyObservers(note, noteOn);
 	}
 
 	/**
@@ -248,17 +244,14 @@ public class FileInputProcessor extends EventEmitter implements InputProcessor,
 	@Override
 	public void removeAllObservers() {
 		
-		Iterator<Observer> iterator = observers.iterator();
+		Observer[] removed = observers.clear();
 
-		while (iterator.hasNext()){
-			Observer observer = iterator.next();
-			
+		for (int i = 0; i < removed.length; i++) {
 			// stop processing block controller from continuing
 			// to process previous input (eg. gates/ arpeggiator)
-			if (observer instanceof ProcessingBlockController) {
-				((ProcessingBlockController) observer).changeMidiSource();
+			if (removed[i] instanceof ProcessingBlockController) {
+				((ProcessingBlockController) removed[i]).changeMidiSource();
 			}
-			iterator.remove();
 		}
 	}
 	
@@ -32,7 +32,8 @@ public class InputProcessorFactory {
 			File midiFile = midiModel.getMidiSourceFile();
 			return new FileInputProcessor(midiFile);
 		} else {
-			return new DriverInputProcessor(inputName);
+			return new DriverInputProcessor(inputName,
+					midiModel.getMidiClockSync(), midiModel.getPresetBank());
 		}
 	}
 }
@@ -1,6 +1,4 @@
 package midiblocks;
-import java.util.ArrayList;
-import java.util.Iterator;
 
 import scales.Note;
 
@@ -17,7 +15,7 @@ public class KeyboardInputProcessor implements InputProcessor, Observer, Subject
 	private VirtualKeyboard virtualKeyboard;
 	
 	/* Observers that are listening to events from this class/object */
-	private final ArrayList<Observer> observers = new ArrayList<>();
+	private final ObserverList observers = new ObserverList();
 	
 	public KeyboardInputProcessor(VirtualKeyboard virtualKeyboard) {
 		this.setKeyboard(virtualKeyboard);
@@ -74,9 +72,7 @@ public class KeyboardInputProcessor implements InputProcessor, Observer, Subject
 	 */
 	@Override
 	public void notifyObservers(Note note, Boolean noteOn) {
-		for (Observer observer : observers) {
-            observer.update(note, noteOn);
-		}	
+		observers.notifyObservers(note, noteOn);	
 	}
 
 	/**
@@ -88,16 +84,14 @@ public class KeyboardInputProcessor implements InputProcessor, Observer, Subject
 	 */
 	@Override
 	public void removeAllObservers() {
-		Iterator<Observer> iterator = observers.iterator();
+		Observer[] removed = observers.clear();
 
-		while (iterator.hasNext()){
-			Observer observer = iterator.next();
+		for (int i = 0; i < removed.length; i++) {
 			// stop processing block controller from continuing
 			// to process previous input (eg. gates/ arpeggiator)
-			if (observer instanceof ProcessingBlockController) {
-				((ProcessingBlockController) observer).changeMidiSource();
+			if (removed[i] instanceof ProcessingBlockController) {
+				((ProcessingBlockController) removed[i]).changeMidiSource();
 			}
-	         iterator.remove();
 		}		
 	}
 	
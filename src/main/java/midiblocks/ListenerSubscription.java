@@ -0,0 +1,33 @@
+package midiblocks;
+
+import java.util.function.Consumer;
+
+/**
+ * A subscription token for identifying a particular listener subscription.
+ * The listener can be removed from its emitter through the subscription.
+ */
+public class ListenerSubscription {
+	private final EventEmitter emitter;
+	private final EventType eventType;
+	private final Consumer<Payload> listener;
+
+	public ListenerSubscription(EventEmitter emitter, EventType eventType, 
+			Consumer<Payload> listener) {
+		this.emitter = emitter;
+		this.eventType = eventType;
+		this.listener = listener;
+	}
+
+	/**
+	 * Removes the listener from the emitter. It is not invoked by any event
+	 * emitted after this returns.
+	 * @return false if the listener had already been removed
+	 */
+	public boolean unsubscribe() {
+		return emitter.removeListener(eventType, listener);
+	}
+
+	public EventType getEventType() {
+		return eventType;
+	}
+}
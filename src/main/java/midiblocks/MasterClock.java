@@ -0,0 +1,273 @@
+package midiblocks;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class represents the master clock of the application. A single thread
+ * produces PPQN sub-ticks per beat at the tempo set by the user, and every
+ * time based component (metronome, processing blocks) is driven from it.
+ * @author Lisa Liu-Thorrold
+ *
+ */
+public class MasterClock implements Runnable {
+
+	// Number of sub-ticks per quarter note (the same resolution as MIDI clock)
+	public static final int PPQN = 24;
+
+	// Number of beats in a bar
+	public static final int BEATS_PER_BAR = 4;
+
+	// Within this distance of the next tick, the thread spins rather than
+	// parks, as parking is not accurate enough for the last fraction of a ms
+	private static final long SPIN_THRESHOLD_NANOS = 200000L;
+
+	private static final long NANOS_PER_MINUTE = 60000000000L;
+
+	// Weight given to each new sample of the mean jitter
+	private static final double JITTER_SMOOTHING = 0.05;
+
+	// The beats per minute. Read by the clock thread on every tick, so a
+	// tempo change applies from the next tick onwards.
+	private volatile double tempo;
+
+	private volatile boolean running;
+
+	private volatile Thread clockThread;
+
+	// Time the last tick was produced, in nanoseconds
+	private volatile long lastTickTime;
+
+	// Correction to the time of the next tick, requested by an external
+	// clock source that this clock is following
+	private final AtomicLong pendingPhaseCorrection = new AtomicLong();
+
+	// Listeners that are driven by the ticks of this clock
+	private final CopyOnWriteArrayList<ClockListener> listeners;
+
+	// Number of sub-ticks since the clock was started
+	private volatile long tickCount;
+
+	// Measured lateness of the ticks, in nanoseconds
+	private volatile double meanJitter;
+	private volatile long maxJitter;
+
+	/**
+	 * @param tempo - The beats per minute specified by the user
+	 */
+	public MasterClock(double tempo) {
+		this.tempo = tempo;
+		listeners = new CopyOnWriteArrayList<>();
+	}
+
+	/**
+	 * Starts the clock thread from the beginning, if it is not already
+	 * running. Only one thread is ever created for the lifetime of a run of
+	 * the clock.
+	 */
+	public void start() {
+		startFrom(0);
+	}
+
+	/**
+	 * Starts the clock thread from the position it was stopped at.
+	 */
+	public void resume() {
+		startFrom(tickCount);
+	}
+
+	/**
+	 * Starts the clock thread at the given position
+	 * @param tick - The number of the first tick to produce
+	 */
+	private synchronized void startFrom(long tick) {
+		if (running) {
+			return;
+		}
+
+		running = true;
+		tickCount = tick;
+		pendingPhaseCorrection.set(0);
+
+		for (ClockListener listener : listeners) {
+			listener.clockStarted(tick);
+		}
+
+		clockThread = new Thread(this, "MasterClock");
+		clockThread.setDaemon(true);
+		clockThread.setPriority(Thread.MAX_PRIORITY);
+		clockThread.start();
+	}
+
+	/**
+	 * Stops the clock thread.
+	 */
+	public synchronized void stop() {
+		if (!running) {
+			return;
+		}
+
+		running = false;
+
+		if (clockThread != null) {
+			clockThread.interrupt();
+			clockThread = null;
+		}
+
+		for (ClockListener listener : listeners) {
+			listener.clockStopped();
+		}
+	}
+
+	/**
+	 * This method generates the ticks. The time of the next tick is kept as
+	 * whole nanoseconds plus a fractional remainder, so that the period of
+	 * tempos that do not divide evenly never drifts.
+	 */
+	@Override
+	public void run() {
+		Thread thisThread = Thread.currentThread();
+		long nextTickTime = System.nanoTime();
+		double fraction = 0;
+
+		// the clock may have been stopped and restarted on a new thread
+		// before this one noticed, so only run while this is the clock thread
+		while (running && clockThread == thisThread) {
+			waitUntil(nextTickTime);
+
+			if (!running || clockThread != thisThread) {
+				break;
+			}
+
+			long now = System.nanoTime();
+			lastTickTime = now;
+			recordJitter(now - nextTickTime);
+
+			long tick = tickCount;
+			for (ClockListener listener : listeners) {
+				try {
+					listener.tick(tick);
+				} catch (RuntimeException e) {
+					// a faulty listener must not stop the clock
+					e.printStackTrace();
+				}
+			}
+			tickCount = tick + 1;
+
+			// Work out when the next tick is due
+			double period = getTickPeriod();
+			long wholePeriod = (long) period;
+			fraction += period - wholePeriod;
+			if (fraction >= 1) {
+				wholePeriod++;
+				fraction -= 1;
+			}
+			nextTickTime += wholePeriod;
+
+			nextTickTime += pendingPhaseCorrection.getAndSet(0);
+
+			// We have fallen more than a beat behind (eg. the machine was
+			// suspended), so resynchronise rather than bursting ticks out
+			if (System.nanoTime() - nextTickTime > wholePeriod * PPQN) {
+				nextTickTime = System.nanoTime();
+				fraction = 0;
+			}
+		}
+	}
+
+	/**
+	 * Blocks the clock thread until the given time. Parks for most of the
+	 * wait, then spins for the last part to keep the jitter low.
+	 * @param deadline - The System.nanoTime() to wait until
+	 */
+	private void waitUntil(long deadline) {
+		long remaining = deadline - System.nanoTime();
+
+		while (remaining > 0 && running) {
+			if (remaining > SPIN_THRESHOLD_NANOS) {
+				LockSupport.parkNanos(remaining - SPIN_THRESHOLD_NANOS);
+			} else {
+				Thread.yield();
+			}
+			remaining = deadline - System.nanoTime();
+		}
+	}
+
+	/**
+	 * Adds the lateness of a tick to the jitter statistics
+	 * @param lateness - How late the tick was, in nanoseconds
+	 */
+	private void recordJitter(long lateness) {
+		long jitter = Math.abs(lateness);
+		meanJitter += (jitter - meanJitter) * JITTER_SMOOTHING;
+		if (jitter > maxJitter) {
+			maxJitter = jitter;
+		}
+	}
+
+	/*************************************************
+	 *  Getter/setter methods
+	 *************************************************/
+
+	/**
+	 * Sets the tempo of the clock. The change applies at the next tick, and
+	 * no thread is recreated.
+	 * @param tempo - The new beats per minute
+	 */
+	public void setTempo(double tempo) {
+		if (tempo > 0) {
+			this.tempo = tempo;
+		}
+	}
+
+	public double getTempo() { return tempo; }
+	public boolean isRunning() { return running; }
+	public long getTickCount() { return tickCount; }
+	public long getLastTickTime() { return lastTickTime; }
+
+	/**
+	 * Moves the next tick earlier (negative) or later (positive). Used to
+	 * keep the clock in phase with an external clock source.
+	 * @param nanos - The correction to apply to the next tick, in nanoseconds
+	 */
+	public void adjustPhase(long nanos) {
+		pendingPhaseCorrection.addAndGet(nanos);
+	}
+
+	/**
+	 * @return The time between two sub-ticks at the current tempo, in
+	 * 		   nanoseconds
+	 */
+	public double getTickPeriod() {
+		return NANOS_PER_MINUTE / (tempo * PPQN);
+	}
+
+	/**
+	 * @return The smoothed average lateness of the ticks, in nanoseconds
+	 */
+	public long getMeanJitter() { return (long) meanJitter; }
+
+	/**
+	 * @return The worst lateness of a tick since the statistics were reset,
+	 * 		   in nanoseconds
+	 */
+	public long getMaxJitter() { return maxJitter; }
+
+	public void resetJitterStatistics() {
+		meanJitter = 0;
+		maxJitter = 0;
+	}
+
+	/*************************************************
+	 *  Listener methods
+	 *************************************************/
+
+	public void addListener(ClockListener listener) {
+		listeners.addIfAbsent(listener);
+	}
+
+	public void removeListener(ClockListener listener) {
+		listeners.remove(listener);
+	}
+
+}
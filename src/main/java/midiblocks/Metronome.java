@@ -1,113 +1,137 @@
 package midiblocks;
 import java.awt.Canvas;
 import java.awt.Color;
+import java.awt.EventQueue;
 
-import org.jfugue.player.Player;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
 
 /**
- * This class represents a Metronome which has a visual and audio 
- * component.
+ * This class represents a Metronome which has a visual and audio
+ * component. It is driven by the master clock, and clicks on every beat with
+ * an accent on the first beat of the bar.
  * @author Lisa Liu-Thorrold
  *
  */
-public class Metronome implements Runnable {
-	
-	private boolean metronomeMuted;
-	private int count; //To keep count of the number of ticks. 
-	private final int tempo; // BPM
+public class Metronome implements ClockListener {
+
+	private volatile boolean metronomeMuted;
 	private final Canvas visualMetronome;
-	private final Player player;
-	
-	private static final String REGULAR_LONG_NOTE = "A";
-	private static final String TICK_LONG_NOTE = "D";
-	private static final String REGULAR_MEDIUM_NOTE = "Ai";
-	private static final String TICK_MEDIUM_NOTE = "Di";
-	private static final String REGULAR_SHORT_NOTE = "At";
-	private static final String TICK_SHORT_NOTE = "Dt";
-	
+
+	// The audio line, kept open for the life of the metronome. Null if no
+	// audio line is available, in which case only the visual metronome runs.
+	private SourceDataLine line;
+
+	// The clicks, rendered once as 16 bit mono PCM
+	private final byte[] accentClick;
+	private final byte[] tickClick;
+
+	// The visual beats, created once and run on the event dispatch thread
+	private final Runnable showAccent;
+	private final Runnable showTick;
+
+	private static final float SAMPLE_RATE = 44100f;
+
+	// Length of a click, short enough to fit in a beat at the highest tempo
+	private static final double CLICK_LENGTH = 0.05;
+
+	// Room in the line for a few clicks, so writing a click never blocks
+	private static final int LINE_BUFFER_CLICKS = 4;
+
+	// Pitch of the clicks (A5 for the accent, D5 for the other beats)
+	private static final double ACCENT_FREQUENCY = 880.0;
+	private static final double TICK_FREQUENCY = 587.33;
+
+	private static final int TICKS_PER_BAR =
+			MasterClock.PPQN * MasterClock.BEATS_PER_BAR;
+
 	/**
 	 * @param metronomeMuted - Whether the metronome is muted
 	 * @param visualMetronome - The visual component of the metronome
-	 * @param tempo - The beats per minute specified by the user
 	 */
-	public Metronome(boolean metronomeMuted, Canvas visualMetronome, int tempo) {
+	public Metronome(boolean metronomeMuted, Canvas visualMetronome) {
 		this.metronomeMuted = metronomeMuted;
 		this.visualMetronome = visualMetronome;
-		count = 1;
-		this.tempo = tempo;
-		player = new Player();
+
+		accentClick = renderClick(ACCENT_FREQUENCY, 1.0);
+		tickClick = renderClick(TICK_FREQUENCY, 0.6);
+
+		showAccent = () -> visualMetronome.setBackground(
+				this.metronomeMuted ? Color.PINK : Color.BLUE);
+		showTick = () -> visualMetronome.setBackground(Color.BLACK);
+
+		openLine();
 	}
-	
+
 	/**
-	 * This method is called upon with each beat of the metronome according
-	 * to the bpm set by the user.
+	 * This method is called upon with each tick of the master clock, and
+	 * clicks on each beat. The click is written to the open line from the
+	 * pre-rendered buffer, and the visual beat is handed to the event
+	 * dispatch thread, so nothing slow runs on the clock thread.
 	 */
 	@Override
-    public void run() {
-       if (metronomeMuted) {
-    	   runMuteMetronome();
-       } else {
-    	   runMetronome();
-       }
-    }
-    
-    /** 
-     * This method just runs the visual metronome. This method is called when
-     * the user has set the metronome to mute.
-     */
-    private void runMuteMetronome() {
-    	if (count > 3) {
-    		visualMetronome.setBackground(Color.PINK);
-    		count = 1;
-    	} else {
-    		visualMetronome.setBackground(Color.BLACK);
-    		count++;
-    	}	
-    }
-    
-    /** 
-     * This method run a visual an audio metronome.
-	 * and call appropriately so timing is good.
-     */
-    private void runMetronome() {
-    	
-    	// slow tempo can play a long note
-		if (tempo < 60) {
-			if (count > 3) {
-				visualMetronome.setBackground(Color.BLUE);
-				player.play(REGULAR_LONG_NOTE);
-				count = 1;
-			} else {
-				visualMetronome.setBackground(Color.BLACK);
-				player.play(TICK_LONG_NOTE);
-				count++;
-			}	
-			// play a quicker note
-		} else if (tempo >= 60 && tempo <= 100) {
-			if (count > 3) {
-				visualMetronome.setBackground(Color.BLUE);
-				player.play(REGULAR_MEDIUM_NOTE);
-				count = 1;
-			} else {
-				visualMetronome.setBackground(Color.BLACK);
-				player.play(TICK_MEDIUM_NOTE);
-				count++;
-			}
-		} else {
-			// play a very fast note
-			if (count > 3) {
-				visualMetronome.setBackground(Color.BLUE);
-				player.play(REGULAR_SHORT_NOTE);
-				count = 1;
-			} else {
-				visualMetronome.setBackground(Color.BLACK);
-				player.play(TICK_SHORT_NOTE);
-				count++;
+	public void tick(long tick) {
+		if (tick % MasterClock.PPQN != 0) {
+			return;
+		}
+
+		boolean accent = tick % TICKS_PER_BAR == 0;
+
+		if (!metronomeMuted && line != null) {
+			byte[] click = accent ? accentClick : tickClick;
+
+			// drop the click rather than block the clock if the line is full
+			if (line.available() >= click.length) {
+				line.write(click, 0, click.length);
 			}
 		}
 
-    }
-    
+		EventQueue.invokeLater(accent ? showAccent : showTick);
+	}
+
+	/**
+	 * Opens the audio line that the clicks are written to.
+	 */
+	private void openLine() {
+		AudioFormat format = new AudioFormat(SAMPLE_RATE, 16, 1, true, false);
+
+		try {
+			line = AudioSystem.getSourceDataLine(format);
+			line.open(format, accentClick.length * LINE_BUFFER_CLICKS);
+			line.start();
+		} catch (LineUnavailableException | IllegalArgumentException e) {
+			// no audio available, only run the visual metronome
+			e.printStackTrace();
+			line = null;
+		}
+	}
+
+	/**
+	 * Renders a click as a decaying sine wave
+	 * @param frequency - The pitch of the click, in Hz
+	 * @param volume - The volume of the click, between 0 and 1
+	 * @return The click as 16 bit signed little endian mono PCM
+	 */
+	private static byte[] renderClick(double frequency, double volume) {
+		int samples = (int) (SAMPLE_RATE * CLICK_LENGTH);
+		byte[] pcm = new byte[samples * 2];
+
+		for (int i = 0; i < samples; i++) {
+			double time = i / SAMPLE_RATE;
+			double envelope = Math.exp(-time / (CLICK_LENGTH / 5));
+			double sample = Math.sin(2 * Math.PI * frequency * time) *
+					envelope * volume;
+
+			short value = (short) (sample * Short.MAX_VALUE);
+			pcm[2 * i] = (byte) value;
+			pcm[2 * i + 1] = (byte) (value >> 8);
+		}
+
+		return pcm;
+	}
+
     /**
      * Sets the metronome to mute (ie. Only runs the visual metronome if
      * the parameter is true)
@@ -117,4 +141,4 @@ public class Metronome implements Runnable {
     	this.metronomeMuted = muteMetronome;
     }
 
- }
\ No newline at end of file
+ }
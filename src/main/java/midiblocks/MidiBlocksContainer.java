@@ -33,6 +33,58 @@ public class MidiBlocksContainer extends EventEmitter{
 	private static final int WINDOW_HEIGHT = 807;
 	
 	private static final String APPLICATION_NAME = "MIDIBlocks";
+	
+	/* Events emitted by the GUI components */
+	public static final EventType LOAD_CONFIGURATION = 
+			EventType.of("loadConfiguration");
+	public static final EventType LOAD_PRESET_BANK = 
+			EventType.of("loadPresetBank");
+	public static final EventType SAVE_CONFIGURATION = 
+			EventType.of("saveConfiguration");
+	public static final EventType SAVE_SCALES = 
+			EventType.of("saveScales");
+	public static final EventType MIDI_SOURCE_SELECTED = 
+			EventType.of("MIDISourceSelected");
+	public static final EventType MIDI_OUTPUT_SELECTED = 
+			EventType.of("MIDIOutputSelected");
+	public static final EventType CHANGE_PROCESSING_BLOCK = 
+			EventType.of("changeProcessingBlock");
+	public static final EventType LOAD_SCALES = 
+			EventType.of("loadScales");
+	public static final EventType CLEAR_CONFIGURATIONS = 
+			EventType.of("clearConfigurations");
+	public static final EventType SET_CONFIGURATIONS = 
+			EventType.of("setConfigurations");
+	public static final EventType CLEAR_PROCESSING_BLOCK = 
+			EventType.of("clearProcessingBlock");
+	public static final EventType ADD_PROCESSING_BLOCK = 
+			EventType.of("addProcessingBlock");
+	public static final EventType SHIFT_PROCESSING_BLOCK_UP = 
+			EventType.of("shiftProcessingBlockUp");
+	public static final EventType SHIFT_PROCESSING_BLOCK_DOWN = 
+			EventType.of("shiftProcessingBlockDown");
+	public static final EventType DELETE_PROCESSING_BLOCK = 
+			EventType.of("deleteProcessingBlock");
+	public static final EventType CLEAR_ALL_PROCESSING_BLOCKS = 
+			EventType.of("clearAllProcessingBlocks");
+	public static final EventType UNDO = 
+			EventType.of("undo");
+	public static final EventType SET_TEMPO = 
+			EventType.of("setTempo");
+	public static final EventType MUTE_PRESSED = 
+			EventType.of("mutePressed");
+	public static final EventType CHANGE_PROCESSING_BLOCK_PARAMETER = 
+			EventType.of("changeProcessingBlockParameter");
+	public static final EventType SAVE_MIDI_FILE = 
+			EventType.of("saveMidiFile");
+	public static final EventType START_MIDI_PLAY_BACK = 
+			EventType.of("startMidiPlayBack");
+	public static final EventType STOP_MIDI_PLAY_BACK = 
+			EventType.of("stopMidiPlayBack");
+	public static final EventType PREVIEW_PLAYBACK = 
+			EventType.of("previewPlayback");
+	public static final EventType PROFILE_PROCESSING_BLOCKS = 
+			EventType.of("profileProcessingBlocks");
 
 
 	/* GUI Combo boxes */
@@ -69,6 +121,9 @@ public class MidiBlocksContainer extends EventEmitter{
 
 	/* Mute checkbox for metronome */
 	private JCheckBox muteCheckBox;
+	
+	/* Menu item to measure the time spent in each processing block */
+	private JCheckBoxMenuItem profileMenuItem;
 
 	/* Visual metronome is a square canvas */
 	private Canvas metronome;
@@ -123,15 +178,37 @@ public class MidiBlocksContainer extends EventEmitter{
         /* Add a load configuration item in the File menu */
         JMenuItem loadConfigMenuItem = new JMenuItem("Load Configuration");
         loadConfigMenuItem.addActionListener(event -> 
-        		this.emit("loadConfiguration"));
+        		this.emit(LOAD_CONFIGURATION));
         fileMenu.add(loadConfigMenuItem);
     	
+        /* Add a load preset bank item in the File menu */
+        JMenuItem loadPresetsMenuItem = new JMenuItem("Load Preset Bank");
+        loadPresetsMenuItem.addActionListener(event -> 
+        		this.emit(LOAD_PRESET_BANK));
+        fileMenu.add(loadPresetsMenuItem);
+    	
         /* Add a save configuration item in the File menu */
         JMenuItem saveConfigMenuItem = new JMenuItem("Save Configuration");
         saveConfigMenuItem.addActionListener(event -> 
-        		this.emit("saveConfiguration"));
+        		this.emit(SAVE_CONFIGURATION));
         fileMenu.add(saveConfigMenuItem);
         
+        /* Add a save scales item in the File menu */
+        JMenuItem saveScalesMenuItem = new JMenuItem("Save Scales");
+        saveScalesMenuItem.addActionListener(event -> 
+        		this.emit(SAVE_SCALES));
+        fileMenu.add(saveScalesMenuItem);
+        
+        /* Add tools menu */
+        JMenu toolsMenu = new JMenu("Tools");
+        menuBar.add(toolsMenu);
+        
+        /* Add a profile processing blocks item in the Tools menu */
+        profileMenuItem = new JCheckBoxMenuItem("Profile Processing Blocks");
+        profileMenuItem.addActionListener(event -> 
+        		this.emit(PROFILE_PROCESSING_BLOCKS));
+        toolsMenu.add(profileMenuItem);
+        
         /*************************************************
     	 * Add all the JLabels onto the GUI
     	 *************************************************/
@@ -205,7 +282,7 @@ public class MidiBlocksContainer extends EventEmitter{
 		loadMidiDriverSources();
     	MIDISourceComboBox.setSelectedIndex(-1);
     	MIDISourceComboBox.addActionListener(event -> 
-    			this.emit("MIDISourceSelected"));
+    			this.emit(MIDI_SOURCE_SELECTED));
 		Component[] components = MIDISourceComboBox.getComponents(); {
 			for (Component component : components) {
 				component.addMouseListener(new MouseAdapter() {
@@ -235,12 +312,12 @@ public class MidiBlocksContainer extends EventEmitter{
 			}
 		}
 		midiOutputComboBox.addActionListener(event -> 
-		this.emit("MIDIOutputSelected"));
+		this.emit(MIDI_OUTPUT_SELECTED));
 		frame.getContentPane().add(midiOutputComboBox);
 
     	processingBlocksComboBox = new JComboBox<>();
     	processingBlocksComboBox.addActionListener(event -> 
-    	this.emit("changeProcessingBlock"));
+    	this.emit(CHANGE_PROCESSING_BLOCK));
     	processingBlocksComboBox.setFont(new Font("Helvetica Neue", 
     			Font.PLAIN, 13));
         processingBlocksComboBox.addItem("Arpeggiator");
@@ -278,45 +355,45 @@ public class MidiBlocksContainer extends EventEmitter{
     	 *************************************************/
     	JButton loadScalesButton = new JButton("Load Scales");
     	loadScalesButton.setBounds(1167, 213, 117, 29);
-    	loadScalesButton.addActionListener(event -> this.emit("loadScales"));
+    	loadScalesButton.addActionListener(event -> this.emit(LOAD_SCALES));
     	frame.getContentPane().add(loadScalesButton);
     	
     	JButton clearConfigButton = new JButton("Clear");
     	clearConfigButton.setBounds(1161, 383, 87, 29);
     	clearConfigButton.addActionListener(event -> 
-    			this.emit("clearConfigurations"));
+    			this.emit(CLEAR_CONFIGURATIONS));
     	frame.getContentPane().add(clearConfigButton);
     	
     	JButton setConfigButton = new JButton("Set");
     	setConfigButton.setBounds(1275, 383, 87, 29);
     	setConfigButton.addActionListener(event -> 
-    			this.emit("setConfigurations"));
+    			this.emit(SET_CONFIGURATIONS));
     	frame.getContentPane().add(setConfigButton);
     	
     	JButton clearProcessingBlockButton = new JButton("Clear");
     	clearProcessingBlockButton.setBounds(44, 267, 87, 29);
     	clearProcessingBlockButton.addActionListener(event -> 
-    			this.emit("clearProcessingBlock"));
+    			this.emit(CLEAR_PROCESSING_BLOCK));
     	frame.getContentPane().add(clearProcessingBlockButton);
     	
     	JButton addProcessingBlockButton = new JButton("Add");
     	addProcessingBlockButton.setBounds(143, 267, 87, 29);
     	addProcessingBlockButton.addActionListener(event -> 
-    			this.emit("addProcessingBlock"));
+    			this.emit(ADD_PROCESSING_BLOCK));
     	frame.getContentPane().add(addProcessingBlockButton);
     	
     	JButton shiftUpButton = new JButton("Shift Up");
     	shiftUpButton.setFont(new Font("Helvetica Neue", Font.PLAIN, 13));
     	shiftUpButton.setBounds(976, 120, 113, 29);
     	shiftUpButton.addActionListener(event -> 
-    			this.emit("shiftProcessingBlockUp"));
+    			this.emit(SHIFT_PROCESSING_BLOCK_UP));
     	frame.getContentPane().add(shiftUpButton);
     	
     	JButton shiftDownButton = new JButton("Shift Down");
     	shiftDownButton.setFont(new Font("Helvetica Neue", Font.PLAIN, 13));
     	shiftDownButton.setBounds(976, 163, 113, 29);
     	shiftDownButton.addActionListener(event -> 
-    			this.emit("shiftProcessingBlockDown"));
+    			this.emit(SHIFT_PROCESSING_BLOCK_DOWN));
     	frame.getContentPane().add(shiftDownButton);
     	
     	JButton deleteProcessingBlockButton = new JButton("Delete");
@@ -324,7 +401,7 @@ public class MidiBlocksContainer extends EventEmitter{
     			Font.PLAIN, 13));
     	deleteProcessingBlockButton.setBounds(976, 204, 113, 29);
     	deleteProcessingBlockButton.addActionListener(event -> 
-    			this.emit("deleteProcessingBlock"));
+    			this.emit(DELETE_PROCESSING_BLOCK));
     	frame.getContentPane().add(deleteProcessingBlockButton);
     	
     	JButton clearProcessingBlockListButton = new JButton("Clear");
@@ -332,19 +409,19 @@ public class MidiBlocksContainer extends EventEmitter{
     			Font.PLAIN, 13));
     	clearProcessingBlockListButton.setBounds(976, 248, 113, 29);
     	clearProcessingBlockListButton.addActionListener(event -> 
-    			this.emit("clearAllProcessingBlocks"));
+    			this.emit(CLEAR_ALL_PROCESSING_BLOCKS));
     	frame.getContentPane().add(clearProcessingBlockListButton);
     	
     	JButton undoButton = new JButton("Undo");
     	undoButton.setFont(new Font("Helvetica Neue", Font.PLAIN, 13));
     	undoButton.setBounds(976, 291, 113, 29);
-    	undoButton.addActionListener(event -> this.emit("undo"));
+    	undoButton.addActionListener(event -> this.emit(UNDO));
     	frame.getContentPane().add(undoButton);
    
     	
       	JButton setTempoButton = new JButton("Set Tempo");
     	setTempoButton.setBounds(1297, 163, 108, 29);
-    	setTempoButton.addActionListener(event -> this.emit("setTempo"));
+    	setTempoButton.addActionListener(event -> this.emit(SET_TEMPO));
     	frame.getContentPane().add(setTempoButton);
     	
     	/*************************************************
@@ -353,7 +430,7 @@ public class MidiBlocksContainer extends EventEmitter{
     	
     	/* Mute check box for metronome */
     	muteCheckBox = new JCheckBox("Mute");
-    	muteCheckBox.addActionListener(event -> this.emit("mutePressed"));
+    	muteCheckBox.addActionListener(event -> this.emit(MUTE_PRESSED));
     	muteCheckBox.setFont(new Font("Helvetica Neue", Font.PLAIN, 12));
     	muteCheckBox.setBounds(1177, 50, 64, 23);
 		muteCheckBox.setSelected(true);
@@ -370,7 +447,7 @@ public class MidiBlocksContainer extends EventEmitter{
     	JMenuItem changeParameter = new JMenuItem(
     			"Change Processing Block parameter");
     	changeParameter.addActionListener(event -> 
-    			this.emit("changeProcessingBlockParameter"));
+    			this.emit(CHANGE_PROCESSING_BLOCK_PARAMETER));
     	processingBlockPopupMenu.add(changeParameter);
     	
     	/* The list of processing blocks */
@@ -483,6 +560,8 @@ public class MidiBlocksContainer extends EventEmitter{
         gatesComboBox.addItem("Queue");
         gatesComboBox.addItem("First Hold");
         gatesComboBox.addItem("Last Hold");
+        gatesComboBox.addItem("Lowest Pitch");
+        gatesComboBox.addItem("Highest Pitch");
     	frame.getContentPane().add(gatesComboBox);
     	gatesComboBox.setVisible(false);
     	
@@ -494,7 +573,7 @@ public class MidiBlocksContainer extends EventEmitter{
     	saveMidiFileButton.setFont(new Font("Helvetica Neue", Font.PLAIN, 13));
     	saveMidiFileButton.setBounds(861, 349, 117, 29);
     	saveMidiFileButton.addActionListener(event -> 
-    			this.emit("saveMidiFile"));
+    			this.emit(SAVE_MIDI_FILE));
     	frame.getContentPane().add(saveMidiFileButton); 
     	saveMidiFileButton.setVisible(false);
 		
@@ -507,7 +586,7 @@ public class MidiBlocksContainer extends EventEmitter{
     			Font.PLAIN, 13));
     	startMidiPlaybackButton.setBounds(304, 349, 159, 29);
     	startMidiPlaybackButton.addActionListener(event -> 
-    			this.emit("startMidiPlayBack"));
+    			this.emit(START_MIDI_PLAY_BACK));
     	frame.getContentPane().add(startMidiPlaybackButton); 
     	startMidiPlaybackButton.setVisible(false);
     	
@@ -520,7 +599,7 @@ public class MidiBlocksContainer extends EventEmitter{
     			Font.PLAIN, 13));
     	stopMidiPlaybackButton.setBounds(482, 349, 155, 29);
     	stopMidiPlaybackButton.addActionListener(event -> 
-    			this.emit("stopMidiPlayBack"));
+    			this.emit(STOP_MIDI_PLAY_BACK));
     	frame.getContentPane().add(stopMidiPlaybackButton); 
     	stopMidiPlaybackButton.setVisible(false);
     	
@@ -528,7 +607,7 @@ public class MidiBlocksContainer extends EventEmitter{
     	previewPlaybackButton.setFont(new Font("Helvetica Neue", Font.PLAIN, 13));
     	previewPlaybackButton.setBounds(664, 349, 170, 29);
     	previewPlaybackButton.addActionListener( event -> 
-    			this.emit("previewPlayback"));
+    			this.emit(PREVIEW_PLAYBACK));
     	frame.getContentPane().add(previewPlaybackButton);
     	previewPlaybackButton.setVisible(false);
     	
@@ -549,6 +628,7 @@ public class MidiBlocksContainer extends EventEmitter{
 	public JLabel getVirtualKeyboardLabel() { return virtualKeyboardLabel; }
 	public JPanel getKeyboardPanel() { return keyboardPanel; }
 	public JCheckBox getMuteCheckBox() { return muteCheckBox; }
+	public JCheckBoxMenuItem getProfileMenuItem() { return profileMenuItem; }
 	public JTextField getPitchShiftField() { return pitchShiftTextField; }
 	public JTextField getGatesTextField() { return gatesTextField; }
     public JComboBox<String> getMidiOutputs() { return midiOutputComboBox; }
@@ -677,6 +757,23 @@ public class MidiBlocksContainer extends EventEmitter{
 			        -1);
 	}
 	
+	/**
+	 * This method displays an input dialog to allow the user to change how
+	 * often a clock driven processing block is stepped.
+	 * @param current - The subdivision the block is currently stepped at
+	 * @return The subdivision selected by the user. If cancelled, then return
+	 * 		   null
+	 */
+	public Subdivision showSubdivisionInputDialog(Subdivision current) {
+		return (Subdivision) JOptionPane.showInputDialog(frame,
+			        "Select how often the block is stepped: ",
+			        "Change Step Rate",
+			        JOptionPane.QUESTION_MESSAGE,
+			        null,
+			        Subdivision.values(),
+			        current);
+	}
+	
 	/**
 	 * This method displays an input dialog to allow the user to select the
 	 * usb device that they would like to connect to.
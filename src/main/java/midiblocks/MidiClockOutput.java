@@ -0,0 +1,64 @@
+package midiblocks;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * This class sends MIDI clock to its sinks from the master clock. As the
+ * master clock runs at the MIDI clock resolution of 24 PPQN, a timing clock
+ * message is sent on every tick, directly from the clock thread. The start,
+ * stop and continue messages follow the master clock's transport.
+ * @author Lisa Liu-Thorrold
+ *
+ */
+public class MidiClockOutput implements ClockListener {
+
+	// MIDI real time messages
+	public static final int TIMING_CLOCK = 0xF8;
+	public static final int START = 0xFA;
+	public static final int CONTINUE = 0xFB;
+	public static final int STOP = 0xFC;
+
+	// The outputs that are sent MIDI clock
+	private final CopyOnWriteArrayList<MidiClockSink> sinks =
+			new CopyOnWriteArrayList<>();
+
+	@Override
+	public void tick(long tick) {
+		for (MidiClockSink sink : sinks) {
+			sink.sendClockMessage(TIMING_CLOCK);
+		}
+	}
+
+	/**
+	 * Sends start if the clock starts from the beginning, otherwise continue
+	 */
+	@Override
+	public void clockStarted(long tick) {
+		int status = tick == 0 ? START : CONTINUE;
+		for (MidiClockSink sink : sinks) {
+			sink.sendClockMessage(status);
+		}
+	}
+
+	@Override
+	public void clockStopped() {
+		for (MidiClockSink sink : sinks) {
+			sink.sendClockMessage(STOP);
+		}
+	}
+
+	/*************************************************
+	 *  Sink methods
+	 *************************************************/
+
+	public void addSink(MidiClockSink sink) {
+		sinks.addIfAbsent(sink);
+	}
+
+	public void removeSink(MidiClockSink sink) {
+		sinks.remove(sink);
+	}
+
+	public boolean hasSink(MidiClockSink sink) {
+		return sinks.contains(sink);
+	}
+}
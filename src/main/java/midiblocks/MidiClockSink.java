@@ -0,0 +1,11 @@
+package midiblocks;
+
+/**
+ * The interface for outputs that can be sent MIDI real time clock messages
+ * (timing clock, start, stop and continue).
+ * @author Lisa Liu-Thorrold
+ *
+ */
+public interface MidiClockSink {
+	void sendClockMessage(int status);
+}
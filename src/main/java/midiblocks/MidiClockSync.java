@@ -0,0 +1,141 @@
+package midiblocks;
+
+/**
+ * This class locks the master clock to an external MIDI clock (eg. a drum
+ * machine). Incoming timing clock pulses are not used as ticks directly, as
+ * they arrive with the jitter of the MIDI driver. Instead, a phase locked
+ * loop steers the master clock: the smoothed interval between pulses sets
+ * the tempo, and part of the phase error between each pulse and the nearest
+ * master clock tick is corrected on the following tick. If the pulses stop
+ * without a stop message, the master clock carries on at the last tempo.
+ * @author Lisa Liu-Thorrold
+ *
+ */
+public class MidiClockSync {
+
+	private static final long NANOS_PER_MINUTE = 60000000000L;
+
+	// Pulses further apart than this (under 10 bpm) mean the external clock
+	// has dropped out, so the smoothing starts again
+	private static final long MAX_PULSE_INTERVAL = 250000000L;
+
+	// Loop gains. The frequency gain smooths the tempo over roughly the last
+	// beat of pulses, the phase gain removes a quarter of the phase error on
+	// every pulse.
+	private static final double FREQUENCY_GAIN = 0.05;
+	private static final double PHASE_GAIN = 0.25;
+
+	private static final long NONE = -1;
+
+	private final MasterClock masterClock;
+
+	private long lastPulseTime = NONE;
+
+	// Smoothed interval between pulses, in nanoseconds
+	private double smoothedInterval;
+
+	// A start or continue has been received, and the master clock is started
+	// on the next pulse so that the first tick lines up with it
+	private boolean waitingToStart;
+	private boolean resumeOnPulse;
+
+	/**
+	 * @param masterClock - The clock to lock to the external clock
+	 */
+	public MidiClockSync(MasterClock masterClock) {
+		this.masterClock = masterClock;
+	}
+
+	/**
+	 * Invoked for every timing clock message received.
+	 * @param time - The System.nanoTime() the pulse was received
+	 */
+	public synchronized void clockPulse(long time) {
+		if (waitingToStart) {
+			waitingToStart = false;
+			if (resumeOnPulse) {
+				masterClock.resume();
+			} else {
+				masterClock.start();
+			}
+			lastPulseTime = time;
+			return;
+		}
+
+		long interval = time - lastPulseTime;
+
+		if (lastPulseTime == NONE || interval <= 0 ||
+				interval > MAX_PULSE_INTERVAL) {
+			// first pulse, or the external clock dropped out
+			smoothedInterval = 0;
+			lastPulseTime = time;
+			return;
+		}
+
+		lastPulseTime = time;
+
+		// Frequency: follow the smoothed interval between pulses
+		if (smoothedInterval == 0) {
+			smoothedInterval = interval;
+		} else {
+			smoothedInterval += (interval - smoothedInterval) * FREQUENCY_GAIN;
+		}
+		masterClock.setTempo(NANOS_PER_MINUTE /
+				(smoothedInterval * MasterClock.PPQN));
+
+		// Phase: compare the pulse against the nearest master clock tick
+		if (masterClock.isRunning()) {
+			double period = masterClock.getTickPeriod();
+			double error = (time - masterClock.getLastTickTime()) % period;
+
+			// The pulse is nearer the next tick, so the clock is behind
+			if (error > period / 2) {
+				error -= period;
+			} else if (error < -period / 2) {
+				// The clock thread set the last tick after the pulse was
+				// timed, and the pulse is nearer the tick before it
+				error += period;
+			}
+
+			masterClock.adjustPhase((long) (error * PHASE_GAIN));
+		}
+	}
+
+	/**
+	 * Invoked when a start message is received. The master clock restarts
+	 * from the beginning on the next pulse.
+	 */
+	public synchronized void start() {
+		masterClock.stop();
+		waitingToStart = true;
+		resumeOnPulse = false;
+	}
+
+	/**
+	 * Invoked when a continue message is received. The master clock resumes
+	 * from where it was stopped on the next pulse.
+	 */
+	public synchronized void continuePlayback() {
+		masterClock.stop();
+		waitingToStart = true;
+		resumeOnPulse = true;
+	}
+
+	/**
+	 * Invoked when a stop message is received.
+	 */
+	public synchronized void stop() {
+		waitingToStart = false;
+		masterClock.stop();
+	}
+
+	/**
+	 * @return The tempo of the external clock, or 0 if it is not known yet
+	 */
+	public synchronized double getExternalTempo() {
+		if (smoothedInterval == 0) {
+			return 0;
+		}
+		return NANOS_PER_MINUTE / (smoothedInterval * MasterClock.PPQN);
+	}
+}
@@ -1,5 +1,6 @@
 package midiblocks;
 import java.awt.Canvas;
+import java.awt.EventQueue;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileOutputStream;
@@ -7,18 +8,12 @@ import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.TimeUnit;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.function.Consumer;
 
 import javax.sound.midi.MidiSystem;
 import javax.sound.midi.Sequence;
@@ -34,10 +29,13 @@ import javax.swing.filechooser.FileNameExtensionFilter;
 import org.jfugue.player.Player;
 
 import processingblocks.Arpeggiator;
+import processingblocks.Chordify;
 import processingblocks.Gates;
+import processingblocks.Monophonic;
 import processingblocks.PitchShift;
 import processingblocks.ProcessingBlock;
 import processingblocks.ProcessingBlockFactory;
+import processingblocks.ProcessingChain;
 import scales.Scale;
 
 
@@ -61,9 +59,14 @@ public class MidiController {
 	// Used to flag the metronome's starting state
 	private boolean hasStarted;
 	
-	// Used to schedule the metronome's timing
-	private ScheduledFuture<?> sf;
-
+	// Applies loaded files again when they change
+	private final ConfigurationWatcher configurationWatcher = 
+			new ConfigurationWatcher();
+	
+	// The loaded configuration and scales files, null if none are watched
+	private File configurationFile;
+	private File scalesFile;
+	
 	/**
 	 * This is the controller of the application in the MVC architecture
 	 * @param model - The application's model
@@ -77,35 +80,61 @@ public class MidiController {
 		initKeyboard();
 
 		// Add listeners for the GUI components 
-		view.addListener("saveConfiguration", event -> saveConfiguration());
-		view.addListener("loadConfiguration", event -> loadConfiguration());
-		view.addListener("loadScales", event -> loadScales());
-		view.addListener("clearConfigurations", event -> clearConfigurations());
-		view.addListener("setConfigurations", event -> setConfigurations());
-		view.addListener("addProcessingBlock", event -> addProcessingBlock());
-		view.addListener("mutePressed", event -> mutePressed());
-		view.addListener("MIDISourceSelected", event -> MIDISourceSelected());
-		view.addListener("MIDIOutputSelected", event -> MIDIOutputSelected());
-		view.addListener("saveMidiFile", event -> saveMidiFile());
-		view.addListener("undo", event -> undoProcessingBlockChange());
-		view.addListener("startMidiPlayBack", event -> startMidiPlayBack());
-		view.addListener("stopMidiPlayBack", event -> stopMidiPlayBack());
-		view.addListener("previewPlayback", event -> previewMidiPlayBack());
-		view.addListener("setTempo", event -> setTempo());
-		view.addListener("clearAllProcessingBlocks", event -> 
-				clearAllProcessingBlocks());
-		view.addListener("changeProcessingBlock", event -> 
-				changeProcessingBlock());
-		view.addListener("shiftProcessingBlockUp", event -> 
-				shiftProcessingBlockUp());
-		view.addListener("shiftProcessingBlockDown", event -> 
-				shiftProcessingBlockDown());
-		view.addListener("deleteProcessingBlock", event -> 
-				deleteProcessingBlock());
-		view.addListener("clearProcessingBlock", event -> 
-				clearProcessingBlock());
-		view.addListener("changeProcessingBlockParameter", event -> 
-		changeProcessingBlockParameter());
+		view.addListener(MidiBlocksContainer.SAVE_CONFIGURATION, 
+				event -> saveConfiguration());
+		view.addListener(MidiBlocksContainer.LOAD_CONFIGURATION, 
+				event -> loadConfiguration());
+		view.addListener(MidiBlocksContainer.LOAD_PRESET_BANK, 
+				event -> loadPresetBank());
+		view.addListener(MidiBlocksContainer.LOAD_SCALES, 
+				event -> loadScales());
+		view.addListener(MidiBlocksContainer.SAVE_SCALES, 
+				event -> saveScales());
+		view.addListener(MidiBlocksContainer.CLEAR_CONFIGURATIONS, 
+				event -> clearConfigurations());
+		view.addListener(MidiBlocksContainer.SET_CONFIGURATIONS, 
+				event -> setConfigurations());
+		view.addListener(MidiBlocksContainer.ADD_PROCESSING_BLOCK, 
+				event -> addProcessingBlock());
+		view.addListener(MidiBlocksContainer.MUTE_PRESSED, 
+				event -> mutePressed());
+		view.addListener(MidiBlocksContainer.MIDI_SOURCE_SELECTED, 
+				event -> MIDISourceSelected());
+		view.addListener(MidiBlocksContainer.MIDI_OUTPUT_SELECTED, 
+				event -> MIDIOutputSelected());
+		view.addListener(MidiBlocksContainer.SAVE_MIDI_FILE, 
+				event -> saveMidiFile());
+		view.addListener(MidiBlocksContainer.UNDO, 
+				event -> undoProcessingBlockChange());
+		view.addListener(MidiBlocksContainer.START_MIDI_PLAY_BACK, 
+				event -> startMidiPlayBack());
+		view.addListener(MidiBlocksContainer.STOP_MIDI_PLAY_BACK, 
+				event -> stopMidiPlayBack());
+		view.addListener(MidiBlocksContainer.PREVIEW_PLAYBACK, 
+				event -> previewMidiPlayBack());
+		view.addListener(MidiBlocksContainer.SET_TEMPO, 
+				event -> setTempo());
+		view.addListener(MidiBlocksContainer.CLEAR_ALL_PROCESSING_BLOCKS, 
+				event -> clearAllProcessingBlocks());
+		view.addListener(MidiBlocksContainer.CHANGE_PROCESSING_BLOCK, 
+				event -> changeProcessingBlock());
+		view.addListener(MidiBlocksContainer.SHIFT_PROCESSING_BLOCK_UP, 
+				event -> shiftProcessingBlockUp());
+		view.addListener(MidiBlocksContainer.SHIFT_PROCESSING_BLOCK_DOWN, 
+				event -> shiftProcessingBlockDown());
+		view.addListener(MidiBlocksContainer.DELETE_PROCESSING_BLOCK, 
+				event -> deleteProcessingBlock());
+		view.addListener(MidiBlocksContainer.CLEAR_PROCESSING_BLOCK, 
+				event -> clearProcessingBlock());
+		view.addListener(MidiBlocksContainer.CHANGE_PROCESSING_BLOCK_PARAMETER, 
+				event -> changeProcessingBlockParameter());
+		view.addListener(MidiBlocksContainer.PROFILE_PROCESSING_BLOCKS, 
+				event -> profileProcessingBlocks());
+		
+		// The chain may be replaced on the clock thread, and a burst of
+		// replacements only needs the list to be updated once
+		model.addListener(MidiModel.PROCESSING_BLOCKS_REPLACED, 
+				DispatchLane.EDT, true, event -> updateProcessingListView());
 		
 	}
 
@@ -114,10 +143,12 @@ public class MidiController {
 	 *************************************************/
 
 	/**
-	 * The format of a configuration file is:
+	 * The format of a configuration file is either:
 	 * 1. A CSV file
 	 * 2. The first line containing the name of the MIDI source
 	 * 3. Additional lines containing: Processing Block Name, Parameters
+	 * or the binary format read by ConfigurationFile. The file is watched
+	 * once it is loaded, and is applied again whenever it changes.
 	 */
 	private void loadConfiguration() {
 		
@@ -126,100 +157,224 @@ public class MidiController {
 		
 		JFileChooser fileChooser = new JFileChooser();
 		FileNameExtensionFilter filter = new FileNameExtensionFilter(
-				".csv files", "csv");
+				".csv and ." + ConfigurationFile.SUFFIX + " files", "csv",
+				ConfigurationFile.SUFFIX);
 		fileChooser.setFileFilter(filter);
 		fileChooser.setAcceptAllFileFilterUsed(false);
 		int result = fileChooser.showOpenDialog(fileChooser);
 		if (result == JFileChooser.APPROVE_OPTION) {
-			
 			File selectedFile = fileChooser.getSelectedFile();
-			BufferedReader bufferedReader = null;
-			String line;
-			String cvsSplitBy = ",";
-
-			try {
-				bufferedReader = new BufferedReader(new FileReader(selectedFile));
-				
-				// Used to indicate whether the MIDI input matches anything
-				// currently in the MIDI input combo box in the GUI 
-				boolean flag = false;
-
-				// Get the MIDI source
-				String configuration = bufferedReader.readLine();
 			
-				// Clear all the processing blocks current in the JList
-				clearAllProcessingBlocks();
-				
-				int size = view.getMidiSources().getModel().getSize();
-
-				// Set the MIDI source to be the one selected, if it is
-				// currently available as a MIDI source, otherwise set the
-				// selected MIDI input to nothing.
-				for (int i = 0; i < size; i++) {
-					if (view.getMidiSources().getModel().getElementAt(i).
-							equals(configuration)) {
-						view.getMidiSources().setSelectedIndex(i);
-						flag = true;
-						break;
-					}
-				}
+			if (applyConfiguration(selectedFile, false)) {
+				configurationFile = watchFile(configurationFile, selectedFile,
+						file -> applyConfiguration(file, true));
+			}
+		}
 
-				// no match was for for midi source to currently available
-				// midi sources, so set the selected MIDI source at empty
-				if (!flag) {
-					view.getMidiSources().setSelectedIndex(-1);
+		// Update the processing list block in the GUI to represent the 
+		// internal state.
+		updateProcessingListView();
+	}
+	
+	/**
+	 * This method reads a configuration file in full, and only then sets the
+	 * MIDI source and replaces the processing block chain with the blocks of
+	 * the file. The new chain is swapped in by the model on a clock tick.
+	 * @param file - A CSV or binary configuration file
+	 * @param reload - true if the file has changed since it was loaded, in
+	 * which case a file that is not correct leaves the current chain as it is
+	 * @return true if the file was applied
+	 */
+	private boolean applyConfiguration(File file, boolean reload) {
+		String midiSource;
+		LinkedList<ProcessingBlock> chain;
+		
+		try {
+			if (ConfigurationFile.isBinary(file)) {
+				ConfigurationFile.Chain configuration = 
+						ConfigurationFile.readChain(file);
+				midiSource = configuration.getMidiSource();
+				chain = makeProcessingBlocks(configuration.getBlocks());
+			} else {
+				try (BufferedReader bufferedReader = 
+						new BufferedReader(new FileReader(file))) {
+					// The first line is the MIDI source
+					midiSource = bufferedReader.readLine();
+					chain = readProcessingBlocks(bufferedReader);
 				}
+			}
+			
+			// Factory returns null, so invalid processing block
+			if (chain == null || midiSource == null) {
+				throw new IOException("Processing block not valid");
+			}
+		} catch (Exception e) {
+			if (reload) {
+				view.showMessageDialog("Configuration file " + file.getName()
+						+ " format not correct, the current configuration is "
+						+ "kept");
+				return false;
+			}
+			JOptionPane.showMessageDialog(null, "Configuration file "
+					+ "format not correct");
+			replaceProcessingBlocks(new LinkedList<>());
+			view.getMidiSources().setSelectedIndex(-1);
+			return false;
+		}
+		
+		selectMidiSource(midiSource);
+		replaceProcessingBlocks(chain);
+		if (reload) {
+			updateProcessingListView();
+		}
+		return true;
+	}
+	
+	/**
+	 * Set the MIDI source to be the one given, if it is currently available
+	 * as a MIDI source, otherwise set the selected MIDI input to nothing. The
+	 * selection is left alone if it is already that source.
+	 * @param midiSource - The name of the MIDI source
+	 */
+	private void selectMidiSource(String midiSource) {
+		int index = -1;
+		int size = view.getMidiSources().getModel().getSize();
+		
+		for (int i = 0; i < size; i++) {
+			if (view.getMidiSources().getModel().getElementAt(i).
+					equals(midiSource)) {
+				index = i;
+				break;
+			}
+		}
+		
+		if (view.getMidiSources().getSelectedIndex() != index) {
+			view.getMidiSources().setSelectedIndex(index);
+		}
+	}
 
-				// Process the remaining lines which contain the processing
-				// blocks
-				while ((line = bufferedReader.readLine()) != null) {
-					// use comma as separator
-					String[] processingBlocks = line.split(cvsSplitBy);		
-					ProcessingBlockFactory factory = new ProcessingBlockFactory();
+	/**
+	 * This method reads the processing blocks of a configuration file, one
+	 * block per line: Processing Block Name, Parameters. The blocks are made
+	 * into a new chain, which is not connected to anything.
+	 * @param bufferedReader - The file, after the line with the MIDI source
+	 * @return The new chain, or null if a processing block is not valid
+	 * @throws IOException if the file cannot be read
+	 */
+	private LinkedList<ProcessingBlock> readProcessingBlocks(
+			BufferedReader bufferedReader) throws IOException {
+		LinkedList<ProcessingBlock> chain = new LinkedList<>();
+		String line;
+		String cvsSplitBy = ",";
+		
+		while ((line = bufferedReader.readLine()) != null) {
+			// use comma as separator
+			String[] processingBlocks = line.split(cvsSplitBy);
+			if (processingBlocks.length < 3) {
+				throw new IOException("Line not correct: " + line);
+			}
 
-					System.out.println(Arrays.toString(processingBlocks));
+			ProcessingBlock block = makeProcessingBlock(processingBlocks);
+			
+			// Factory returns null, so invalid processing block
+			if(block == null) {
+				return null;
+			}
 
-					ProcessingBlock block = factory.makeProcessingBlock(
-							processingBlocks[0], processingBlocks[1],
-							processingBlocks[2]);
-					
-					// Factory returns null, so invalid processing block
-					if(block == null) {
-						JOptionPane.showMessageDialog(null, "Configuration file "
-								+ "format not correct");
-						model.clearProcessingBlocks();
-						view.getMidiSources().setSelectedIndex(-1);
-						return;
+			// valid block with valid parameters
+			chain.add(block);
+		}
+		
+		return chain;
+	}
+	
+	/**
+	 * This method makes the processing blocks read from a binary
+	 * configuration file into a new chain, which is not connected to anything.
+	 * @param blocks - The name and two parameters of each block
+	 * @return The new chain, or null if a processing block is not valid
+	 */
+	private LinkedList<ProcessingBlock> makeProcessingBlocks(
+			List<String[]> blocks) {
+		LinkedList<ProcessingBlock> chain = new LinkedList<>();
+		
+		for (String[] fields : blocks) {
+			ProcessingBlock block = makeProcessingBlock(fields);
+			if (block == null) {
+				return null;
+			}
+			chain.add(block);
+		}
+		
+		return chain;
+	}
+	
+	/**
+	 * This method makes a processing block from its name and parameters, as
+	 * stored in a configuration file
+	 * @param fields - The name, first parameter and second parameter
+	 * @return The processing block, or null if it is not valid
+	 */
+	private ProcessingBlock makeProcessingBlock(String[] fields) {
+		return new ProcessingBlockSpec(fields[0], fields[1], fields[2]).make();
+	}
+	
+	/**
+	 * This method loads a folder of configuration files into the preset
+	 * bank, so that they can be switched to by MIDI program changes. The 
+	 * files are given program numbers in the order of their names, starting
+	 * from 0. The MIDI source in each file is ignored.
+	 */
+	private void loadPresetBank() {
+		JFileChooser fileChooser = new JFileChooser();
+		fileChooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+		int result = fileChooser.showOpenDialog(fileChooser);
+		if (result != JFileChooser.APPROVE_OPTION) {
+			return;
+		}
+		
+		File[] files = fileChooser.getSelectedFile().listFiles(
+				(directory, name) -> name.toLowerCase().endsWith(".csv") ||
+				ConfigurationFile.isBinary(new File(name)));
+		if (files == null) {
+			return;
+		}
+		Arrays.sort(files);
+		
+		PresetBank presetBank = model.getPresetBank();
+		presetBank.clear();
+		
+		for (int program = 0; program < files.length && 
+				program < PresetBank.SIZE; program++) {
+			try {
+				// the MIDI source is skipped
+				LinkedList<ProcessingBlock> chain;
+				if (ConfigurationFile.isBinary(files[program])) {
+					chain = makeProcessingBlocks(ConfigurationFile.readChain(
+							files[program]).getBlocks());
+				} else {
+					try (BufferedReader bufferedReader = new BufferedReader(
+							new FileReader(files[program]))) {
+						bufferedReader.readLine();
+						chain = readProcessingBlocks(bufferedReader);
 					}
-
-					// valid block with valid parameters
-					model.getProcessingBlocks().add(block);
+				}
+				if (chain == null) {
+					throw new IllegalArgumentException();
 				}
 				
+				presetBank.setPreset(program, chain);
 			} catch (Exception e) {
-				JOptionPane.showMessageDialog(null, "Configuration file "
-						+ "format not correct");
-				model.clearProcessingBlocks();
-				view.getMidiSources().setSelectedIndex(-1);
-			} finally {
-				try {
-					assert bufferedReader != null;
-					bufferedReader.close();
-				} catch (IOException e) {
-					JOptionPane.showMessageDialog(null, "Configuration file"
-							+ " format not correct");
-				}
+				view.showMessageDialog("Configuration file format not "
+						+ "correct: " + files[program].getName());
 			}
 		}
-
-		// Update the processing list block in the GUI to represent the 
-		// internal state.
-		updateProcessingListView();
 	}
 
 	/**
 	 * This method saves the configurations currently set by the user into
-	 * a CSV file. The CSV File format is:
+	 * a CSV file, or a binary file if the file name ends with the binary
+	 * suffix. The CSV File format is:
 	 * Line 1: Midi Source
 	 * Line 2 onwards: Processing block, parameter1, parameter2
 	 */
@@ -233,132 +388,187 @@ public class MidiController {
 			return;
 		}
 
-		JFileChooser fileChooser = new JFileChooser();
-		FileNameExtensionFilter filter = new FileNameExtensionFilter(
-				".csv files", "csv");
-		fileChooser.setFileFilter(filter);
-		fileChooser.setAcceptAllFileFilterUsed(false);
-		int result = fileChooser.showSaveDialog(fileChooser);
-		FileWriter writer = null;
-		if (result == JFileChooser.APPROVE_OPTION) {
-			try {
-				File file = fileChooser.getSelectedFile();
-				
-				// Append suffix if user forgot to do so.
-				if(!fileChooser.getSelectedFile().getAbsolutePath().endsWith(".csv")) {
-					// Add csv suffix
-					file = new File(fileChooser.getSelectedFile() + ".csv");
-				}
-				
-				writer = new FileWriter(file);
-
-				/* Append the MIDI source */
-				String source = view.getMidiSources().getSelectedItem().toString();
-				writer.append(source);
-				writer.append(NEW_LINE_SEPARATOR);
-
-				/* Append all the processing blocks */
-				for (ProcessingBlock block : model.getProcessingBlocks()) {
-					writer.append(block.getName());
-					writer.append(COMMA_DELIMITER);
-					writer.append(block.getParameters());
+		File file = chooseSaveFile();
+		if (file == null) {
+			return;
+		}
+		
+		// The loaded file is not applied again when it is saved over
+		boolean watched = file.equals(configurationFile);
+		if (watched) {
+			configurationWatcher.unwatch(file);
+		}
+		
+		String source = view.getMidiSources().getSelectedItem().toString();
+		
+		try {
+			if (ConfigurationFile.isBinary(file)) {
+				ConfigurationFile.writeChain(file, source, 
+						model.getProcessingBlocks());
+			} else {
+				try (FileWriter writer = new FileWriter(file)) {
+					/* Append the MIDI source */
+					writer.append(source);
 					writer.append(NEW_LINE_SEPARATOR);
-				}
-			} catch (Exception e) {
-				view.showMessageDialog("Error saving configurations");
-			} finally {
-				try {
-					assert writer != null;
-					writer.flush();
-					writer.close();
-				} catch (IOException e) {
-					view.showMessageDialog("Error saving configurations");
+	
+					/* Append all the processing blocks */
+					for (ProcessingBlock block : model.getProcessingBlocks()) {
+						writer.append(block.getName());
+						writer.append(COMMA_DELIMITER);
+						writer.append(block.getParameters());
+						writer.append(NEW_LINE_SEPARATOR);
+					}
 				}
 			}
+		} catch (Exception e) {
+			view.showMessageDialog("Error saving configurations");
+		}
+		
+		if (watched) {
+			configurationFile = watchFile(null, file, 
+					changed -> applyConfiguration(changed, true));
 		}
 	}
 
 	/**
-	 * This method loads a CSV file containing the scales available to the
-	 * user. The CSV file is in the following format:
+	 * This method loads a file containing the scales available to the
+	 * user. The file is either in the binary format read by 
+	 * ConfigurationFile, or a CSV file in the following format:
 	 * The first column contains the mode of the key, followed by all
 	 * the notes in that scale starting with the root note of the key. 
 	 * The file will contain one full octave of notes as well as a second root 
 	 * note of the next octave as the final entry.
+	 * The file is watched once it is loaded, and is applied again whenever it
+	 * changes.
 	 */
 	private void loadScales() {
-
-		// Map of the scale name, root note, to array of notes 
-		Map<Scale, String[]> scalesMap =
-				new HashMap<>();
-
 		JFileChooser fileChooser = new JFileChooser();
 		FileNameExtensionFilter filter = new FileNameExtensionFilter(
-						".csv files", "csv");
+				".csv and ." + ConfigurationFile.SUFFIX + " files", "csv",
+				ConfigurationFile.SUFFIX);
 		fileChooser.setFileFilter(filter);
 		fileChooser.setAcceptAllFileFilterUsed(false);
 		int result = fileChooser.showOpenDialog(fileChooser);
 		if (result == JFileChooser.APPROVE_OPTION) {
 			File selectedFile = fileChooser.getSelectedFile();
-			BufferedReader bufferedReader = null;
-			String line;
-			String cvsSplitBy = ",";
-
-			try {
-				bufferedReader = new BufferedReader(new FileReader(selectedFile));
-
-				// Process the file
-				while ((line = bufferedReader.readLine()) != null) {
-					// use comma as separator
-					String[] scalesLine = line.split(cvsSplitBy);
-
-					String scaleName = scalesLine[0];
-					String rootNote = scalesLine[1];
-
-					Scale scale = new Scale(scaleName, rootNote);
-
-					// Copy the range of notes
-					String[] notes = Arrays.copyOfRange(scalesLine, 1, 
-							scalesLine.length - 1);
-
-					// Parse the notes to check for correct format
-					String[] parsedNotes = parseArray(notes);
-
-					// Put the scale, and it's notes into the map
-					scalesMap.put(scale, parsedNotes);
-
-					// Add the scale mode into the JCombo box if not already 
-					// there 
-					if (view.getModeModel().getIndexOf(scaleName) == -1) {
-						view.getModeModel().addElement(scaleName);
-					}
-
-					// Add the root note into the JCombo box if not already 
-					// there 
-					if (view.getRootNoteModel().getIndexOf(rootNote) == -1) {
-						view.getRootNoteModel().addElement(rootNote);
-					}
+			
+			if (applyScales(selectedFile, false)) {
+				scalesFile = watchFile(scalesFile, selectedFile, 
+						file -> applyScales(file, true));
+			}
+		}
+	}
+	
+	/**
+	 * This method reads a scales file in full, and only then sets the model's
+	 * allowable scales to the scales of the file. Nothing is changed if any
+	 * line of the file is not correct.
+	 * @param file - A CSV or binary scales file
+	 * @param reload - true if the file has changed since it was loaded, in
+	 * which case the notes of the globally selected scale are applied again
+	 * @return true if the file was applied
+	 */
+	private boolean applyScales(File file, boolean reload) {
+		
+		// Map of the scale name, root note, to array of notes 
+		Map<Scale, String[]> scalesMap;
+		
+		try {
+			if (ConfigurationFile.isBinary(file)) {
+				scalesMap = ConfigurationFile.readScales(file);
+			} else {
+				scalesMap = readScales(file);
+			}
+		} catch (Exception e) {
+			JOptionPane.showMessageDialog(null, "Error loading scales file " 
+					+ file.getName() + ": " + e.getMessage());
+			return false;
+		}
+		
+		for (Scale scale : scalesMap.keySet()) {
+			// Add the scale mode into the JCombo box if not already 
+			// there 
+			if (view.getModeModel().getIndexOf(scale.getMode()) == -1) {
+				view.getModeModel().addElement(scale.getMode());
+			}
 
-				}
-			} catch (Exception e) {
-				JOptionPane.showMessageDialog(null, "Error loading scales file");
-			} finally {
-				try {
-					assert bufferedReader != null;
-					bufferedReader.close();
-				} catch (IOException e) {
-					JOptionPane.showMessageDialog(null, "Error loading scales file");
-				}
+			// Add the root note into the JCombo box if not already 
+			// there 
+			if (view.getRootNoteModel().getIndexOf(scale.getRootNote()) == -1) {
+				view.getRootNoteModel().addElement(scale.getRootNote());
 			}
 		}
 
 		// Once all the scales have been loaded and processed, set the model's 
 		// allowable scales to this map.
 		model.setScales(scalesMap);
+		
+		if (reload) {
+			// The selected scale is set again, so that changes to its notes
+			// are heard straight away
+			Scale selectedScale = model.getSelectedScale();
+			if (selectedScale != null && scalesMap.containsKey(selectedScale)) {
+				model.setScale(selectedScale.getMode(), 
+						selectedScale.getRootNote());
+			}
+			return true;
+		}
 
 		// Make sure mode/note boxes have not selected anything automatically
 		view.getRootNoteComboBox().setSelectedIndex(-1);
 		view.getModeComboBox().setSelectedIndex(-1);
+		return true;
+	}
+	
+	/**
+	 * This method saves the scales available to the user into a CSV file, or
+	 * a binary file if the file name ends with the binary suffix. The CSV file
+	 * is in the format read by loadScales.
+	 */
+	private void saveScales() {
+		Map<Scale, String[]> scalesMap = model.getScales();
+		if (scalesMap == null || scalesMap.isEmpty()) {
+			view.showMessageDialog("No scales have been loaded");
+			return;
+		}
+		
+		File file = chooseSaveFile();
+		if (file == null) {
+			return;
+		}
+		
+		// The loaded file is not applied again when it is saved over
+		boolean watched = file.equals(scalesFile);
+		if (watched) {
+			configurationWatcher.unwatch(file);
+		}
+		
+		try {
+			if (ConfigurationFile.isBinary(file)) {
+				ConfigurationFile.writeScales(file, scalesMap);
+			} else {
+				try (FileWriter writer = new FileWriter(file)) {
+					for (Map.Entry<Scale, String[]> entry : 
+							scalesMap.entrySet()) {
+						String[] notes = entry.getValue();
+						writer.append(entry.getKey().getMode());
+						for (String note : notes) {
+							writer.append(",").append(note);
+						}
+						// the root note of the next octave
+						writer.append(",").append(notes[0]);
+						writer.append("\n");
+					}
+				}
+			}
+		} catch (Exception e) {
+			view.showMessageDialog("Error saving scales");
+		}
+		
+		if (watched) {
+			scalesFile = watchFile(null, file, 
+					changed -> applyScales(changed, true));
+		}
 	}
 
 	/**
@@ -427,31 +637,22 @@ public class MidiController {
 	}
 
 	/**
-	 * This method starts the metronome at the tempo specified by the user
+	 * This method starts the metronome at the tempo specified by the user.
+	 * The metronome is driven by the model's master clock. The clock is only
+	 * started once, a later change of tempo is applied by the clock at its
+	 * next tick.
 	 */
 	private void startMetronome() {
 
-		int tempo = model.getTempo();
-		int period = 60000/tempo; // the beats per minute specified by user
-		boolean metronomeMuted = model.isMetronomeMuted();
-		Canvas visualMetronome =  view.getMetronomeCanvas();
-		this.metronome = new Metronome(metronomeMuted, visualMetronome, tempo);
-
-		ScheduledExecutorService metronomeTimer = 
-				Executors.newSingleThreadScheduledExecutor();
-
 		// if the controller does not have a metronome started, then start it
-		// This calls the metronome at an interval of period which is the tempo
-		// set by the user.
 		if (!hasStarted) {
-			sf = metronomeTimer.scheduleAtFixedRate(metronome, 0, period, 
-					TimeUnit.MILLISECONDS);
-		} else {
-			// otherwise cancel the running metronome, and run a new one. This
-			// is for when the user sets a new tempo
-			sf.cancel(true);
-			sf = metronomeTimer.scheduleAtFixedRate(metronome, 0, period, 
-					TimeUnit.MILLISECONDS);
+			boolean metronomeMuted = model.isMetronomeMuted();
+			Canvas visualMetronome =  view.getMetronomeCanvas();
+			this.metronome = new Metronome(metronomeMuted, visualMetronome);
+
+			MasterClock clock = model.getMasterClock();
+			clock.addListener(metronome);
+			clock.start();
 		}
 		
 	}
@@ -481,7 +682,7 @@ public class MidiController {
 	private void addProcessingBlock() {
 		// Add state of processing blocks to the history, as this operation  
 		// affects the processing block chain 
-		addToHistory(model.getProcessingBlocks());
+		addToHistory();
 
 		ProcessingBlockFactory factory = new ProcessingBlockFactory();
 		ProcessingBlock block;
@@ -494,11 +695,11 @@ public class MidiController {
 			case "Arpeggiator":
 				parameter1 = view.getArpeggiatorType().getSelectedItem().toString();
 				block = factory.makeProcessingBlock("Arpeggiator", parameter1, parameter2);
-				model.getProcessingBlocks().add(block);
+				model.addProcessingBlock(block);
 				break;
 			case "Chordify":
 				block = factory.makeProcessingBlock("Chordify", parameter1, parameter2);
-				model.getProcessingBlocks().add(block);
+				model.addProcessingBlock(block);
 				break;
 			case "Gates":
 				parameter1 = view.getGatesComboBox().getSelectedItem().toString();
@@ -508,20 +709,18 @@ public class MidiController {
 					view.showMessageDialog("Notes per tick cannot be 0");
 					return;
 				}
-				model.getProcessingBlocks().add(block);
+				model.addProcessingBlock(block);
 				break;
 			case "Monophonic":
 				block = factory.makeProcessingBlock("Monophonic", parameter1, parameter2);
-				model.getProcessingBlocks().add(block);
+				model.addProcessingBlock(block);
 				break;
 			case "Pitch Shift":
 				parameter1 = view.getPitchShiftField().getText();
 				block = factory.makeProcessingBlock("PitchShift", parameter1, parameter2);
-				model.getProcessingBlocks().add(block);
+				model.addProcessingBlock(block);
 				break;
 			}
-			
-			model.connectProcessingBlocks();
 
 		} catch (Exception e) {
 			view.showMessageDialog("Need to select type of processing block, "
@@ -540,7 +739,7 @@ public class MidiController {
 	private void shiftProcessingBlockUp() {
 		// Add state of processing blocks to the history, as this operation  
 		// affects the processing block chain 
-		addToHistory(model.getProcessingBlocks());
+		addToHistory();
 		
 		int i = view.getProcessingBlockListBox().getSelectedIndex();
 		
@@ -549,15 +748,8 @@ public class MidiController {
 			return;
 		}
 		
-		// Do the shift
-		ProcessingBlock temp = model.getProcessingBlocks().get(i - 1);
-		ProcessingBlock toShift = model.getProcessingBlocks().get(i);
-		model.getProcessingBlocks().set(i - 1, toShift);
-		model.getProcessingBlocks().set(i, temp);
-		
-		
-		// Reconnect the processing blocks
-		model.connectProcessingBlocks();
+		// Do the shift, and reconnect the processing blocks around it
+		model.swapProcessingBlocks(i - 1);
 		
 		// Update the GUI
 		updateProcessingListView();
@@ -570,7 +762,7 @@ public class MidiController {
 	private void shiftProcessingBlockDown() {
 		// Add state of processing blocks to the history, as this operation  
 	    // affects the processing block chain 
-		addToHistory(model.getProcessingBlocks());
+		addToHistory();
 		
 		int i = view.getProcessingBlockListBox().getSelectedIndex();
 		
@@ -579,14 +771,8 @@ public class MidiController {
 			return;
 		}
 		
-		// Do the shift
-		ProcessingBlock temp = model.getProcessingBlocks().get(i + 1);
-		ProcessingBlock toShift = model.getProcessingBlocks().get(i);
-		model.getProcessingBlocks().set(i + 1, toShift);
-		model.getProcessingBlocks().set(i, temp);
-		
-		// Reconnect the processing blocks
-		model.connectProcessingBlocks();
+		// Do the shift, and reconnect the processing blocks around it
+		model.swapProcessingBlocks(i);
 		
 		// Update the GUI 
 		updateProcessingListView();
@@ -599,7 +785,7 @@ public class MidiController {
 	private void deleteProcessingBlock() {
 		// Add state of processing blocks to the history, as this operation  
 		// affects the processing block chain 
-		addToHistory(model.getProcessingBlocks());
+		addToHistory();
 		
 		int i = view.getProcessingBlockListBox().getSelectedIndex();
 		
@@ -608,15 +794,23 @@ public class MidiController {
 			return;
 		}
 		
-		model.getProcessingBlocks().remove(i);
-		
-		// Reconnect the processing blocks
-		model.connectProcessingBlocks();
+		// Remove the block, and reconnect the processing blocks around it
+		model.removeProcessingBlock(i);
 		
 		// Update the GUI
 		updateProcessingListView();
 	}
 
+	/**
+	 * This method replaces the model's processing block chain with a new
+	 * chain, keeping the current chain in the history
+	 * @param chain - The new processing block chain
+	 */
+	private void replaceProcessingBlocks(LinkedList<ProcessingBlock> chain) {
+		addToHistory();
+		model.replaceProcessingBlocks(chain);
+	}
+
 	/** 
 	 * This method deletes all the processing blocks currently in the model's 
 	 * processing block chain.
@@ -624,8 +818,8 @@ public class MidiController {
 	private void clearAllProcessingBlocks() {
 		// Add state of processing blocks to the history, as this operation  
 		// affects the processing block chain 
-		addToHistory(model.getProcessingBlocks());
-		model.getProcessingBlocks().clear();
+		addToHistory();
+		model.clearProcessingBlocks();
 		model.connectProcessingBlocks();
 		updateProcessingListView();
 	}
@@ -641,7 +835,6 @@ public class MidiController {
 	 */
 	private void undoProcessingBlockChange() {
 		model.undo();
-		model.connectProcessingBlocks();
 		updateProcessingListView();
 	}
 
@@ -896,7 +1089,8 @@ public class MidiController {
 	 */
 	private void changeProcessingBlockParameter() {
 		
-		boolean changeMade = false;
+		// Sets the new parameters, once they have all been entered
+		Runnable change = null;
 		
 		// Get the type of processing block parameter
 		int i = view.getProcessingBlockListBox().getSelectedIndex();
@@ -908,13 +1102,30 @@ public class MidiController {
 			if (newType == null) {
 				// Do nothing 
 				return;
-			} else {
-				//Change the parameter of the processing block
-				if (!((Arpeggiator) toChange).getType().equals(newType)) {					
-					addToHistory(model.getProcessingBlocks());
-					((Arpeggiator) toChange).setArpeggiatorType(newType);
-					changeMade = true;
-				}
+			}
+			
+			Subdivision newRate = view.showSubdivisionInputDialog(
+					((Arpeggiator) toChange).getSubdivision());
+			if (newRate == null) {
+				return;
+			}
+			
+			boolean typeChanged = 
+					!((Arpeggiator) toChange).getType().equals(newType);
+			boolean rateChanged = 
+					newRate != ((Arpeggiator) toChange).getSubdivision();
+			
+			//Change the parameters of the processing block
+			if (typeChanged || rateChanged) {
+				change = () -> {
+					if (typeChanged) {
+						((Arpeggiator) toChange).setArpeggiatorType(newType);
+					}
+					
+					if (rateChanged) {
+						((Arpeggiator) toChange).setSubdivision(newRate);
+					}
+				};
 			}
 		} 
 		
@@ -926,10 +1137,8 @@ public class MidiController {
 				return;
 			} else {
 				if(((PitchShift) toChange).getPitch() != pitch) {
-					addToHistory(model.getProcessingBlocks());
 					//Change the parameter of the processing block
-					((PitchShift) toChange).setPitch(pitch);
-					changeMade = true;
+					change = () -> ((PitchShift) toChange).setPitch(pitch);
 				}
 			}
 		}
@@ -941,12 +1150,20 @@ public class MidiController {
 			gatesComboBox.addItem("Queue");
 			gatesComboBox.addItem("First Hold");
 			gatesComboBox.addItem("Last Hold");
+			gatesComboBox.addItem("Lowest Pitch");
+			gatesComboBox.addItem("Highest Pitch");
+			JComboBox<Subdivision> subdivisionComboBox = 
+					new JComboBox<>(Subdivision.values());
+			subdivisionComboBox.setSelectedItem(
+					((Gates) toChange).getSubdivision());
 
 			JPanel gatesPanel = new JPanel();
 			gatesPanel.add(new JLabel("Gates mode:"));
 			gatesPanel.add(gatesComboBox);
 			gatesPanel.add(new JLabel("Notes per tick:"));
 			gatesPanel.add(notesPerTickTextField);
+			gatesPanel.add(new JLabel("Step:"));
+			gatesPanel.add(subdivisionComboBox);
 
 			int result = JOptionPane.showConfirmDialog(null, gatesPanel, 
 					"Enter new gate parameter values", JOptionPane.OK_CANCEL_OPTION);
@@ -968,30 +1185,72 @@ public class MidiController {
 				}
 				
 				String newMode = gatesComboBox.getSelectedItem().toString();
+				Subdivision newRate = 
+						(Subdivision) subdivisionComboBox.getSelectedItem();
 				
 				// Check that a change has actually been made
 				Double notesPerTickRounded = 
 						Math.round(notesPerTick * 100.0) / 100.0;
 				
-				if (!notesPerTickRounded.equals(((Gates) toChange).getNotesPerTick())) {
-						((Gates) toChange).setGatesNotesPerTick(notesPerTickRounded);
-					changeMade = true;
-				}
-				
-				if (!newMode.equals(((Gates) toChange).getMode())) {
-					((Gates) toChange).setGatesMode(newMode);
-					changeMade = true;
+				if (!notesPerTickRounded.equals(((Gates) toChange).getNotesPerTick())
+						|| !newMode.equals(((Gates) toChange).getMode())
+						|| newRate != ((Gates) toChange).getSubdivision()) {
+					change = () -> {
+						Gates gates = (Gates) toChange;
+						if (!notesPerTickRounded.equals(gates.getNotesPerTick())) {
+							gates.setGatesNotesPerTick(notesPerTickRounded);
+						}
+						gates.setGatesMode(newMode);
+						gates.setSubdivision(newRate);
+					};
 				}
 				
 			}
 		}
 
-		if (changeMade) {
-			// Alert processing blocks of the change.
-			model.connectProcessingBlocks();
+		if (change != null) {
+			// The state of the chain is added to the history, and the
+			// processing blocks are alerted of the change. Nothing is changed
+			// if the chain was replaced while the parameters were entered.
+			model.changeProcessingBlock(toChange, change);
 		}
 	}
 	
+	/**
+	 * This method starts or stops measuring the time spent in each processing
+	 * block. When the measuring stops, the average time each block took per
+	 * note is shown to the user.
+	 */
+	private void profileProcessingBlocks() {
+		boolean profiling = view.getProfileMenuItem().isSelected();
+		model.setProfiling(profiling);
+		
+		if (profiling) {
+			return;
+		}
+		
+		ProcessingChain chain = model.getProcessingChain();
+		if (chain.size() == 0) {
+			view.showMessageDialog("There are no processing blocks to profile");
+			return;
+		}
+		
+		StringBuilder profile = new StringBuilder(
+				"Average time per note in each processing block:\n");
+		for (int i = 0; i < chain.size(); i++) {
+			long notes = chain.getStageNotes(i);
+			profile.append(chain.getBlock(i)).append(": ");
+			if (notes == 0) {
+				profile.append("no notes");
+			} else {
+				profile.append(chain.getStageNanos(i) / notes / 1000.0)
+						.append(" us (").append(notes).append(" notes)");
+			}
+			profile.append('\n');
+		}
+		view.showMessageDialog(profile.toString());
+	}
+	
 	/**
 	 * Previews the playback made by the user.
 	 */
@@ -1063,42 +1322,103 @@ public class MidiController {
 	}
 
 	/**
-	 * This method parses the scales, and makes sure that the file is in
+	 * This method reads a CSV scales file, and makes sure that the file is in
 	 * the correct format
-	 * @param notes The list of notes
-	 * @return a correct list of notes, with incorrectly formatted 
-	 * 		   notes removed
+	 * @param file - The CSV file
+	 * @return Each scale, and its notes starting from the root note, in the
+	 * order of the file
+	 * @throws IOException if the file cannot be read, or a line is not correct
 	 */
-	private String[] parseArray(String[] notes) {
+	private Map<Scale, String[]> readScales(File file) throws IOException {
+		Map<Scale, String[]> scalesMap = new LinkedHashMap<>();
+		String line;
+		String cvsSplitBy = ",";
+		int lineNumber = 0;
+		
+		try (BufferedReader bufferedReader = 
+				new BufferedReader(new FileReader(file))) {
+			while ((line = bufferedReader.readLine()) != null) {
+				lineNumber++;
+				
+				// use comma as separator
+				String[] scalesLine = line.split(cvsSplitBy);
+				if (scalesLine.length < 3) {
+					throw new IOException("Line " + lineNumber + 
+							" has no notes");
+				}
+
+				// Copy the range of notes, starting from the root note, and
+				// leaving out the root note of the next octave
+				String[] notes = Arrays.copyOfRange(scalesLine, 1, 
+						scalesLine.length - 1);
+
+				// See if each note is either a regular note or sharp/flat 
+				// note
+				for (String note : notes) {
+					if (!ConfigurationFile.isNote(note)) {
+						throw new IOException("Line " + lineNumber + 
+								" has an invalid note " + note);
+					}
+				}
 
-		// To hold valid notes
-		List<String> parsedNotes = new ArrayList<>();
+				// Put the scale, and it's notes into the map
+				scalesMap.put(new Scale(scalesLine[0], notes[0]), notes);
+			}
+		}
+		
+		return scalesMap;
+	}
+	
+	/**
+	 * This method asks the user for a file to save to. A CSV suffix is added
+	 * if the file has neither the CSV nor the binary suffix.
+	 * @return The file, or null if the user cancelled
+	 */
+	private File chooseSaveFile() {
+		JFileChooser fileChooser = new JFileChooser();
+		FileNameExtensionFilter filter = new FileNameExtensionFilter(
+				".csv and ." + ConfigurationFile.SUFFIX + " files", "csv",
+				ConfigurationFile.SUFFIX);
+		fileChooser.setFileFilter(filter);
+		fileChooser.setAcceptAllFileFilterUsed(false);
+		int result = fileChooser.showSaveDialog(fileChooser);
+		if (result != JFileChooser.APPROVE_OPTION) {
+			return null;
+		}
 		
-		// A regular note
-		Pattern sampleRegex = Pattern.compile("^([A-G])");
+		File file = fileChooser.getSelectedFile();
 		
-		// A sharp/flat note
-		Pattern sampleRegex1 = Pattern.compile(
-				"^([A-G])" + "(#/{1})" + "([A-G]{1})" + "(b){1}");
-
-		// See if the note matches either a regular note or sharp/flat note
-		for (String line : notes) {
-			Matcher m = sampleRegex.matcher(line);
-			Matcher m1 = sampleRegex1.matcher(line);
-
-			if (!m.matches() && !m1.matches()) {
-				view.showMessageDialog("There is an invalid line in the file");
-				continue; //skip invalid lines.
-			}
-
-			// Add valid lines to the list of valid notes
-			parsedNotes.add(line);
+		// Append suffix if user forgot to do so.
+		if (!file.getName().toLowerCase().endsWith(".csv") && 
+				!ConfigurationFile.isBinary(file)) {
+			// Add csv suffix
+			file = new File(file + ".csv");
+		}
+		return file;
+	}
+	
+	/**
+	 * This method watches a loaded file, so that it is applied again whenever
+	 * it changes. The file that was loaded before it is no longer watched.
+	 * The file is applied on the event dispatch thread.
+	 * @param previous - The file loaded before, or null
+	 * @param file - The file to watch
+	 * @param handler - Applies the file again
+	 * @return The watched file, or null if it cannot be watched
+	 */
+	private File watchFile(File previous, File file, Consumer<File> handler) {
+		if (previous != null) {
+			configurationWatcher.unwatch(previous);
+		}
+		
+		try {
+			configurationWatcher.watch(file, changed -> 
+					EventQueue.invokeLater(() -> handler.accept(changed)));
+			return file;
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
 		}
-
-		// Convert this back into an array to pass back to the caller
-
-		return parsedNotes.toArray(new
-				String[parsedNotes.size()]);
 	}
 
 	/**
@@ -1152,16 +1472,10 @@ public class MidiController {
 	/**
 	 * This method adds a Processing Block State to a data structure which
 	 * stores this state, for future 'undo' operations
-	 * @param processingBlockListState The state of the processing block
-	 *                                 chain at an instant in time
 	 */
-	private void addToHistory(LinkedList<ProcessingBlock> 
-			processingBlockListState) {
-		
-		LinkedList<ProcessingBlock> deepCopy =
-				new LinkedList<>(processingBlockListState);
-		
-		model.addToHistory(deepCopy);
+	private void addToHistory() {
+		// the history keeps the names and parameters of the blocks
+		model.addToHistory();
 	}
 	
 	private boolean checkValidMidiFile() {
@@ -6,10 +6,17 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.jfugue.pattern.Pattern;
 
+import processingblocks.ChainCompiler;
+import processingblocks.ClockedBlock;
 import processingblocks.ProcessingBlock;
+import processingblocks.ProcessingChain;
+import processingblocks.ProcessingGraph;
+import processingblocks.TimedBlock;
 import scales.Note;
 import scales.NoteDictionary;
 import scales.Scale;
@@ -22,6 +29,11 @@ import scales.Scale;
  *
  */
 public class MidiModel extends EventEmitter {
+	
+	// Events emitted by the model
+	public static final EventType NEW_TEMPO = EventType.of("newTempo");
+	public static final EventType PROCESSING_BLOCKS_REPLACED = 
+			EventType.of("processingBlocksReplaced");
 
 	private boolean metronomeMuted;
 	private boolean playBackStarted;
@@ -29,6 +41,12 @@ public class MidiModel extends EventEmitter {
 	private boolean midiFileProcessingStarted;
 	
 	private int tempo;
+	
+	// Tempo of the master clock until the user sets one
+	private static final int DEFAULT_TEMPO = 120;
+	
+	// Maximum number of timers that can be pending at once
+	private static final int TIMER_CAPACITY = 4096;
 	// The first key available to the keyboard
 	private int firstKey;
 	// The last key in the keyboard
@@ -51,7 +69,29 @@ public class MidiModel extends EventEmitter {
 	private File midiInputFile;
 	
 	// processing blocks in the processing block chain
-	public LinkedList<ProcessingBlock> processingBlocks;
+	public volatile LinkedList<ProcessingBlock> processingBlocks;
+	
+	// Runs notes through the blocks of the processing block chain
+	private volatile ProcessingChain processingChain = 
+			new ProcessingChain(new LinkedList<>());
+	
+	// The names and parameters of the blocks in the processing block chain,
+	// kept up to date as the chain is edited
+	private volatile ChainSnapshot snapshot = ChainSnapshot.EMPTY;
+	
+	// Whether the time spent in each block is measured
+	private volatile boolean profiling;
+	
+	// Passes the notes of the MIDI source to the processing chain
+	private final ChainInput chainInput = new ChainInput();
+	
+	// A chain waiting to replace the processing block chain on the next tick
+	private final AtomicReference<PreparedChain> pendingChain =
+			new AtomicReference<>();
+	
+	// Held while the processing block chain is edited or swapped, so that
+	// only one thread changes it at a time
+	private final ReentrantLock chainLock = new ReentrantLock();
 
 	private Map<Scale, String[]> scalesMap;
 	
@@ -73,6 +113,27 @@ public class MidiModel extends EventEmitter {
 	
 	// The current processor that is writing midi events to output file/devices
 	private OutputProcessor outputProcessor;
+	
+	// The single clock that drives all time based behaviour
+	private final MasterClock masterClock;
+	
+	// Steps the clock driven processing blocks from the master clock
+	private final TickBus tickBus;
+	
+	// Timers for delayed events, advanced by the master clock
+	private final TimingWheel timingWheel;
+	
+	// Locks the master clock to an external MIDI clock
+	private final MidiClockSync midiClockSync;
+	
+	// Sends MIDI clock from the master clock to the outputs
+	private final MidiClockOutput midiClockOutput;
+	
+	// Whether MIDI clock is sent to the output processor
+	private boolean midiClockOutputEnabled;
+	
+	// Chains that can be switched to by program change messages
+	private final PresetBank presetBank;
 
 
 	public MidiModel () {
@@ -83,10 +144,23 @@ public class MidiModel extends EventEmitter {
 		lastKey = 0;
 		availableKeyboardNotes = new Note[19];
 		metronomeMuted = true;
-		history = new ProcessingBlockStack(this);
+		history = new ProcessingBlockStack(ChainSnapshot.EMPTY);
 		playBackStarted = false;
 		pblockController = new ProcessingBlockController(this);
 		midiFileProcessingStarted = false;
+		masterClock = new MasterClock(DEFAULT_TEMPO);
+		tickBus = new TickBus();
+		timingWheel = new TimingWheel(TIMER_CAPACITY);
+		// expire timers before stepping the blocks, so that a note off due
+		// on a tick is sent before any new note on
+		masterClock.addListener(timingWheel);
+		// swap in a new chain before its clock driven blocks are stepped
+		masterClock.addListener(tick -> swapPendingChainOnTick());
+		masterClock.addListener(tickBus);
+		midiClockSync = new MidiClockSync(masterClock);
+		midiClockOutput = new MidiClockOutput();
+		masterClock.addListener(midiClockOutput);
+		presetBank = new PresetBank(this);
 	}
 
 	/*************************************************
@@ -103,22 +177,68 @@ public class MidiModel extends EventEmitter {
 	public Pattern getPatternOutput() { return outputProcessor.getPattern(); }
 	public InputProcessor getInputProcessor() { return inputProcessor; }
 	public Note[] getAvailableNotes() { return availableNotes; }
+	public MasterClock getMasterClock() { return masterClock; }
+	public TickBus getTickBus() { return tickBus; }
+	public TimingWheel getTimingWheel() { return timingWheel; }
+	public MidiClockSync getMidiClockSync() { return midiClockSync; }
+	public MidiClockOutput getMidiClockOutput() { return midiClockOutput; }
+	public PresetBank getPresetBank() { return presetBank; }
+	
+	/**
+	 * Sets whether MIDI clock is sent to the current MIDI output
+	 * @param enabled - Whether to send MIDI clock
+	 */
+	public void setMidiClockOutputEnabled(boolean enabled) {
+		this.midiClockOutputEnabled = enabled;
+		
+		if (outputProcessor == null) {
+			return;
+		}
+		
+		if (enabled) {
+			midiClockOutput.addSink(outputProcessor);
+		} else {
+			midiClockOutput.removeSink(outputProcessor);
+		}
+	}
 	
 	/**
 	 * This method returns the previous state of the processing block chain
-	 * as requested by the user
+	 * as requested by the user. The blocks before the first block that has
+	 * changed since that state are kept, and go on playing their notes. Only
+	 * the blocks from there on are released, and made again from the names 
+	 * and parameters in the history.
 	 */
 	public void undo() {
-		this.processingBlocks = history.pop();
+		editChain(() -> {
+			ChainSnapshot previous = history.pop();
+			int index = snapshot.sharedSize(previous);
+			LinkedList<ProcessingBlock> blocks = previous.restoreFrom(index);
+			
+			if (blocks == null) {
+				return;
+			}
+			
+			for (ProcessingBlock block : 
+					processingBlocks.subList(index, processingBlocks.size())) {
+				ChainCompiler.releaseNotes(processingBlocks, block);
+			}
+			while (processingBlocks.size() > index) {
+				processingBlocks.removeLast().removeAllObservers();
+			}
+			
+			processingBlocks.addAll(blocks);
+			snapshot = previous;
+			connectProcessingBlocks();
+		});
 	}
 	
 	/**
 	 * Adds to the history the state of the processing block chain, before the
 	 * user makes a configuration that alters the state of the chain.
-	 * @param processingBlocks - The current state of the processing blocks chain
 	 */
-	public void addToHistory(LinkedList<ProcessingBlock> processingBlocks) {
-		history.push(processingBlocks);
+	public void addToHistory() {
+		editChain(() -> history.push(snapshot));
 	}
 
 	/**
@@ -136,11 +256,14 @@ public class MidiModel extends EventEmitter {
 			inputProcessor.removeAllObservers();
 			inputProcessor.setRunning(false);
 			
+			// stop the processing block controller from continuing to 
+			// process previous input (eg. gates/ arpeggiator)
+			pblockController.changeMidiSource();
 		}
 
 		InputProcessorFactory factory = new InputProcessorFactory(this);
 		inputProcessor = factory.getProcessor(selectedMidiSource);
-		inputProcessor.registerObserver(pblockController);
+		inputProcessor.registerObserver(chainInput);
 		
 		if (inputProcessor instanceof KeyboardInputProcessor) {
 			virtualKeyboard.setInputProcessor(inputProcessor);
@@ -162,7 +285,8 @@ public class MidiModel extends EventEmitter {
 	 */
 	public void setTempo(int tempo) { 
 		this.tempo = tempo; 
-		this.emit("newTempo");
+		masterClock.setTempo(tempo);
+		this.emit(NEW_TEMPO);
 	}
 
 	/**
@@ -185,6 +309,7 @@ public class MidiModel extends EventEmitter {
 		if (outputProcessor != null) {
 			// close any existing serial connections before starting a new one.
 			outputProcessor.closeConnection();
+			midiClockOutput.removeSink(outputProcessor);
 		}
 
 		switch (midiOutput.length) {
@@ -205,14 +330,56 @@ public class MidiModel extends EventEmitter {
 		// set the output process to listen to the pblock controller.
 		assert pblockController != null;
 		pblockController.registerObserver(outputProcessor);
+		
+		if (midiClockOutputEnabled) {
+			midiClockOutput.addSink(outputProcessor);
+		}
 	}
 
+	/**
+	 * @return The blocks of the processing block chain. A chain waiting to 
+	 * 		   replace it is swapped in first, so that the blocks returned are
+	 * 		   the ones that later edits apply to.
+	 */
 	public LinkedList<ProcessingBlock> getProcessingBlocks() {
-		return processingBlocks;
+		chainLock.lock();
+		try {
+			swapPendingChain();
+			return processingBlocks;
+		} finally {
+			chainLock.unlock();
+		}
+	}
+	
+	/**
+	 * @return The processing chain connecting the current blocks, which can
+	 * measure the time spent in each block
+	 */
+	public ProcessingChain getProcessingChain() {
+		return processingChain;
+	}
+	
+	/**
+	 * Starts or stops measuring the time spent in each processing block. The
+	 * measurements are cleared when measuring starts, and when the chain is
+	 * reconnected.
+	 * @param profiling - Whether to measure the blocks
+	 */
+	public void setProfiling(boolean profiling) {
+		this.profiling = profiling;
+		
+		ProcessingChain chain = processingChain;
+		if (profiling) {
+			chain.resetProfile();
+		}
+		chain.setProfiling(profiling);
 	}
 	
 	public void clearProcessingBlocks() {
-		processingBlocks.clear();
+		editChain(() -> {
+			processingBlocks.clear();
+			snapshot = ChainSnapshot.EMPTY;
+		});
 	}
 	
 	public void setPlayBackStarted(boolean playBackStarted) {
@@ -245,6 +412,14 @@ public class MidiModel extends EventEmitter {
 	public void setScales(Map<Scale, String[]> scalesMap) {
 		this.scalesMap = scalesMap;
 	}
+	
+	public Map<Scale, String[]> getScales() {
+		return scalesMap;
+	}
+	
+	public Scale getSelectedScale() {
+		return selectedScale;
+	}
 
 	public void setScale(String mode, String rootNote) {
 		this.selectedScale = new Scale (mode, rootNote);
@@ -290,6 +465,7 @@ public class MidiModel extends EventEmitter {
 		String[] notes = scalesMap.get(selectedScale);
 		availableNotes = noteDictionary.filterAvailableNotes(notes);
 		pblockController.setAvailableNotes();
+		presetBank.prepareAll();
 	}
 
 	/**
@@ -435,8 +611,336 @@ public class MidiModel extends EventEmitter {
 	 * of processing blocks.
 	 */
 	public void connectProcessingBlocks() {
-		pblockController.connectProcessingBlocks();
+		editChain(() -> {
+			pblockController.connectProcessingBlocks();
+			
+			// the links between the blocks are taken over by the chain
+			connectChain();
+			
+			// fold runs of stateless blocks into lookup tables
+			ChainCompiler.compile(processingBlocks);
+			
+			// the clock driven blocks are stepped in chain order
+			tickBus.subscribeChain(processingBlocks);
+			startClockForBlocks();
+			
+			for (ProcessingBlock block : 
+					ProcessingGraph.expand(processingBlocks)) {
+				if (block instanceof TimedBlock) {
+					((TimedBlock) block).setTimingWheel(timingWheel);
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Adds a processing block to the end of the chain, and reconnects the
+	 * chain
+	 * @param block - The new processing block
+	 */
+	public void addProcessingBlock(ProcessingBlock block) {
+		if (block == null) {
+			throw new IllegalArgumentException("Processing block not valid");
+		}
+		
+		editChain(() -> {
+			snapshot = snapshot.append(block);
+			processingBlocks.add(block);
+			connectProcessingBlocks();
+		});
+	}
+	
+	/**
+	 * Replaces the whole processing block chain with a chain that has been
+	 * built separately. The new chain is connected and folded on the calling
+	 * thread, and is then swapped in on the next tick of the master clock (or
+	 * straight away if the clock is stopped), so that no tick sees half of
+	 * each chain. The notes turned on by the old chain are turned off once it
+	 * has been swapped out. A "processingBlocksReplaced" event is emitted from
+	 * the thread that swapped the chain.
+	 * @param chain - The new processing block chain, whose blocks must not be
+	 * 				  in the current chain, and which must not be changed by
+	 * 				  the caller afterwards
+	 */
+	public void replaceProcessingBlocks(LinkedList<ProcessingBlock> chain) {
+		replaceProcessingBlocks(chain, ChainSnapshot.of(chain));
+	}
+	
+	/**
+	 * Replaces the whole processing block chain, as above, with a chain whose
+	 * snapshot has already been taken
+	 * @param chain - The new processing block chain
+	 * @param chainSnapshot - The names and parameters of the blocks of the 
+	 * 						  chain
+	 */
+	public void replaceProcessingBlocks(LinkedList<ProcessingBlock> chain, 
+			ChainSnapshot chainSnapshot) {
+		pendingChain.set(new PreparedChain(chain, chainSnapshot));
+		
+		if (!masterClock.isRunning()) {
+			editChain(this::startClockForBlocks);
+		}
+	}
+	
+	/**
+	 * Changes the parameters of a processing block in the chain, after adding
+	 * the state of the chain to the history. The change is not made if the
+	 * block is no longer in the chain, such as when a preset was selected 
+	 * while the user was entering the parameters.
+	 * @param block - The processing block to change
+	 * @param change - Sets the new parameters of the block
+	 * @return false if the block is no longer in the chain
+	 */
+	public boolean changeProcessingBlock(ProcessingBlock block, 
+			Runnable change) {
+		chainLock.lock();
+		try {
+			swapPendingChain();
+			
+			int index = 0;
+			for (ProcessingBlock current : processingBlocks) {
+				if (current == block) {
+					history.push(snapshot);
+					change.run();
+					processingBlockChanged(index);
+					return true;
+				}
+				index++;
+			}
+			return false;
+		} finally {
+			chainLock.unlock();
+		}
+	}
+	
+	/**
+	 * Runs an edit of the processing block chain. Edits are made one at a 
+	 * time, and never while a chain is being swapped in. A chain waiting to 
+	 * be swapped in is swapped in first, so that the edit applies to it 
+	 * rather than being lost when it is swapped in afterwards.
+	 * @param edit - The edit to make
+	 */
+	private void editChain(Runnable edit) {
+		chainLock.lock();
+		try {
+			swapPendingChain();
+			edit.run();
+		} finally {
+			chainLock.unlock();
+		}
+	}
+	
+	/**
+	 * Swaps in the chain waiting to replace the processing block chain, from
+	 * the clock thread. If the chain is being edited, the clock does not wait:
+	 * the chain is swapped in by the edit, or on a later tick.
+	 */
+	private void swapPendingChainOnTick() {
+		if (pendingChain.get() != null && chainLock.tryLock()) {
+			try {
+				swapPendingChain();
+			} finally {
+				chainLock.unlock();
+			}
+		}
+	}
+	
+	/**
+	 * Swaps in the chain waiting to replace the processing block chain, if
+	 * there is one. The chain has already been connected, so this only swaps
+	 * the references and turns off the notes of the old chain. This must be
+	 * called while holding the chain lock.
+	 */
+	private void swapPendingChain() {
+		PreparedChain prepared = pendingChain.getAndSet(null);
+		if (prepared == null) {
+			return;
+		}
+		
+		LinkedList<ProcessingBlock> oldChain = processingBlocks;
+		prepared.chain.setProfiling(profiling);
+		processingBlocks = prepared.blocks;
+		snapshot = prepared.snapshot;
+		processingChain = prepared.chain;
+		tickBus.subscribeAll(prepared.clockedBlocks);
+		
+		for (ProcessingBlock block : oldChain) {
+			block.releaseNotes();
+		}
+		
+		this.emit(PROCESSING_BLOCKS_REPLACED);
+	}
+	
+	/**
+	 * Removes a processing block from the chain. Only the notes that passed
+	 * through the block are turned off, and only the links between the
+	 * blocks are rebuilt. Removing the first or last block reconnects the
+	 * whole chain, as it is connected to the MIDI source or output.
+	 * @param index - The position of the block in the chain
+	 */
+	public void removeProcessingBlock(int index) {
+		editChain(() -> {
+			ProcessingBlock block = processingBlocks.get(index);
+			ChainCompiler.releaseNotes(processingBlocks, block);
+			
+			processingBlocks.remove(index);
+			snapshot = snapshot.changedFrom(processingBlocks, index);
+			
+			if (index == 0 || index == processingBlocks.size()) {
+				connectProcessingBlocks();
+				return;
+			}
+			
+			block.removeAllObservers();
+			connectChain();
+			chainChanged(null);
+		});
+	}
+	
+	/**
+	 * Swaps a processing block with the block after it. Only the notes that
+	 * passed through the two blocks are turned off, and only the links between
+	 * the blocks are rebuilt. Swapping the first or last block reconnects the
+	 * whole chain.
+	 * @param index - The position of the first of the two blocks
+	 */
+	public void swapProcessingBlocks(int index) {
+		editChain(() -> {
+			ProcessingBlock first = processingBlocks.get(index);
+			ProcessingBlock second = processingBlocks.get(index + 1);
+			
+			// the note offs from the first block pass through the second block
+			ChainCompiler.releaseNotes(processingBlocks, first);
+			ChainCompiler.releaseNotes(processingBlocks, second);
+			
+			processingBlocks.set(index, second);
+			processingBlocks.set(index + 1, first);
+			snapshot = snapshot.changedFrom(processingBlocks, index);
+			
+			if (index == 0 || index + 1 == processingBlocks.size() - 1) {
+				connectProcessingBlocks();
+				return;
+			}
+			
+			connectChain();
+			chainChanged(null);
+		});
+	}
+	
+	/**
+	 * This method is called when the parameters of a processing block have
+	 * changed. Only the notes that passed through the block are turned off,
+	 * and the chain is not reconnected.
+	 * @param index - The position of the block in the chain
+	 */
+	public void processingBlockChanged(int index) {
+		editChain(() -> {
+			ProcessingBlock block = processingBlocks.get(index);
+			snapshot = snapshot.changedFrom(processingBlocks, index);
+			ChainCompiler.releaseNotes(processingBlocks, block);
+			chainChanged(block);
+		});
+	}
+	
+	/**
+	 * Connects the blocks of the processing block chain to a new processing
+	 * chain, which runs the notes of the MIDI source through the blocks. The
+	 * last block stays connected to the output.
+	 */
+	private void connectChain() {
+		ProcessingChain chain = new ProcessingChain(processingBlocks);
+		chain.setProfiling(profiling);
+		chain.connect();
+		processingChain = chain;
+	}
+	
+	/**
+	 * Updates the clock subscriptions and folded runs after the chain has
+	 * been reconnected in place
+	 * @param changed - The block whose parameters changed, or null
+	 */
+	private void chainChanged(ProcessingBlock changed) {
+		tickBus.subscribeChain(processingBlocks);
+		startClockForBlocks();
+		ChainCompiler.recompile(processingBlocks, changed);
+	}
+	
+	/**
+	 * Starts the master clock at the current tempo if there are clock driven
+	 * blocks in the chain, so that they play before the user sets a tempo
+	 */
+	private void startClockForBlocks() {
+		if (tickBus.getSubscriberCount() > 0) {
+			masterClock.start();
+		}
+	}
+	
+	/**
+	 * A processing block chain that has been connected and folded, ready to
+	 * be swapped in. The blocks are connected to a new processing chain and
+	 * the last block to the processing block controller, as the controller
+	 * connects the current chain, but without changing the current chain.
+	 */
+	private final class PreparedChain {
+		
+		private final LinkedList<ProcessingBlock> blocks;
+		private final ProcessingChain chain;
+		private final ClockedBlock[] clockedBlocks;
+		private final ChainSnapshot snapshot;
+		
+		private PreparedChain(LinkedList<ProcessingBlock> blocks, 
+				ChainSnapshot snapshot) {
+			this.blocks = blocks;
+			this.snapshot = snapshot;
+			
+			chain = new ProcessingChain(blocks);
+			chain.connect();
+			if (!blocks.isEmpty()) {
+				blocks.getLast().removeAllObservers();
+				blocks.getLast().registerObserver(pblockController);
+			}
+			
+			ChainCompiler.compile(blocks);
+			if (availableNotes != null) {
+				ChainCompiler.prepare(blocks, availableNotes);
+			}
+			
+			for (ProcessingBlock block : ProcessingGraph.expand(blocks)) {
+				if (block instanceof TimedBlock) {
+					((TimedBlock) block).setTimingWheel(timingWheel);
+				}
+			}
+			
+			clockedBlocks = TickBus.clockedBlocks(blocks);
+		}
+	}
+	
+	/**
+	 * The observer of the MIDI source. Notes are run through the processing
+	 * chain from its first block, so that every block is called by the chain.
+	 * When there are no blocks, notes go to the processing block controller,
+	 * which sends them straight to the output.
+	 */
+	private final class ChainInput implements Observer {
+		
+		@Override
+		public void update(Note note, Boolean noteOn) {
+			ProcessingChain chain = processingChain;
+			if (chain.size() == 0) {
+				pblockController.update(note, noteOn);
+			} else {
+				chain.process(note, noteOn, availableNotes);
+			}
+		}
+		
+		@Override
+		public void update(Note note, Boolean noteOn, Note[] availableNotes) {
+			ProcessingChain chain = processingChain;
+			if (chain.size() == 0) {
+				pblockController.update(note, noteOn, availableNotes);
+			} else {
+				chain.process(note, noteOn, availableNotes);
+			}
+		}
 	}
-
 }
-
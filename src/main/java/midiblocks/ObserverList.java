@@ -0,0 +1,111 @@
+package midiblocks;
+
+import scales.Note;
+
+/**
+ * This class holds the observers of a subject. The observers are kept in an
+ * array, which is copied when an observer is added or removed, and never
+ * changed once it is published. Observers can therefore be registered and
+ * removed from any thread while notes are being sent, and sending a note is
+ * an indexed loop over the array, with no locking and no iterator.
+ * 
+ * Processing blocks, input processors and the virtual keyboard each keep
+ * their observers in one of these, and implement Subject by passing the calls
+ * on to it.
+ * @author Lisa Liu-Thorrold
+ *
+ */
+public final class ObserverList {
+
+	private static final Observer[] NONE = new Observer[0];
+
+	private volatile Observer[] observers = NONE;
+
+	/**
+	 * Adds an observer to the end of the list
+	 * @param observer - The observer to add
+	 */
+	public synchronized void add(Observer observer) {
+		Observer[] current = observers;
+		Observer[] added = new Observer[current.length + 1];
+		System.arraycopy(current, 0, added, 0, current.length);
+		added[current.length] = observer;
+		observers = added;
+	}
+
+	/**
+	 * Removes the first occurrence of an observer
+	 * @param observer - The observer to remove
+	 * @return true if the observer was in the list
+	 */
+	public synchronized boolean remove(Observer observer) {
+		Observer[] current = observers;
+		for (int i = 0; i < current.length; i++) {
+			if (current[i].equals(observer)) {
+				Observer[] removed = current.length == 1 ? NONE :
+						new Observer[current.length - 1];
+				System.arraycopy(current, 0, removed, 0, i);
+				System.arraycopy(current, i + 1, removed, i,
+						removed.length - i);
+				observers = removed;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Removes every observer
+	 * @return The observers that were removed
+	 */
+	public synchronized Observer[] clear() {
+		Observer[] removed = observers;
+		observers = NONE;
+		return removed;
+	}
+
+	/**
+	 * Sends a note to every observer
+	 * @param note - The note to send
+	 * @param noteOn - Whether the note is on or off
+	 */
+	public void notifyObservers(Note note, Boolean noteOn) {
+		Observer[] current = observers;
+		for (int i = 0; i < current.length; i++) {
+			current[i].update(note, noteOn);
+		}
+	}
+
+	/**
+	 * Sends a note to every observer
+	 * @param note - The note to send
+	 * @param noteOn - Whether the note is on or off
+	 * @param availableNotes - The notes of the globally set scale
+	 */
+	public void notifyObservers(Note note, Boolean noteOn,
+			Note[] availableNotes) {
+		Observer[] current = observers;
+		for (int i = 0; i < current.length; i++) {
+			current[i].update(note, noteOn, availableNotes);
+		}
+	}
+
+	/*************************************************
+	 * Getter methods
+	 *************************************************/
+
+	/**
+	 * @return The observers. The array is shared, and must not be changed.
+	 */
+	public Observer[] toArray() {
+		return observers;
+	}
+
+	public int size() {
+		return observers.length;
+	}
+
+	public boolean isEmpty() {
+		return observers.length == 0;
+	}
+}
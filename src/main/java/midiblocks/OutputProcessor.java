@@ -12,7 +12,7 @@ import scales.Note;
 /**
  * @author Lisa Liu-Thorrold
  */
-public class OutputProcessor implements Observer {
+public class OutputProcessor implements Observer, MidiClockSink {
 
 	private final MidiModel model;
 
@@ -23,8 +23,9 @@ public class OutputProcessor implements Observer {
 
 	private String portName;
 
-	// Wrapper to abstract serial communication with the usb device
-	private Serial serial;
+	// Wrapper to abstract serial communication with the usb device. Set by
+	// the usb output thread, and read by the clock thread.
+	private volatile Serial serial;
 
 	// The data rate at which communication occurs with serial device
 	private static final int DATA_RATE = 250000;
@@ -194,6 +195,27 @@ public class OutputProcessor implements Observer {
 		return false;
 	}
 
+	/**
+	 * This method sends a MIDI clock message to the usb device. The byte is
+	 * written straight from the clock thread rather than queued, as real time
+	 * messages may be sent between the bytes of any other message. Clock 
+	 * messages are not written to the MIDI file, as the file has its own tempo.
+	 * @param status - The MIDI real time message to send
+	 */
+	@Override
+	public void sendClockMessage(int status) {
+		Serial serial = this.serial;
+		if (serial == null || !serial.isConnected()) {
+			return;
+		}
+
+		try {
+			serial.sendRawByte(status);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
 	/*************************************************
 	 *  Getter/setter methods
 	 *************************************************/
@@ -220,10 +242,13 @@ public class OutputProcessor implements Observer {
 	 * @return true if connection is successful, and false otherwise
 	 */
 	private boolean connect() {
-		this.serial = new Serial();
-		this.serial.connect(this.portName, DATA_RATE);
+		// only publish the connection once it is set up, as the clock thread
+		// may send to it at any time
+		Serial serial = new Serial();
+		serial.connect(this.portName, DATA_RATE);
+		this.serial = serial;
 
-		return this.serial.isConnected();
+		return serial.isConnected();
 	}
 
 	/**
@@ -0,0 +1,12 @@
+package midiblocks;
+
+/**
+ * Event payload. Events carry no data, so a single payload is shared by every
+ * event.
+ */
+public final class Payload {
+
+	static final Payload EMPTY = new Payload();
+
+	private Payload() { }
+}
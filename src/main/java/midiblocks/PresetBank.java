@@ -0,0 +1,204 @@
+package midiblocks;
+
+import java.util.LinkedList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import processingblocks.ChainCompiler;
+import processingblocks.ProcessingBlock;
+
+/**
+ * This class is a bank of processing block chains that can be switched
+ * between while playing, by MIDI program change messages. Each preset is kept
+ * as the names and parameters of its blocks, which are never changed. A copy
+ * of the chain of each preset is made, folded and worked out for the globally
+ * set scale ahead of time, so switching to a preset only swaps that copy into
+ * the model. Once a copy is in use, the next copy is made on a background 
+ * thread, so edits made to the chain in use do not change the preset.
+ * @author Lisa Liu-Thorrold
+ *
+ */
+public class PresetBank {
+	
+	// One preset for each MIDI program number
+	public static final int SIZE = 128;
+	
+	// Most copies waiting to be made on the background thread
+	private static final int PREPARE_CAPACITY = 1024;
+	
+	// The background thread that makes the copies of the presets
+	private static final ThreadPoolExecutor prepareExecutor = 
+			new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, 
+					new ArrayBlockingQueue<>(PREPARE_CAPACITY), runnable -> {
+						Thread thread = new Thread(runnable, 
+								"Preset preparation");
+						thread.setDaemon(true);
+						return thread;
+					});
+	
+	private final MidiModel model;
+	
+	// Each preset, null if the preset is empty
+	private final AtomicReferenceArray<Preset> presets =
+			new AtomicReferenceArray<>(SIZE);
+	
+	public PresetBank(MidiModel model) {
+		this.model = model;
+	}
+	
+	/**
+	 * Adds a chain to the bank, and works out its tables for the globally set
+	 * scale. The chain is used as the first copy of the preset, so it must not
+	 * be used or changed by the caller afterwards.
+	 * @param program - The program number of the preset, from 0 to 127
+	 * @param chain - The processing block chain of the preset
+	 */
+	public void setPreset(int program, LinkedList<ProcessingBlock> chain) {
+		Preset preset = new Preset(ChainSnapshot.of(chain));
+		preset.ready.set(prepare(chain));
+		presets.set(program, preset);
+	}
+	
+	/**
+	 * @param program - The program number of the preset, from 0 to 127
+	 * @return The names and parameters of the blocks of the preset, or null
+	 * 		   if the preset is empty
+	 */
+	public ChainSnapshot getPreset(int program) {
+		if (program < 0 || program >= SIZE) {
+			return null;
+		}
+		Preset preset = presets.get(program);
+		return preset == null ? null : preset.template;
+	}
+	
+	public void clear() {
+		for (int i = 0; i < SIZE; i++) {
+			presets.set(i, null);
+		}
+	}
+	
+	/**
+	 * @return The number of presets in the bank
+	 */
+	public int size() {
+		int size = 0;
+		for (int i = 0; i < SIZE; i++) {
+			if (presets.get(i) != null) {
+				size++;
+			}
+		}
+		return size;
+	}
+	
+	/**
+	 * Switches the model to a new copy of a preset. This is called on the 
+	 * MIDI input thread when a program change message is received. The copy
+	 * is only made on this thread if the preset is selected again before the
+	 * next copy is ready.
+	 * @param program - The program number of the preset, from 0 to 127
+	 * @return false if the preset is empty, or its blocks could not be made
+	 */
+	public boolean select(int program) {
+		if (program < 0 || program >= SIZE) {
+			return false;
+		}
+		
+		Preset preset = presets.get(program);
+		if (preset == null) {
+			return false;
+		}
+		
+		LinkedList<ProcessingBlock> chain = preset.ready.getAndSet(null);
+		if (chain == null) {
+			chain = preset.make();
+			if (chain == null) {
+				return false;
+			}
+		}
+		
+		model.replaceProcessingBlocks(chain, preset.template);
+		prepareExecutor.execute(preset::refill);
+		return true;
+	}
+	
+	/**
+	 * Makes new copies of every preset for the globally set scale, on the 
+	 * background thread. This is called when the scale changes.
+	 */
+	public void prepareAll() {
+		for (int i = 0; i < SIZE; i++) {
+			Preset preset = presets.get(i);
+			if (preset != null) {
+				prepareExecutor.execute(preset::replace);
+			}
+		}
+	}
+	
+	/*************************************************
+	 *  Helper methods
+	 *************************************************/
+	
+	/**
+	 * Folds the chain and works out its tables for the globally set scale
+	 * @param chain - The processing blocks, in chain order
+	 * @return The chain
+	 */
+	private LinkedList<ProcessingBlock> prepare(
+			LinkedList<ProcessingBlock> chain) {
+		ChainCompiler.compile(chain);
+		if (model.getAvailableNotes() != null) {
+			ChainCompiler.prepare(chain, model.getAvailableNotes());
+		}
+		return chain;
+	}
+	
+	/**
+	 * A preset, and the copy of its chain that is ready to be swapped in
+	 */
+	private final class Preset {
+		
+		// The names and parameters of the blocks, which are never changed
+		private final ChainSnapshot template;
+		
+		// The next copy of the chain, null while it is being made
+		private final AtomicReference<LinkedList<ProcessingBlock>> ready = 
+				new AtomicReference<>();
+		
+		private Preset(ChainSnapshot template) {
+			this.template = template;
+		}
+		
+		/**
+		 * @return A new prepared copy of the chain, or null if its blocks
+		 * 		   could not be made
+		 */
+		private LinkedList<ProcessingBlock> make() {
+			LinkedList<ProcessingBlock> chain = template.restore();
+			return chain == null ? null : prepare(chain);
+		}
+		
+		/**
+		 * Makes the next copy, if the last one has been used
+		 */
+		private void refill() {
+			if (ready.get() == null) {
+				ready.compareAndSet(null, make());
+			}
+		}
+		
+		/**
+		 * Makes a new copy in place of the one that is ready, which was 
+		 * worked out for a different scale
+		 */
+		private void replace() {
+			LinkedList<ProcessingBlock> chain = make();
+			if (chain != null) {
+				ready.set(chain);
+			}
+		}
+	}
+}
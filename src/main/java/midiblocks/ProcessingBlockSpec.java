@@ -0,0 +1,100 @@
+package midiblocks;
+
+import processingblocks.Chordify;
+import processingblocks.ClockedBlock;
+import processingblocks.Monophonic;
+import processingblocks.ProcessingBlock;
+import processingblocks.ProcessingBlockFactory;
+import processingblocks.ProcessingGraph;
+
+/**
+ * This class is an immutable description of a processing block: its name
+ * and two parameters, as stored in a configuration file. A block can be made
+ * from a description as many times as needed, so a chain that is kept (such
+ * as a preset, or a state in the undo history) is kept as descriptions, and
+ * new blocks are made whenever it is used.
+ * @author Lisa Liu-Thorrold
+ *
+ */
+public final class ProcessingBlockSpec {
+	
+	private final String name;
+	private final String parameter1;
+	private final String parameter2;
+	
+	/**
+	 * @param name - The name of the processing block
+	 * @param parameter1 - The first parameter
+	 * @param parameter2 - The second parameter
+	 */
+	public ProcessingBlockSpec(String name, String parameter1, 
+			String parameter2) {
+		this.name = name;
+		this.parameter1 = parameter1;
+		this.parameter2 = parameter2;
+	}
+	
+	/**
+	 * @param block - A processing block
+	 * @return The description of the block, with its current parameters
+	 */
+	public static ProcessingBlockSpec of(ProcessingBlock block) {
+		String[] parameters = block.getParameters().split(",", 2);
+		return new ProcessingBlockSpec(block.getName(), parameters[0], 
+				parameters.length > 1 ? parameters[1] : "");
+	}
+	
+	/**
+	 * Makes a new processing block from the description. The block is not
+	 * connected to anything.
+	 * @return The processing block, or null if it is not valid
+	 */
+	public ProcessingBlock make() {
+		// a graph describes its nodes and connections in its parameters, and
+		// the blocks inside it are made in the same way
+		if (name.equals("Processing Graph")) {
+			try {
+				return ProcessingGraph.parse(parameter1, parameter2, 
+						fields -> new ProcessingBlockSpec(fields[0], fields[1], 
+								fields[2]).make());
+			} catch (IllegalArgumentException | IllegalStateException e) {
+				return null;
+			}
+		}
+		
+		ProcessingBlockFactory factory = new ProcessingBlockFactory();
+		ProcessingBlock block = factory.makeProcessingBlock(name, parameter1, 
+				Subdivision.withoutRate(parameter2));
+		
+		if (block == null) {
+			return null;
+		}
+
+		// the octave range, pattern and repeats of the arpeggiator, and the
+		// subdivision of a clock driven block, are stored in the second
+		// parameter, as are the priority and legato of the monophonic block
+		// and the shape and inversion of the chordify block
+		if (block instanceof ClockedBlock || block instanceof Monophonic ||
+				block instanceof Chordify) {
+			block.setParameters(parameter1, parameter2);
+		}
+		
+		return block;
+	}
+	
+	/*************************************************
+	 *  Getter/setter methods
+	 *************************************************/
+	
+	public String getName() {
+		return name;
+	}
+	
+	public String getParameter1() {
+		return parameter1;
+	}
+	
+	public String getParameter2() {
+		return parameter2;
+	}
+}
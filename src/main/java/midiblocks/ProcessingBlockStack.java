@@ -1,59 +1,89 @@
 package midiblocks;
-import java.util.LinkedList;
-import java.util.Stack;
-
-import processingblocks.ProcessingBlock;
+import java.util.ArrayDeque;
 
 /**
  * This class is a data structure that is used the processing block states
- * to allow for 'undo' operations.
+ * to allow for 'undo' operations. Each state is an immutable snapshot of the
+ * chain that shares its unchanged nodes with the state before it, so pushing
+ * and popping a state is cheap, and there is no fixed limit on the number of
+ * states. The oldest states are only dropped when the nodes of all the states
+ * go over a memory budget.
  * @author Lisa Liu-Thorrold
  *
  */
-public class ProcessingBlockStack extends Stack<LinkedList<ProcessingBlock>>{
+public class ProcessingBlockStack {
+	
+	// Most snapshot nodes that are kept for the whole history
+	private static final int NODE_BUDGET = 65536;
+	
+	// The states, oldest first
+	private final ArrayDeque<State> states = new ArrayDeque<>();
 	
-	private static final long serialVersionUID = 1079017799488293026L;
-	private LinkedList<ProcessingBlock> firstState;
+	// Nodes added by the states in the history
+	private int nodeCount;
 	
-	public ProcessingBlockStack(MidiModel model) {
-		super();
-		firstState = new LinkedList<>(
-				model.getProcessingBlocks());
+	// The state that is restored when there is nothing left to undo
+	private ChainSnapshot firstState;
+	
+	/**
+	 * @param firstState - The processing block chain state that is restored 
+	 * 					   when there is nothing left to undo
+	 */
+	public ProcessingBlockStack(ChainSnapshot firstState) {
+		this.firstState = firstState;
 	}
 
 	/**
-	 * This method adds a processing block list state to the stack.
-	 * If the size is greater than 15, we remove the oldest action (the last
-	 * item in the stack
+	 * This method adds a processing block chain state to the stack. If the 
+	 * history goes over its memory budget, the oldest states are removed.
+	 * @param snapshot - The processing block chain state
 	 */
-	@Override
-	public LinkedList<ProcessingBlock> push(LinkedList<ProcessingBlock> list) {
-		while(this.size() >= 15) {
-			this.remove(0);
-			firstState = elementAt(0);
+	public synchronized void push(ChainSnapshot snapshot) {
+		ChainSnapshot previous = states.isEmpty() ? firstState : 
+				states.peekLast().snapshot;
+		
+		State state = new State(snapshot, snapshot.countNodesNotIn(previous));
+		states.addLast(state);
+		nodeCount += state.nodesAdded;
+		
+		while (nodeCount > NODE_BUDGET && states.size() > 1) {
+			State oldest = states.removeFirst();
+			nodeCount -= oldest.nodesAdded;
+			firstState = oldest.snapshot;
 		}
-
-		return super.push(list);
 	}
 	
 	/**
 	 * This method removes a processing block list state off the stack.
 	 * This is invoked when an 'undo' operation is called.
-	 * @return The last processing block list state that was added to the stack
+	 * @return The last processing block chain state that was added to the 
+	 * 		   stack
 	 */
-	@Override
-	public LinkedList<ProcessingBlock> pop() {
-		LinkedList<ProcessingBlock> state;
-        int     len = size();
-        
-        if (len >= 1) {
-        	   state = peek();
-               removeElementAt(len - 1);
-               return state;
-
-        } else {
-            return firstState;
-        }
-
+	public synchronized ChainSnapshot pop() {
+		State state = states.pollLast();
+		
+		if (state == null) {
+			return firstState;
+		}
+		
+		nodeCount -= state.nodesAdded;
+		return state.snapshot;
+	}
+	
+	public synchronized int size() {
+		return states.size();
+	}
+	
+	/**
+	 * A state in the history, and the number of snapshot nodes it added
+	 */
+	private static class State {
+		private final ChainSnapshot snapshot;
+		private final int nodesAdded;
+		
+		private State(ChainSnapshot snapshot, int nodesAdded) {
+			this.snapshot = snapshot;
+			this.nodesAdded = nodesAdded;
+		}
 	}
 }
@@ -89,7 +89,7 @@ public class Serial {
 	 * @param message The message to send.
 	 * @throws IOException 
 	 */
-	public void sendMessage(int message) throws IOException {
+	public synchronized void sendMessage(int message) throws IOException {
 		out.write(message);
 		//		if (message == '[' || message == ']' || message == '^') {
 		//			out.write(message);
@@ -101,6 +101,20 @@ public class Serial {
 		out.flush();
 	}
 
+	/**
+	 * Sends a single byte over the serial, bypassing the character encoding
+	 * of the outbound stream (eg. for MIDI real time messages above 0x7F).
+	 * This may be called from a different thread to sendMessage.
+	 * @param message The byte to send.
+	 * @throws IOException 
+	 */
+	public synchronized void sendRawByte(int message) throws IOException {
+		// keep the byte in order with anything already written
+		out.flush();
+		serialPort.getOutputStream().write(message);
+		serialPort.getOutputStream().flush();
+	}
+
 	/**
 	 * Receive a message over the serial. FOR DEBUGGING.
 	 * @throws IOException
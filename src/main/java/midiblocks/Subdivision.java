@@ -0,0 +1,99 @@
+package midiblocks;
+
+/**
+ * The musical subdivisions of a beat that clock driven processing blocks
+ * can be stepped at. Each is defined by the number of master clock sub-ticks
+ * between two steps.
+ * @author Lisa Liu-Thorrold
+ *
+ */
+public enum Subdivision {
+	QUARTER("Quarter", 24),
+	EIGHTH("Eighth", 12),
+	SIXTEENTH("Sixteenth", 6),
+	QUARTER_TRIPLET("Quarter triplet", 16),
+	EIGHTH_TRIPLET("Eighth triplet", 8),
+	SIXTEENTH_TRIPLET("Sixteenth triplet", 4);
+
+	// Marks the subdivision at the end of the second parameter of a clock 
+	// driven block, eg. "1.0;rate=Eighth". It is left out for a quarter.
+	private static final String RATE = ";rate=";
+
+	private final String name;
+	private final int ticksPerStep;
+
+	Subdivision(String name, int ticksPerStep) {
+		this.name = name;
+		this.ticksPerStep = ticksPerStep;
+	}
+
+	/**
+	 * @return The number of master clock sub-ticks between two steps
+	 */
+	public int getTicksPerStep() {
+		return ticksPerStep;
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+
+	/**
+	 * Returns the subdivision with the given name
+	 * @param name - The name of the subdivision, as given by toString()
+	 * @return The matching subdivision, or null if there is no match
+	 */
+	public static Subdivision fromString(String name) {
+		for (Subdivision subdivision : values()) {
+			if (subdivision.name.equalsIgnoreCase(name)) {
+				return subdivision;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Adds a subdivision to the end of the second parameter of a clock driven
+	 * block, so that it is saved with the block
+	 * @param parameter - The second parameter of the block
+	 * @param subdivision - The subdivision the block is stepped at
+	 * @return The parameter and the subdivision
+	 */
+	public static String withRate(String parameter, Subdivision subdivision) {
+		if (subdivision == QUARTER) {
+			return parameter;
+		}
+		return parameter + RATE + subdivision.name;
+	}
+
+	/**
+	 * @param parameter - The second parameter of a clock driven block
+	 * @return The subdivision at the end of the parameter, or a quarter if
+	 * there is none
+	 * @throws IllegalArgumentException if the subdivision is not valid
+	 */
+	public static Subdivision rateOf(String parameter) {
+		int index = parameter.indexOf(RATE);
+		if (index == -1) {
+			return QUARTER;
+		}
+
+		String name = parameter.substring(index + RATE.length()).trim();
+		Subdivision subdivision = fromString(name);
+		if (subdivision == null) {
+			throw new IllegalArgumentException("Subdivision not valid: " +
+					name);
+		}
+		return subdivision;
+	}
+
+	/**
+	 * @param parameter - The second parameter of a clock driven block
+	 * @return The parameter without the subdivision at the end of it
+	 */
+	public static String withoutRate(String parameter) {
+		int index = parameter.indexOf(RATE);
+		return index == -1 ? parameter : parameter.substring(0, index);
+	}
+}
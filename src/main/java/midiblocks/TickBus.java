@@ -0,0 +1,122 @@
+package midiblocks;
+import java.util.ArrayList;
+import java.util.List;
+
+import processingblocks.ClockedBlock;
+import processingblocks.ProcessingBlock;
+import processingblocks.ProcessingGraph;
+
+/**
+ * The tick bus is fed by the master clock, and steps every clock driven
+ * processing block at its own subdivision of the beat. All blocks are
+ * stepped from the clock thread in the order of the processing block chain,
+ * so adding more clock driven blocks does not add any threads. The 
+ * subdivision of each block is read on every tick, so a change of subdivision
+ * applies from the block's next step.
+ * @author Lisa Liu-Thorrold
+ *
+ */
+public class TickBus implements ClockListener {
+
+	private static final ClockedBlock[] NONE = new ClockedBlock[0];
+
+	// The subscribed blocks, in chain order. Replaced as a whole whenever the
+	// subscriptions change, so the clock thread never sees a partial update.
+	private volatile ClockedBlock[] subscriptions = NONE;
+
+	/**
+	 * Steps every subscribed block whose subdivision falls on this tick
+	 * @param tick - The number of the master clock sub-tick
+	 */
+	@Override
+	public void tick(long tick) {
+		ClockedBlock[] current = subscriptions;
+
+		for (int i = 0; i < current.length; i++) {
+			ClockedBlock block = current[i];
+			if (tick % block.getSubdivision().getTicksPerStep() == 0) {
+				block.clockTick(tick);
+			}
+		}
+	}
+
+	/**
+	 * Replaces all of the subscriptions with the clock driven blocks in the
+	 * given processing block chain, in the order of the chain. The blocks
+	 * inside a processing graph are stepped in the order the graph runs them.
+	 * @param processingBlocks - The processing block chain
+	 */
+	public void subscribeChain(List<ProcessingBlock> processingBlocks) {
+		subscribeAll(clockedBlocks(processingBlocks));
+	}
+
+	/**
+	 * Replaces all of the subscriptions with the given blocks. This only
+	 * publishes the array, so it can be called on the clock thread.
+	 * @param blocks - The blocks to step, in order, as found by 
+	 * 				   clockedBlocks(). The array must not be changed after.
+	 */
+	public synchronized void subscribeAll(ClockedBlock[] blocks) {
+		subscriptions = blocks;
+	}
+
+	/**
+	 * Finds the clock driven blocks in a processing block chain, so that they
+	 * can be subscribed later. The blocks inside a processing graph are
+	 * stepped in the order the graph runs them.
+	 * @param processingBlocks - The processing block chain
+	 * @return The clock driven blocks, in chain order
+	 */
+	public static ClockedBlock[] clockedBlocks(List<ProcessingBlock>
+			processingBlocks) {
+		ArrayList<ClockedBlock> chain = new ArrayList<>();
+
+		for (ProcessingBlock block : ProcessingGraph.expand(processingBlocks)) {
+			if (block instanceof ClockedBlock) {
+				chain.add((ClockedBlock) block);
+			}
+		}
+
+		return chain.toArray(new ClockedBlock[chain.size()]);
+	}
+
+	/**
+	 * Sets the subdivision of a block, and subscribes it to be stepped after
+	 * all the blocks that are already subscribed.
+	 * @param block - The block to step
+	 * @param subdivision - How often to step the block
+	 */
+	public synchronized void subscribe(ClockedBlock block,
+			Subdivision subdivision) {
+		block.setSubdivision(subdivision);
+		
+		ClockedBlock[] current = subscriptions;
+		ClockedBlock[] updated = new ClockedBlock[current.length + 1];
+		System.arraycopy(current, 0, updated, 0, current.length);
+		updated[current.length] = block;
+		subscriptions = updated;
+	}
+
+	/**
+	 * Stops a block from being stepped by the tick bus
+	 * @param block - The block to unsubscribe
+	 */
+	public synchronized void unsubscribe(ClockedBlock block) {
+		ArrayList<ClockedBlock> remaining = new ArrayList<>();
+
+		for (ClockedBlock subscribed : subscriptions) {
+			if (subscribed != block) {
+				remaining.add(subscribed);
+			}
+		}
+
+		subscriptions = remaining.toArray(new ClockedBlock[remaining.size()]);
+	}
+
+	/**
+	 * @return The number of blocks currently subscribed
+	 */
+	public int getSubscriberCount() {
+		return subscriptions.length;
+	}
+}
@@ -0,0 +1,12 @@
+package midiblocks;
+
+/**
+ * The interface for events that are scheduled on the timing wheel. The key
+ * given when the event was scheduled (typically a note's key number) is
+ * passed back on expiry, so one object can serve every key it schedules.
+ * @author Lisa Liu-Thorrold
+ *
+ */
+public interface TimedEvent {
+	void expire(int key);
+}
@@ -0,0 +1,300 @@
+package midiblocks;
+import java.util.Arrays;
+
+/**
+ * This class is a hierarchical timing wheel for scheduling many cheap
+ * timers, such as note lengths, delayed releases and stuck note timeouts.
+ * Time is measured in master clock sub-ticks, and the wheel is advanced by
+ * the master clock, so no extra threads are needed.
+ *
+ * There are three levels of slots: 256 slots of single ticks, then 64 slots
+ * of 256 ticks and 64 slots of 16384 ticks. Timers on the higher levels are
+ * cascaded down a level as their time approaches. Timers live in a fixed pool
+ * of nodes linked into the slots, so scheduling and cancelling a timer is
+ * O(1) and does not allocate.
+ * @author Lisa Liu-Thorrold
+ *
+ */
+public class TimingWheel implements ClockListener {
+
+	private static final int LEVEL0_BITS = 8;
+	private static final int LEVEL1_BITS = 6;
+	private static final int LEVEL0_SIZE = 1 << LEVEL0_BITS;
+	private static final int LEVEL1_SIZE = 1 << LEVEL1_BITS;
+	private static final int LEVEL0_MASK = LEVEL0_SIZE - 1;
+	private static final int LEVEL1_MASK = LEVEL1_SIZE - 1;
+
+	// Offsets of each level in the array of slot heads
+	private static final int LEVEL1_OFFSET = LEVEL0_SIZE;
+	private static final int LEVEL2_OFFSET = LEVEL0_SIZE + LEVEL1_SIZE;
+	private static final int NUMBER_OF_SLOTS = LEVEL0_SIZE + 2 * LEVEL1_SIZE;
+
+	// The longest delay that can be scheduled, in ticks
+	public static final long MAX_DELAY =
+			(1L << (LEVEL0_BITS + 2 * LEVEL1_BITS)) - 1;
+
+	// The pool is indexed by the low 16 bits of a handle
+	private static final int MAX_CAPACITY = 1 << 16;
+	private static final int INDEX_MASK = MAX_CAPACITY - 1;
+	private static final int GENERATION_MASK = 0x7FFF;
+
+	private static final int NONE = -1;
+
+	// First node in each slot
+	private final int[] slotHeads;
+
+	// The pool of timer nodes
+	private final int[] next;
+	private final int[] previous;
+	private final int[] slotOfNode;
+	private final long[] deadline;
+	private final int[] key;
+	private final TimedEvent[] event;
+
+	// Incremented each time a node is reused, so that a stale handle can
+	// never cancel someone else's timer
+	private final int[] generation;
+
+	// First node that is not in use
+	private int freeHead;
+	private int timersScheduled;
+
+	// Timers that expire on the current tick. Copied out so the events can be
+	// fired without holding the lock.
+	private final TimedEvent[] firingEvents;
+	private final int[] firingKeys;
+
+	// The next tick to be processed
+	private long now;
+
+	/**
+	 * @param capacity - The maximum number of timers that can be scheduled
+	 * 					 at once (at most 65536)
+	 */
+	public TimingWheel(int capacity) {
+		capacity = Math.max(1, Math.min(capacity, MAX_CAPACITY));
+
+		slotHeads = new int[NUMBER_OF_SLOTS];
+		Arrays.fill(slotHeads, NONE);
+
+		next = new int[capacity];
+		previous = new int[capacity];
+		slotOfNode = new int[capacity];
+		deadline = new long[capacity];
+		key = new int[capacity];
+		event = new TimedEvent[capacity];
+		generation = new int[capacity];
+
+		firingEvents = new TimedEvent[capacity];
+		firingKeys = new int[capacity];
+
+		// chain every node into the free list
+		for (int i = 0; i < capacity; i++) {
+			next[i] = i + 1 < capacity ? i + 1 : NONE;
+			slotOfNode[i] = NONE;
+		}
+		freeHead = 0;
+	}
+
+	/**
+	 * Schedules an event to expire after the given number of ticks.
+	 * @param delay - Number of master clock sub-ticks until expiry. Delays
+	 * 				  under 1 expire on the next tick, and delays over
+	 * 				  MAX_DELAY are limited to MAX_DELAY.
+	 * @param timedEvent - The event to expire
+	 * @param eventKey - Passed back to the event on expiry (eg. a key number)
+	 * @return A handle to cancel the timer with, or -1 if the wheel is full
+	 */
+	public synchronized int schedule(long delay, TimedEvent timedEvent,
+			int eventKey) {
+		if (freeHead == NONE) {
+			return NONE;
+		}
+
+		delay = Math.max(1, Math.min(delay, MAX_DELAY));
+
+		int node = freeHead;
+		freeHead = next[node];
+
+		deadline[node] = now + delay - 1;
+		key[node] = eventKey;
+		event[node] = timedEvent;
+		timersScheduled++;
+		insert(node);
+
+		return (generation[node] << 16) | node;
+	}
+
+	/**
+	 * Cancels a scheduled timer.
+	 * @param handle - The handle returned when the timer was scheduled
+	 * @return true if the timer was cancelled, false if it had already
+	 * 		   expired or been cancelled
+	 */
+	public synchronized boolean cancel(int handle) {
+		if (handle < 0) {
+			return false;
+		}
+
+		int node = handle & INDEX_MASK;
+
+		if (node >= next.length || slotOfNode[node] == NONE ||
+				generation[node] != (handle >>> 16)) {
+			return false;
+		}
+
+		unlink(node);
+		free(node);
+		return true;
+	}
+
+	/**
+	 * Cancels every timer scheduled for the given event (eg. when a
+	 * processing block is removed from the chain).
+	 * @param timedEvent - The event whose timers are cancelled
+	 */
+	public synchronized void cancelAll(TimedEvent timedEvent) {
+		for (int node = 0; node < next.length; node++) {
+			if (slotOfNode[node] != NONE && event[node] == timedEvent) {
+				unlink(node);
+				free(node);
+			}
+		}
+	}
+
+	/**
+	 * Advances the wheel by one tick, and expires the timers that are due.
+	 * Invoked by the master clock.
+	 */
+	@Override
+	public void tick(long tick) {
+		int expired = 0;
+
+		synchronized (this) {
+			int index = (int) (now & LEVEL0_MASK);
+
+			// Cascade the next band of timers down from the higher levels
+			if (index == 0) {
+				int index1 = (int) ((now >> LEVEL0_BITS) & LEVEL1_MASK);
+				if (index1 == 0) {
+					cascade(LEVEL2_OFFSET + (int) ((now >> (LEVEL0_BITS +
+							LEVEL1_BITS)) & LEVEL1_MASK));
+				}
+				cascade(LEVEL1_OFFSET + index1);
+			}
+
+			int node = slotHeads[index];
+			slotHeads[index] = NONE;
+
+			while (node != NONE) {
+				int following = next[node];
+				firingEvents[expired] = event[node];
+				firingKeys[expired] = key[node];
+				expired++;
+				slotOfNode[node] = NONE;
+				free(node);
+				node = following;
+			}
+
+			now++;
+		}
+
+		for (int i = 0; i < expired; i++) {
+			TimedEvent toFire = firingEvents[i];
+			firingEvents[i] = null;
+			toFire.expire(firingKeys[i]);
+		}
+	}
+
+	/*************************************************
+	 *  Getter methods
+	 *************************************************/
+
+	public synchronized int getTimersScheduled() { return timersScheduled; }
+	public synchronized long getCurrentTick() { return now; }
+
+	/*************************************************
+	 *  Helper methods
+	 *************************************************/
+
+	/**
+	 * Places a node into the slot for its deadline, relative to now
+	 * @param node - The node to place
+	 */
+	private void insert(int node) {
+		long expires = deadline[node];
+		long ticksAway = expires - now;
+		int slot;
+
+		if (ticksAway < 0) {
+			// already due, expire on the current tick
+			slot = (int) (now & LEVEL0_MASK);
+		} else if (ticksAway < LEVEL0_SIZE) {
+			slot = (int) (expires & LEVEL0_MASK);
+		} else if (ticksAway < 1 << (LEVEL0_BITS + LEVEL1_BITS)) {
+			slot = LEVEL1_OFFSET +
+					(int) ((expires >> LEVEL0_BITS) & LEVEL1_MASK);
+		} else {
+			slot = LEVEL2_OFFSET + (int) ((expires >>
+					(LEVEL0_BITS + LEVEL1_BITS)) & LEVEL1_MASK);
+		}
+
+		int head = slotHeads[slot];
+		next[node] = head;
+		previous[node] = NONE;
+		if (head != NONE) {
+			previous[head] = node;
+		}
+		slotHeads[slot] = node;
+		slotOfNode[node] = slot;
+	}
+
+	/**
+	 * Moves every node in a higher level slot into the level that now
+	 * covers its deadline
+	 * @param slot - The slot to empty
+	 */
+	private void cascade(int slot) {
+		int node = slotHeads[slot];
+		slotHeads[slot] = NONE;
+
+		while (node != NONE) {
+			int following = next[node];
+			insert(node);
+			node = following;
+		}
+	}
+
+	/**
+	 * Removes a node from the slot it is in
+	 * @param node - The node to remove
+	 */
+	private void unlink(int node) {
+		int slot = slotOfNode[node];
+
+		if (previous[node] != NONE) {
+			next[previous[node]] = next[node];
+		} else {
+			slotHeads[slot] = next[node];
+		}
+
+		if (next[node] != NONE) {
+			previous[next[node]] = previous[node];
+		}
+
+		slotOfNode[node] = NONE;
+	}
+
+	/**
+	 * Returns a node to the free list
+	 * @param node - The node that is no longer in use
+	 */
+	private void free(int node) {
+		event[node] = null;
+		generation[node] = (generation[node] + 1) & GENERATION_MASK;
+		next[node] = freeHead;
+		freeHead = node;
+		timersScheduled--;
+	}
+
+}
@@ -4,9 +4,7 @@ import processing.core.PApplet;
 import processing.core.PFont;
 import scales.Note;
 
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
 
 
 /**
@@ -23,7 +21,7 @@ public class VirtualKeyboard extends PApplet
 
 	private KeyboardInputProcessor inputProcessor;
 	
-	private final ArrayList<Observer> observers = new ArrayList<>();
+	private final ObserverList observers = new ObserverList();
 
 	private final MidiModel model;
 	
@@ -385,19 +383,12 @@ public class VirtualKeyboard extends PApplet
 
 	@Override
 	public void notifyObservers(Note note, Boolean noteOn) {
-		for (Observer ob : observers) {
-            ob.update(note, noteOn);
-		}
+		observers.notifyObservers(note, noteOn);
 		
 	}
 
 	@Override
 	public void removeAllObservers() {
-		Iterator<Observer> iterator = observers.iterator();
-
-		while (iterator.hasNext()){
-			iterator.next();
-			iterator.remove();
-		}
+		observers.clear();
 	}
 }
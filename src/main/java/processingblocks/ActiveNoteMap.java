@@ -0,0 +1,110 @@
+package processingblocks;
+
+import java.util.Arrays;
+
+import scales.Note;
+
+/**
+ * This class records, for each input key that is on, the keys a processing
+ * block sent for it. When the note off for the input key arrives, the block
+ * turns off exactly the keys it turned on, even if its parameters or the
+ * globally set scale have changed since. The keys are stored in a fixed table
+ * with a row for each input key, so recording and releasing a note do not
+ * allocate.
+ * @author Lisa Liu-Thorrold
+ *
+ */
+public class ActiveNoteMap {
+
+	// Number of keys that can be recorded for each input key
+	private final int width;
+	
+	// The keys sent for each input key, width slots per key, and the number
+	// of keys sent for each input key (0 if the input key is not on)
+	private final int[] keysSent;
+	private final int[] counts = new int[NoteSet.CAPACITY];
+	
+	// The most recent note sent for each key
+	private final Note[] notesByKey = new Note[NoteSet.CAPACITY];
+	
+	/**
+	 * @param width - The most keys a block sends for one input key
+	 */
+	public ActiveNoteMap(int width) {
+		this.width = width;
+		this.keysSent = new int[NoteSet.CAPACITY * width];
+	}
+	
+	/**
+	 * Records a note sent for an input key
+	 * @param key - The input key
+	 * @param note - The note that was sent
+	 */
+	public void add(int key, Note note) {
+		if (!isValid(key) || counts[key] == width || 
+				!isValid(note.getKeyNumber())) {
+			return;
+		}
+		
+		keysSent[key * width + counts[key]] = note.getKeyNumber();
+		notesByKey[note.getKeyNumber()] = note;
+		counts[key]++;
+	}
+	
+	/**
+	 * Forgets the notes sent for an input key
+	 * @param key - The input key
+	 */
+	public void remove(int key) {
+		if (isValid(key)) {
+			counts[key] = 0;
+		}
+	}
+	
+	/**
+	 * @param key - The input key
+	 * @return true if notes have been recorded for the input key
+	 */
+	public boolean isActive(int key) {
+		return isValid(key) && counts[key] > 0;
+	}
+	
+	/**
+	 * @param key - The input key
+	 * @return The number of notes recorded for the input key
+	 */
+	public int size(int key) {
+		return isValid(key) ? counts[key] : 0;
+	}
+	
+	/**
+	 * @param key - The input key
+	 * @param index - Which of the notes recorded for the input key
+	 * @return The note that was sent
+	 */
+	public Note get(int key, int index) {
+		return notesByKey[keysSent[key * width + index]];
+	}
+	
+	public void clear() {
+		Arrays.fill(counts, 0);
+	}
+	
+	/**
+	 * Makes this map a copy of another map, keeping as many notes of each
+	 * input key as fit in this map
+	 * @param other - The map to copy
+	 */
+	public void copyFrom(ActiveNoteMap other) {
+		for (int key = 0; key < NoteSet.CAPACITY; key++) {
+			counts[key] = 0;
+			for (int i = 0; i < other.counts[key]; i++) {
+				add(key, other.get(key, i));
+			}
+		}
+	}
+	
+	private static boolean isValid(int key) {
+		return key >= 0 && key < NoteSet.CAPACITY;
+	}
+}
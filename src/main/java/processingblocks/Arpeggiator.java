@@ -1,33 +1,73 @@
 package processingblocks;
 
-import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
 
+import midiblocks.MasterClock;
 import midiblocks.Observer;
+import midiblocks.ObserverList;
+import midiblocks.Subdivision;
 import scales.Note;
+import scales.NoteDictionary;
 
 /**
  * This class represents the Arpeggiator Processing Block
  * @author Lisa Liu-Thorrold
  *
  */
-public class Arpeggiator implements ProcessingBlock {
+public class Arpeggiator implements ClockedBlock {
 
 	// The mode of the arpeggiator
 	private String type;
 	
 	// The observers of this processing block
-	private final ArrayList<Observer> observers = new ArrayList<>();
+	private final ObserverList observers = new ObserverList();
 	
 	// Store the details of last arpeggiated note so we know which is the 
-	// next note to arpeggiate
+	// next note to arpeggiate. The index is a position in the note pool.
 	private int indexOfLastArpeggiatedNote = -1;
 	private Note lastArpeggiatedNote;
 	
-	// To store the notes that are currently on 
-	private final LinkedList<Note> notesCurrentlyOn;
+	// The note that is currently sounding, which is turned off at the next
+	// step. Either thread may turn it off, so it is claimed atomically.
+	private final AtomicReference<Note> soundingNote = new AtomicReference<>();
+	
+	// To store the keys of the notes that are currently on, in ascending order
+	// (including the latched notes in latch mode)
+	private final NoteSet notesCurrentlyOn;
+	
+	// The keys that are physically held down
+	private final NoteSet keysDown = new NoteSet();
+	
+	// The notes that are currently on, indexed by key
+	private final Note[] heldNotes;
+	
+	// The notes that are currently on are edited by the input thread, and 
+	// their bits and chord number are published for the clock thread after 
+	// every change, under a version that is odd while they are written. The
+	// clock thread reads them again if the version changed while it read 
+	// them, so it only ever sees a whole chord, and a change allocates 
+	// nothing.
+	private volatile int chordVersion;
+	private volatile long publishedLowBits;
+	private volatile long publishedHighBits;
+	private volatile int publishedNumber;
+	private int chordNumber;
+	
+	// The chord the sequence was last compiled from, kept by the clock thread
+	private final NoteSet compiledNotes = new NoteSet();
+	private int compiledVersion = -1;
+	private int compiledNumber = -1;
+	
+	// Whether the notes keep playing after the keys are released, until a
+	// new chord is pressed
+	private volatile boolean latch;
+	
+	// Whether a new chord waits for the next bar to start the sequence
+	private volatile boolean restartOnBar;
+	private boolean waitingForBar;
 
 	// Whether we are currently ascending if the arpeggiator mode is ping pong
 	private boolean pingPongAscending;
@@ -35,11 +75,60 @@ public class Arpeggiator implements ProcessingBlock {
 	// Available notes for the arpeggiator to use
 	private Note[] availableNotes;
 	
+	// How often the tick bus steps the arpeggiator. Read by the clock thread.
+	private volatile Subdivision subdivision = Subdivision.QUARTER;
+	
+	// The number of octaves the held notes are spread over
+	private volatile int octaves = 1;
+	
+	// The order to play the notes in, as positions in the note pool starting
+	// from 1. Empty if the order is given by the mode.
+	private volatile int[] pattern = NO_PATTERN;
+	
+	// The number of times each step is played
+	private volatile int repeats = 1;
+	
+	// The compiled sequence. The note pool is the keys of the held notes
+	// spread over the octave range, in ascending order, and each step is a
+	// position in the pool. Compiled only when the held notes or parameters
+	// change, so that each step is an index increment.
+	private final NoteSet poolKeys = new NoteSet();
+	private final int[] pool = new int[NoteSet.CAPACITY];
+	private int poolSize;
+	private final int[] steps = new int[MAX_STEPS];
+	private int stepCount;
+	private int position = -1;
+	private int repeatsPlayed;
+	private volatile boolean sequenceChanged;
+	
+	// For the notes in the higher octaves, which are not held
+	private final NoteDictionary noteDictionary;
+	
 	// Constants for the arpeggiator mode
 	private final static String DESCENDING = "Descending Scale";
 	private final static String ASCENDING = "Ascending Scale";
 	private final static String PING_PONG = "Ping pong";
 	private final static String RANDOM = "Random";
+	
+	// Limits of the sequence parameters
+	public final static int MAX_OCTAVES = 4;
+	public final static int MAX_PATTERN_LENGTH = 32;
+	public final static int MAX_REPEATS = 8;
+	
+	// The highest key on the keyboard
+	private final static int HIGHEST_KEY = 88;
+	private final static int OCTAVE = 12;
+	
+	private final static int TICKS_PER_BAR = 
+			MasterClock.PPQN * MasterClock.BEATS_PER_BAR;
+	
+	// A ping pong sequence visits every note twice, except the ends
+	private final static int MAX_STEPS = 2 * NoteSet.CAPACITY;
+	
+	private final static int[] NO_PATTERN = new int[0];
+	
+	// Written in the configuration file when the defaults are used
+	private final static String NO_PARAMS = "NoParams";
 
 	/**
 	 * This class represents the Arpeggiator processing block. It takes all of 
@@ -68,81 +157,104 @@ public class Arpeggiator implements ProcessingBlock {
 	 * 				 be output is chosen at random from the set of currently 
 	 *  			 'on' note - unless there is only one note on. The order in
 	 *  			 which the notes were pressed is irrelevant.
+	 * The held notes can also be spread over up to 4 octaves, played in a
+	 * custom pattern (eg. "1 3 2 4") instead of the order of the mode, and
+	 * each step repeated a number of times. In latch mode the notes keep 
+	 * playing after the keys are released, until a new chord is pressed, and
+	 * a new chord can be held back to start on the first beat of the next bar.
 	 * @param type - The type of arpeggiator from one of the types described
 	 *               above
 	 */
 	public Arpeggiator(String type) {
 		this.type = type;
-		notesCurrentlyOn = new LinkedList<>();
+		notesCurrentlyOn = new NoteSet();
+		heldNotes = new Note[NoteSet.CAPACITY];
+		noteDictionary = new NoteDictionary();
 		// ping pong mode starts with ascending
 		pingPongAscending = true;
 	}
 	
 	/**
 	 * This method adds and removes notes that pass into this block
-	 * If the note is a note on, it adds it to the linked list
-	 * If the note is a note off, it removes it from the linked list
+	 * If the note is a note on, it adds it to the set of held notes
+	 * If the note is a note off, it removes it from the set of held notes
+	 * (unless the arpeggiator is latched). The first note pressed after all
+	 * the keys were released starts a new chord.
 	 * @param note - The note
 	 * @param noteOn - Whether the note is on or off
 	 * @param availableNotes - Not used, just for passing onwards to the 
 	 * 						   processing blocks that need this array.
 	 */
 	@Override
-	public void update(Note note, Boolean noteOn, Note[] availableNotes) {
+	public synchronized void update(Note note, Boolean noteOn, 
+			Note[] availableNotes) {
 		if (this.availableNotes == null) {
 			this.availableNotes = availableNotes;
 		}
 		
+		int key = note.getKeyNumber();
+		
 		// note on message received
 		if (noteOn) {
-			if(!notesCurrentlyOn.contains(note)) {
-				insertAscendingOrder(note);
+			if (keysDown.isEmpty()) {
+				// a new chord replaces the latched notes
+				if (latch) {
+					clearHeldNotes();
+				}
+				chordNumber++;
 			}
 			
+			keysDown.add(key);
+			notesCurrentlyOn.add(key);
+			heldNotes[key] = note;
+			
 		//note off message received
 		} else {
 
-			notesCurrentlyOn.remove(note);
+			keysDown.remove(key);
 			
-			// Turn of the last arpeggiated note 
-			if (notesCurrentlyOn.size() == 0) {
-				indexOfLastArpeggiatedNote = -1;
-				notifyObservers(note, false, availableNotes);
+			if (!latch && notesCurrentlyOn.remove(key)) {
+				heldNotes[key] = null;
 			}
 		}
+		
+		publishChord();
 	}
 	
 	/**
-	 * This method inserts the notes via insertion sort, the most logical way
-	 * to store all the notes that are currently on.
-	 * @param note - The new on note to add into the arpeggiating sequence.
+	 * Publishes the notes that are currently on for the clock thread. If
+	 * there are no notes left, the sounding note is turned off straight away
+	 * rather than at the next step.
 	 */
-	private void insertAscendingOrder(Note note) {
-		 if (notesCurrentlyOn.size() == 0) {
-			 notesCurrentlyOn.add(note);
-			 
-			 // the new note has the lowest key, add to the beginning
-	        } else if (notesCurrentlyOn.get(0).getKeyNumber() > 
-	        		note.getKeyNumber()) {
-	        	notesCurrentlyOn.add(0, note);
-
-	        	// the new note has the highest key
-	        } else if (notesCurrentlyOn.get(notesCurrentlyOn.size() - 1).
-	        		getKeyNumber() < note.getKeyNumber()) {
-	        	notesCurrentlyOn.add(notesCurrentlyOn.size(), note);
-	        	
-	        	// search for the correct position to add the note so that the
-	        	// ascending order of notes being stored is preserved.
-	        } else {
-	            int i = 0;
-	            while (notesCurrentlyOn.get(i).getKeyNumber() < 
-	            		note.getKeyNumber()) {
-	                i++;
-	            }
-	            notesCurrentlyOn.add(i, note);
-	        }
+	private void publishChord() {
+		chordVersion++;
+		publishedLowBits = notesCurrentlyOn.getLowBits();
+		publishedHighBits = notesCurrentlyOn.getHighBits();
+		publishedNumber = chordNumber;
+		chordVersion++;
+		
+		if (notesCurrentlyOn.isEmpty()) {
+			turnOffSoundingNote();
+		}
+	}
+	
+	private void clearHeldNotes() {
+		for (int key = notesCurrentlyOn.lowest(); key != -1; 
+				key = notesCurrentlyOn.next(key)) {
+			heldNotes[key] = null;
+		}
+		notesCurrentlyOn.clear();
+	}
+	
+	/**
+	 * Turns off the note that is currently sounding, if there is one
+	 */
+	private void turnOffSoundingNote() {
+		Note note = soundingNote.getAndSet(null);
+		if (note != null) {
+			notifyObservers(note, false, availableNotes);
+		}
 	}
-
 	
 	/**
 	 * This is the method that handles arpeggiating. It gets the next note
@@ -150,23 +262,38 @@ public class Arpeggiator implements ProcessingBlock {
 	 * this to the next processing block (or output) via notifyObservers
 	 */
 	public void arpeggiate() {
-		// if list is empty, do nothing.
-		if (notesCurrentlyOn.size() > 0) {
-			System.out.println("Arpeggiate!");
-
-			// Turn on the old arpeggiated note off
-			if (indexOfLastArpeggiatedNote != -1) {
-
-				if(notesCurrentlyOn.contains(lastArpeggiatedNote)) {
-
-					// turn off the last arpeggiated note
-					notifyObservers(lastArpeggiatedNote, false, availableNotes);
-				}
+		arpeggiate(true);
+	}
+	
+	/**
+	 * Arpeggiates the next note
+	 * @param onBar - Whether this step is on the first beat of a bar
+	 */
+	private void arpeggiate(boolean onBar) {
+		if (chordVersion != compiledVersion || sequenceChanged) {
+			int number = readChord();
+			boolean newChord = number != compiledNumber;
+			compiledNumber = number;
+			compileSequence(compiledNotes, newChord);
+		}
+		
+		// Turn the old arpeggiated note off
+		turnOffSoundingNote();
+		
+		// a new chord that is waiting for the bar stays silent until then
+		if (waitingForBar) {
+			if (!onBar) {
+				return;
 			}
+			waitingForBar = false;
+		}
+		
+		// if there are no notes, do nothing.
+		if (poolSize > 0) {
 
 			// Get the next note to arpeggiate
 			int indexOfNextNote = getNextNote();
-			Note toArpeggiate = notesCurrentlyOn.get(indexOfNextNote);
+			Note toArpeggiate = getNote(pool[indexOfNextNote]);
 			
 			// Arpeggiate the new note
 			notifyObservers(toArpeggiate, true, availableNotes);
@@ -174,177 +301,343 @@ public class Arpeggiator implements ProcessingBlock {
 			// store the newly arpeggiated note
 			indexOfLastArpeggiatedNote = indexOfNextNote;
 			lastArpeggiatedNote = toArpeggiate;
+			soundingNote.set(toArpeggiate);
 			
 		}
 	}
 	
 	/**
-	 * Gets the next note to arpeggiate depending on the type of arpeggiator
-	 * selected
+	 * Reads the chord that was last published into the compiled notes,
+	 * reading it again if the input thread changed it part way through
+	 * @return The number of the chord
+	 */
+	private int readChord() {
+		int version;
+		long lowBits;
+		long highBits;
+		int number;
+		
+		do {
+			version = chordVersion;
+			lowBits = publishedLowBits;
+			highBits = publishedHighBits;
+			number = publishedNumber;
+		} while ((version & 1) != 0 || version != chordVersion);
+		
+		compiledNotes.setBits(lowBits, highBits);
+		compiledVersion = version;
+		return number;
+	}
+	
+	/**
+	 * Invoked by the tick bus at every step of this block's subdivision.
+	 * @param tick - The number of the master clock sub-tick
+	 */
+	@Override
+	public void clockTick(long tick) {
+		arpeggiate(tick % TICKS_PER_BAR == 0);
+	}
+	
+	/**
+	 * Gets the position in the note pool of the next note to arpeggiate
 	 * @return The next note to arpeggiate
 	 */
 	private int getNextNote() {
 		
-		int indexOfNextNote = -1;
-
-		switch(type) {
-		case ASCENDING:
-			indexOfNextNote = getNextAscending();
-			break;
-		case DESCENDING:
-			indexOfNextNote = getNextDescending();
-			break;
-		case PING_PONG:
-			indexOfNextNote = getNextPingPong();
-			break;
-		case RANDOM:
-			indexOfNextNote = getNextRandom();
-			break;
+		// play the last note again until it has been repeated enough times
+		if (indexOfLastArpeggiatedNote != -1 && repeatsPlayed < repeats - 1) {
+			repeatsPlayed++;
+			return indexOfLastArpeggiatedNote;
+		}
+		repeatsPlayed = 0;
+		
+		if (stepCount == 0) {
+			return getNextRandom();
+		}
+		
+		position++;
+		if (position >= stepCount) {
+			position = 0;
 		}
+		pingPongAscending = position < poolSize;
 		
-		return indexOfNextNote;
+		return steps[position];
 	}
 	
 	/**
-	 * Returns the index of the next ascending note
-	 * @return The next ascending note to arpeggiate
+	 * Returns the position of the next note to arpeggiated in a random 
+	 * sequence
+	 * @return The next note to arpeggiate
 	 */
-	private int getNextAscending() {
-
-		// special case, there is only one note currently on
-		if (notesCurrentlyOn.size() == 1 ) {
+	private int getNextRandom() {
+		// special case where there is only one note
+		if (poolSize == 1 ) {
 			return 0;
 		}
 
-		// Return the starting (lowest note) if the index of the last 
-		// arpeggiated note does not exist, or we hit the highest note
-		if (indexOfLastArpeggiatedNote == -1 ||
-				indexOfLastArpeggiatedNote >= notesCurrentlyOn.size()-1) {
-			return 0;
-			
-			// return the next note in the sequence. use math.min to prevent
-			// index out of bounds exceptions if notes have been removed since
-			// the last time an arpeggiation was made
-		} else {
-			return Math.min(indexOfLastArpeggiatedNote + 1, 
-					notesCurrentlyOn.size()-1);
+		// the last note has been turned off, so any note can be next
+		if (indexOfLastArpeggiatedNote == -1) {
+			return ThreadLocalRandom.current().nextInt(poolSize);
+		}
+
+		// it can't be the same as the currently on note, so pick from the
+		// other notes and skip over the current one
+		int randomIndex = 
+				ThreadLocalRandom.current().nextInt(poolSize - 1);
+		if (randomIndex >= indexOfLastArpeggiatedNote) {
+			randomIndex++;
 		}
+	
+		return randomIndex;
 	}
 	
 	/**
-	 * Returns the index of the next descending note
-	 * @return The next descending note to arpeggiate
+	 * Compiles the held notes and the parameters into the note pool and the
+	 * steps of the sequence, then finds where the sequence carries on from.
+	 * A new chord starts the sequence from the beginning.
+	 * @param notes - The keys of the notes that are currently on
+	 * @param newChord - Whether the notes are a new chord
 	 */
-	private int getNextDescending() {
-
-		// special case, there is only one note in the sequence
-		if (notesCurrentlyOn.size() == 1 ) {
-			return 0;
+	private void compileSequence(NoteSet notes, boolean newChord) {
+		sequenceChanged = false;
+		
+		if (newChord || notes.isEmpty()) {
+			indexOfLastArpeggiatedNote = -1;
+			waitingForBar = newChord && restartOnBar;
 		}
 		
-		// Return the end (highest) note if the index of the large arpeggiated
-		// note does not exist, or we hit the lowest note
-		if (indexOfLastArpeggiatedNote == -1 ||
-				indexOfLastArpeggiatedNote <= 0) {
-			return notesCurrentlyOn.size()-1;
-			
-		} else {
-
-			// prevent index out of bounds exception if user has turned off
-			// notes after the last arpeggiation was made
-			if (indexOfLastArpeggiatedNote >= notesCurrentlyOn.size()) {
-				indexOfLastArpeggiatedNote = notesCurrentlyOn.size() - 1;
+		// Spread the held notes over the octave range
+		poolKeys.clear();
+		for (int key = notes.lowest(); key != -1; key = notes.next(key)) {
+			for (int octave = 0; octave < octaves; octave++) {
+				if (key + octave * OCTAVE <= HIGHEST_KEY) {
+					poolKeys.add(key + octave * OCTAVE);
+				}
 			}
-
-			// return the next lower note in the sequence
-			return Math.max(0, indexOfLastArpeggiatedNote - 1);
 		}
 		
+		poolSize = 0;
+		for (int key = poolKeys.lowest(); key != -1; key = poolKeys.next(key)) {
+			pool[poolSize++] = key;
+		}
+		
+		stepCount = 0;
+		if (poolSize == 0) {
+			position = -1;
+			return;
+		}
+		
+		if (pattern.length > 0) {
+			for (int step : pattern) {
+				steps[stepCount++] = (step - 1) % poolSize;
+			}
+		} else {
+			compileMode();
+		}
+		
+		seatPosition();
+		
+		// a new set of notes always moves on to the next step
+		repeatsPlayed = repeats - 1;
 	}
 	
 	/**
-	 * Returns the index of the next note in the ping pong sequence
-	 * @return The next note to arpeggiate
+	 * Compiles the steps in the order given by the mode of the arpeggiator.
+	 * Random mode has no steps, as every note is chosen as it is played.
 	 */
-	private int getNextPingPong() {
+	private void compileMode() {
+		switch(type) {
+		case RANDOM:
+			break;
+		case DESCENDING:
+			for (int i = poolSize - 1; i >= 0; i--) {
+				steps[stepCount++] = i;
+			}
+			break;
+		case PING_PONG:
+			for (int i = 0; i < poolSize; i++) {
+				steps[stepCount++] = i;
+			}
+			for (int i = poolSize - 2; i > 0; i--) {
+				steps[stepCount++] = i;
+			}
+			break;
+		default:
+			for (int i = 0; i < poolSize; i++) {
+				steps[stepCount++] = i;
+			}
+			break;
+		}
+	}
+	
+	/**
+	 * Finds the step that the last arpeggiated note was played at, so that 
+	 * the sequence carries on from the same position in the note pool when
+	 * notes are added or removed. If the last note was past the end of the new
+	 * note pool, the sequence carries on from the highest note.
+	 */
+	private void seatPosition() {
 		
-		// special case, there is only one note
-		if (notesCurrentlyOn.size() == 1 ) {
-			return 0;
+		// random mode only needs to know which note not to repeat
+		if (stepCount == 0) {
+			position = -1;
+			if (indexOfLastArpeggiatedNote != -1) {
+				indexOfLastArpeggiatedNote =
+						poolKeys.indexOf(lastArpeggiatedNote.getKeyNumber());
+			}
+			return;
 		}
 
-		// a ping pong sequence has already started
-		if (indexOfLastArpeggiatedNote != -1) {
-			
-			// in ascending mode
-			if (pingPongAscending) {
-				
-				// we hit the top note
-				if (indexOfLastArpeggiatedNote >= notesCurrentlyOn.size() -1) {
-					
-					//stop ascending
-					pingPongAscending = false;
-					
-					// start descending
-					return Math.min(indexOfLastArpeggiatedNote - 1, 
-							notesCurrentlyOn.size() - 1 );
-				} else {
-					
-					//ascend
-					return indexOfLastArpeggiatedNote + 1 ;
-
-				}	
-				
-			// in descending mode
+		// nothing played yet, or a custom pattern carries on in time
+		if (indexOfLastArpeggiatedNote == -1) {
+			position = -1;
+			return;
+		}
+		if (pattern.length > 0) {
+			position = Math.min(position, stepCount - 1);
+			return;
+		}
+		
+		int last = Math.min(indexOfLastArpeggiatedNote, poolSize - 1);
+		
+		switch(type) {
+		case DESCENDING:
+			position = poolSize - 1 - last;
+			break;
+		case PING_PONG:
+			if (!pingPongAscending && last > 0 && last < poolSize - 1) {
+				// on the way down
+				position = 2 * poolSize - 2 - last;
+			} else if (pingPongAscending && 
+					indexOfLastArpeggiatedNote >= poolSize && poolSize > 1) {
+				// the top notes were removed, so go to the new top
+				position = poolSize - 2;
 			} else {
-				
-				// hit the bottom note
-				if (indexOfLastArpeggiatedNote <= 0) {
-					
-					// stop descending
-					pingPongAscending = true;
-					
-					// start ascending
-					return Math.min(1, notesCurrentlyOn.size() - 1);
-					
-				} else {
-					
-					// descend
-					return Math.max(0, indexOfLastArpeggiatedNote - 1);
-					
+				position = last;
+			}
+			break;
+		default:
+			position = last;
+			break;
+		}
+	}
+	
+	/**
+	 * @param key - The key of the note
+	 * @return The held note with the key, or the note from the dictionary if
+	 * 		   the key is in one of the higher octaves
+	 */
+	private Note getNote(int key) {
+		if (heldNotes[key] != null) {
+			return heldNotes[key];
+		}
+		return noteDictionary.getNote(key);
+	}
+	
+	/**
+	 * Sets the octave range, pattern, repeats, latch and restart from the 
+	 * second parameter of the configuration file, in the format 
+	 * "octaves=2;pattern=1 3 2 4;repeats=2;latch=on;restart=bar". Parameters
+	 * that are left out keep their default values.
+	 * @param parameters - The parameters, or "NoParams" for the defaults
+	 * @throws IllegalArgumentException if the parameters are not valid
+	 */
+	public void setSequenceParameters(String parameters) {
+		int newOctaves = 1;
+		int[] newPattern = NO_PATTERN;
+		int newRepeats = 1;
+		boolean newLatch = false;
+		boolean newRestartOnBar = false;
+		
+		String trimmed = parameters.trim();
+		if (!trimmed.isEmpty() && !trimmed.equals(NO_PARAMS)) {
+			for (String parameter : trimmed.split(";")) {
+				String[] pair = parameter.split("=", 2);
+				if (pair.length != 2) {
+					throw new IllegalArgumentException(
+							"Arpeggiator parameter not valid: " + parameter);
 				}
 				
+				switch (pair[0].trim()) {
+				case "octaves":
+					newOctaves = Integer.parseInt(pair[1].trim());
+					break;
+				case "pattern":
+					newPattern = parsePattern(pair[1]);
+					break;
+				case "repeats":
+					newRepeats = Integer.parseInt(pair[1].trim());
+					break;
+				case "latch":
+					newLatch = parseSwitch(pair[1], "on", "off");
+					break;
+				case "restart":
+					newRestartOnBar = parseSwitch(pair[1], "bar", "free");
+					break;
+				default:
+					throw new IllegalArgumentException(
+							"Arpeggiator parameter not valid: " + parameter);
+				}
 			}
 		}
 		
-		// Reach here because index of last arpeggiated note is -1
-		// so start ascending.
-		pingPongAscending = true;
-		return 0;
+		if (newOctaves < 1 || newOctaves > MAX_OCTAVES || 
+				newRepeats < 1 || newRepeats > MAX_REPEATS) {
+			throw new IllegalArgumentException(
+					"Arpeggiator parameters out of range: " + parameters);
+		}
+		
+		octaves = newOctaves;
+		pattern = newPattern;
+		repeats = newRepeats;
+		restartOnBar = newRestartOnBar;
+		setLatch(newLatch);
+		sequenceChanged = true;
 	}
 	
 	/**
-	 * Returns the index of the next note to arpeggiated in a random sequence
-	 * @return The next note to arpeggiate
+	 * @param value - The value of a parameter with two settings
+	 * @param on - The value that turns the setting on
+	 * @param off - The value that turns the setting off
+	 * @return Whether the setting is on
+	 * @throws IllegalArgumentException if the value is neither
 	 */
-	private int getNextRandom() {
-		// special case where there is only one note
-		if (notesCurrentlyOn.size() == 1 ) {
-			return 0;
-		}
-
-		// generate a number in the range of the size of available notes
-		int randomIndex = 
-				ThreadLocalRandom.current().nextInt(0, notesCurrentlyOn.size());
-
-		// it can't be the same as the currently on note (unless there is only
-		// one note
-		while (randomIndex == notesCurrentlyOn.indexOf(lastArpeggiatedNote)) {
-			randomIndex = 
-					ThreadLocalRandom.current().nextInt(0, notesCurrentlyOn.size());
+	private static boolean parseSwitch(String value, String on, String off) {
+		if (value.trim().equals(on)) {
+			return true;
+		} else if (value.trim().equals(off)) {
+			return false;
 		}
+		throw new IllegalArgumentException(
+				"Arpeggiator parameter not valid: " + value);
+	}
 	
-		return randomIndex;
+	/**
+	 * @param pattern - The pattern as positions in the note pool separated by
+	 * 				    spaces (eg. "1 3 2 4"), or an empty string for none
+	 * @return The pattern
+	 * @throws IllegalArgumentException if the pattern is not valid
+	 */
+	private static int[] parsePattern(String pattern) {
+		String trimmed = pattern.trim();
+		if (trimmed.isEmpty()) {
+			return NO_PATTERN;
+		}
+		
+		String[] tokens = trimmed.split("\\s+");
+		if (tokens.length > MAX_PATTERN_LENGTH) {
+			throw new IllegalArgumentException("Pattern too long: " + pattern);
+		}
+		
+		int[] steps = new int[tokens.length];
+		for (int i = 0; i < tokens.length; i++) {
+			steps[i] = Integer.parseInt(tokens[i]);
+			if (steps[i] < 1) {
+				throw new IllegalArgumentException(
+						"Pattern steps start from 1: " + pattern);
+			}
+		}
+		return steps;
 	}
 	
 	
@@ -354,7 +647,27 @@ public class Arpeggiator implements ProcessingBlock {
 	
 	@Override
 	public String toString() {
-		return "Arpeggiator: " + type;
+		StringBuilder description = new StringBuilder("Arpeggiator: " + type);
+		
+		if (octaves > 1) {
+			description.append(", ").append(octaves).append(" octaves");
+		}
+		if (pattern.length > 0) {
+			description.append(", Pattern: ").append(getPattern());
+		}
+		if (repeats > 1) {
+			description.append(", Repeats: ").append(repeats);
+		}
+		if (latch) {
+			description.append(", Latched");
+		}
+		if (restartOnBar) {
+			description.append(", Restart on bar");
+		}
+		if (subdivision != Subdivision.QUARTER) {
+			description.append(", ").append(subdivision).append(" steps");
+		}
+		return description.toString();
 	}
 	
 	public String getType() {
@@ -368,15 +681,169 @@ public class Arpeggiator implements ProcessingBlock {
 	
 	@Override
 	public String getParameters() {
-		return type+",NoParams";
+		return type + "," + Subdivision.withRate(getSequenceParameters(),
+				subdivision);
+	}
+	
+	/**
+	 * @return The octave range, pattern, repeats, latch and restart in the 
+	 * 		   format read by
+	 * 		   setSequenceParameters, or "NoParams" if they are the defaults
+	 */
+	public String getSequenceParameters() {
+		StringBuilder parameters = new StringBuilder();
+		
+		if (octaves > 1) {
+			parameters.append("octaves=").append(octaves);
+		}
+		if (pattern.length > 0) {
+			if (parameters.length() > 0) {
+				parameters.append(';');
+			}
+			parameters.append("pattern=").append(getPattern());
+		}
+		if (repeats > 1) {
+			if (parameters.length() > 0) {
+				parameters.append(';');
+			}
+			parameters.append("repeats=").append(repeats);
+		}
+		if (latch) {
+			if (parameters.length() > 0) {
+				parameters.append(';');
+			}
+			parameters.append("latch=on");
+		}
+		if (restartOnBar) {
+			if (parameters.length() > 0) {
+				parameters.append(';');
+			}
+			parameters.append("restart=bar");
+		}
+		
+		return parameters.length() > 0 ? parameters.toString() : NO_PARAMS;
 	}
 	
 	public void setArpeggiatorType(String type) {
 		this.type = type;
+		sequenceChanged = true;
+	}
+	
+	@Override
+	public void setParameters(String type, String sequenceParameters) {
+		Subdivision rate = Subdivision.rateOf(sequenceParameters);
+		setArpeggiatorType(type);
+		setSequenceParameters(Subdivision.withoutRate(sequenceParameters));
+		setSubdivision(rate);
+	}
+	
+	public int getOctaves() {
+		return octaves;
+	}
+	
+	/**
+	 * @param octaves - The number of octaves to spread the held notes over,
+	 * 				    from 1 to 4
+	 */
+	public void setOctaves(int octaves) {
+		this.octaves = Math.max(1, Math.min(MAX_OCTAVES, octaves));
+		sequenceChanged = true;
+	}
+	
+	/**
+	 * @return The pattern as positions separated by spaces, or an empty
+	 * 		   string if the order is given by the mode
+	 */
+	public String getPattern() {
+		StringBuilder steps = new StringBuilder();
+		for (int step : pattern) {
+			if (steps.length() > 0) {
+				steps.append(' ');
+			}
+			steps.append(step);
+		}
+		return steps.toString();
+	}
+	
+	/**
+	 * @param pattern - The order to play the notes in, as positions in the
+	 * 				    note pool separated by spaces (eg. "1 3 2 4"), or an
+	 * 				    empty string to use the order of the mode
+	 * @throws IllegalArgumentException if the pattern is not valid
+	 */
+	public void setPattern(String pattern) {
+		this.pattern = parsePattern(pattern);
+		sequenceChanged = true;
+	}
+	
+	public boolean isLatched() {
+		return latch;
+	}
+	
+	/**
+	 * Turns latch mode on or off. When it is turned off, the notes whose keys
+	 * are no longer held are released.
+	 * @param latch - Whether the notes keep playing after the keys are released
+	 */
+	public synchronized void setLatch(boolean latch) {
+		this.latch = latch;
+		
+		if (!latch) {
+			for (int key = notesCurrentlyOn.lowest(); key != -1; 
+					key = notesCurrentlyOn.next(key)) {
+				if (!keysDown.contains(key)) {
+					heldNotes[key] = null;
+				}
+			}
+			notesCurrentlyOn.copyFrom(keysDown);
+			publishChord();
+		}
+	}
+	
+	public boolean isRestartOnBar() {
+		return restartOnBar;
+	}
+	
+	/**
+	 * @param restartOnBar - Whether a new chord waits for the first beat of
+	 * 						 the next bar to start the sequence
+	 */
+	public void setRestartOnBar(boolean restartOnBar) {
+		this.restartOnBar = restartOnBar;
+	}
+	
+	public int getRepeats() {
+		return repeats;
+	}
+	
+	/**
+	 * @param repeats - The number of times each step is played, from 1 to 8
+	 */
+	public void setRepeats(int repeats) {
+		this.repeats = Math.max(1, Math.min(MAX_REPEATS, repeats));
+		sequenceChanged = true;
 	}
 	
-	public void clearNotesCurrentlyOn() {
+	@Override
+	public Subdivision getSubdivision() {
+		return subdivision;
+	}
+	
+	@Override
+	public void setSubdivision(Subdivision subdivision) {
+		this.subdivision = subdivision;
+	}
+	
+	public synchronized void clearNotesCurrentlyOn() {
 		notesCurrentlyOn.clear();
+		keysDown.clear();
+		Arrays.fill(heldNotes, null);
+		publishChord();
+	}
+	
+	@Override
+	public void releaseNotes() {
+		turnOffSoundingNote();
 	}
 	
 	@Override
@@ -384,8 +851,13 @@ public class Arpeggiator implements ProcessingBlock {
 		this.availableNotes = availableNotes;	
 	}
 	
-	public LinkedList<Note> getNotesCurrentlyOn() {
-		return new LinkedList<>(notesCurrentlyOn);
+	public synchronized LinkedList<Note> getNotesCurrentlyOn() {
+		LinkedList<Note> notes = new LinkedList<>();
+		for (int key = notesCurrentlyOn.lowest(); key != -1; 
+				key = notesCurrentlyOn.next(key)) {
+			notes.add(heldNotes[key]);
+		}
+		return notes;
 	}
 	
 	public Note getLastArpeggiatedNote() {
@@ -399,9 +871,7 @@ public class Arpeggiator implements ProcessingBlock {
 	public void update(Note note, Boolean noteOn) { }
 	
 	private void notifyObservers(Note note, Boolean noteOn, Note[] availableNotes) {
-		for (Observer observer : observers) {
-			observer.update(note, noteOn, availableNotes);
-		}
+		observers.notifyObservers(note, noteOn, availableNotes);
 	}
 
 	@Override
@@ -416,9 +886,7 @@ public class Arpeggiator implements ProcessingBlock {
 
 	@Override
 	public void notifyObservers(Note note, Boolean noteOn) {
-		for (Observer ob : observers) {
-			ob.update(note, noteOn);
-		}
+		observers.notifyObservers(note, noteOn);
 	}
 	
 	/**
@@ -426,13 +894,7 @@ public class Arpeggiator implements ProcessingBlock {
 	 * (so that the output processor does not receive duplicate events)
 	 */
 	public void removeAllObservers() {
-		Iterator<Observer> iterator = observers.iterator();
-
-		while (iterator.hasNext()){
-			iterator.next();
-			iterator.remove();
-		}
+		observers.clear();
 	}
-	
 
 }
@@ -0,0 +1,145 @@
+package processingblocks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import scales.Note;
+
+/**
+ * This class finds runs of consecutive stateless processing blocks in the
+ * chain, and folds each run into a single lookup table held by the first
+ * block of the run. Clock driven and other stateful blocks (such as the
+ * arpeggiator and gates) end a run, and still process each note themselves.
+ * @author Lisa Liu-Thorrold
+ *
+ */
+public final class ChainCompiler {
+	
+	private ChainCompiler() { }
+	
+	/**
+	 * Folds the runs of stateless blocks in the chain. This should be called
+	 * whenever the blocks in the chain, or their parameters, change. A run
+	 * whose blocks and parameters are unchanged keeps its table.
+	 * @param chain - The processing blocks, in chain order
+	 */
+	public static void compile(List<ProcessingBlock> chain) {
+		recompile(chain, null);
+	}
+	
+	/**
+	 * Folds the runs of stateless blocks in the chain after a single edit.
+	 * A run whose blocks are unchanged keeps its table, so only the runs
+	 * around the edit are worked out again.
+	 * @param chain - The processing blocks, in chain order
+	 * @param changed - The block whose parameters changed, or null if only
+	 * 					the order of the blocks changed
+	 */
+	public static void recompile(List<ProcessingBlock> chain, 
+			ProcessingBlock changed) {
+		ArrayList<StatelessBlock> run = new ArrayList<>();
+		int width = 1;
+		
+		for (ProcessingBlock block : chain) {
+			if (!(block instanceof StatelessBlock)) {
+				fold(run, changed);
+				width = 1;
+				continue;
+			}
+			
+			// a run that could output too many keys is split, so that the
+			// table stays small
+			StatelessBlock stateless = (StatelessBlock) block;
+			
+			if (width * stateless.getMaxOutputKeys() > CompiledRun.MAX_WIDTH) {
+				fold(run, changed);
+				width = 1;
+			}
+			
+			run.add(stateless);
+			width *= stateless.getMaxOutputKeys();
+		}
+		
+		fold(run, changed);
+	}
+	
+	/**
+	 * Gives the first block of the run the folded table, if there is more
+	 * than one block in the run, and empties the run
+	 * @param run - The stateless blocks of the run
+	 * @param changed - The block whose parameters changed, or null
+	 */
+	private static void fold(List<StatelessBlock> run, 
+			ProcessingBlock changed) {
+		for (int i = 1; i < run.size(); i++) {
+			dissolve(run.get(i));
+		}
+		
+		if (run.size() > 1) {
+			StatelessBlock[] blocks = run.toArray(new StatelessBlock[0]);
+			CompiledRun current = blocks[0].getCompiledRun();
+			
+			if (current == null || !current.hasBlocks(blocks) ||
+					current.contains(changed) || !current.isUpToDate()) {
+				blocks[0].setCompiledRun(new CompiledRun(blocks));
+			}
+		} else if (run.size() == 1) {
+			dissolve(run.get(0));
+		}
+		run.clear();
+	}
+	
+	/**
+	 * Stops a block running the folded run it is the first block of. The
+	 * notes the run turned on are turned off first, from the last block of
+	 * the run, as no block would remember to turn them off afterwards.
+	 * @param block - The first block of the run
+	 */
+	private static void dissolve(StatelessBlock block) {
+		CompiledRun run = block.getCompiledRun();
+		if (run != null) {
+			run.releaseNotes();
+			block.setCompiledRun(null);
+		}
+	}
+	
+	/**
+	 * Turns off the notes that passed through a block. A block that is not
+	 * the first block of a folded run does not process notes itself, so the
+	 * notes of the whole run it is in are turned off. This should be called
+	 * before the block is changed, moved or removed.
+	 * @param chain - The processing blocks, in chain order
+	 * @param block - The block in the chain
+	 */
+	public static void releaseNotes(List<ProcessingBlock> chain, 
+			ProcessingBlock block) {
+		for (ProcessingBlock first : chain) {
+			if (first != block && first instanceof StatelessBlock) {
+				CompiledRun run = ((StatelessBlock) first).getCompiledRun();
+				if (run != null && run.contains(block)) {
+					first.releaseNotes();
+				}
+			}
+		}
+		block.releaseNotes();
+	}
+	
+	/**
+	 * Works out the tables of the chain for a scale ahead of time, so that
+	 * the chain can be swapped in without any work on the first notes
+	 * @param chain - The processing blocks, in chain order
+	 * @param availableNotes - The available notes in the set scale
+	 */
+	public static void prepare(List<ProcessingBlock> chain, 
+			Note[] availableNotes) {
+		for (ProcessingBlock block : chain) {
+			block.setAvailableNotes(availableNotes);
+			
+			if (block instanceof StatelessBlock && 
+					((StatelessBlock) block).getCompiledRun() != null) {
+				((StatelessBlock) block).getCompiledRun().prepare(
+						availableNotes);
+			}
+		}
+	}
+}
@@ -1,10 +1,10 @@
 package processingblocks;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.Iterator;
 
 import midiblocks.Observer;
+import midiblocks.ObserverList;
 import scales.Note;
 
 /**
@@ -16,18 +16,69 @@ import scales.Note;
  * range of notes). The chord should play as long as the note is on. The block
  * has no parameters. If a note is received by this block which is not in the 
  * currently selected scale, it should be silently ignored.
+ * The shape of the chord can be changed from the triad to a seventh, sus2,
+ * sus4 or add9 chord, and the chord can be inverted by moving its lowest
+ * notes up an octave. The keys of the chord for every note in the scale are
+ * worked out when the scale or the shape changes, so chordifying a note only
+ * reads the table.
  * @author Lisa Liu-Thorrold
  *
  */
-public class Chordify implements ProcessingBlock {
+public class Chordify implements StatelessBlock {
 	
-	private final ArrayList<Observer> observers = new ArrayList<>();
-	private HashMap<Note, Boolean> notesSent = new HashMap<>();
+	private final ObserverList observers = new ObserverList();
+	
+	// Constants for the chord shapes
+	private final static String TRIAD = "Triad";
+	private final static String SEVENTH = "Seventh";
+	private final static String SUS2 = "Sus2";
+	private final static String SUS4 = "Sus4";
+	private final static String ADD9 = "Add9";
+	
+	// Constants for the inversions, the index is the number of notes moved
+	// up an octave
+	private final static String[] INVERSIONS = { "Root Position",
+			"First Inversion", "Second Inversion", "Third Inversion" };
+	
+	private final static String NO_PARAMS = "NoParams";
+	
+	private final static int MAX_CHORD_SIZE = 4;
+	private final static int OCTAVE = 12;
+	private final static int HIGHEST_KEY = 88;
+	
+	private String shape = TRIAD;
+	private int inversion = 0;
+	
+	// Steps up the scale from the played note for each note of the shape
+	private int[] degrees = shapeDegrees(TRIAD);
+	
+	// The keys of the chord for each key in the scale, MAX_CHORD_SIZE slots
+	// per key, and the number of keys in each chord (0 if the key is not in
+	// the scale)
+	private final int[] chordKeys = new int[NoteSet.CAPACITY * MAX_CHORD_SIZE];
+	private final int[] chordSize = new int[NoteSet.CAPACITY];
+	
+	// The notes of the scale, indexed by key
+	private final Note[] notesByKey = new Note[NoteSet.CAPACITY];
+	
+	// The scale the table was built for, null when it needs to be rebuilt
+	private Note[] tableScale;
+	
+	// The notes sent for the last note, and whether they were on
+	private final Note[] notesSent = new Note[MAX_CHORD_SIZE];
+	private int notesSentCount;
+	private boolean notesSentOn;
+	
+	// The notes of the chord sent for each key that is on
+	private final ActiveNoteMap activeNotes = new ActiveNoteMap(MAX_CHORD_SIZE);
+	
+	// The folded run this block is the first block of, if any
+	private volatile CompiledRun compiledRun;
 	
 	/**
 	 * This method processes the input of notes, outputs a series
-	 * of notes, defined at the input note, plus the notes 2, and
-	 * 4 higher within the globally set scale
+	 * of notes, defined by the input note and the chord shape within the
+	 * globally set scale
 	 * @param noteOn - Whether the note is on or not
 	 * @param firstNote - The note to chordify
 	 * @param availableNotes - The available notes in the set scale
@@ -36,55 +87,151 @@ public class Chordify implements ProcessingBlock {
 	@Override
 	public void update(Note firstNote, Boolean noteOn, Note[] availableNotes) {
 		
-		notesSent.clear();
-
-		// check if note is in the currently selected scale? if
-		// so, get it's index.
-		int inSelectedScale =
-				isInSelectedScale(firstNote, availableNotes);
-
-		// In the currently selected scale
-		if (inSelectedScale != -1) {
-			notifyObservers(firstNote, noteOn, availableNotes);
-			notesSent.put(firstNote, noteOn);
-
-			// get the second note higher, ignore if outside valid
-			// range of notes
-			if (inSelectedScale + 2 < availableNotes.length) {
-				Note secondNote = availableNotes[inSelectedScale + 2];
-				notifyObservers(secondNote, noteOn, availableNotes);
-				notesSent.put(secondNote, noteOn);
+		// a note turned on before the run was folded is turned off by this
+		// block
+		CompiledRun run = compiledRun;
+		if (run != null && 
+				(noteOn || !activeNotes.isActive(firstNote.getKeyNumber()))) {
+			run.process(firstNote, noteOn, availableNotes);
+			return;
+		}
+		
+		chordify(firstNote, noteOn, availableNotes);
+	}
+	
+	/**
+	 * Sends the notes of the chord for a note
+	 * @param noteOn - Whether the note is on or not
+	 * @param firstNote - The note to chordify
+	 * @param availableNotes - The available notes in the set scale
+	 */
+	private synchronized void chordify(Note firstNote, Boolean noteOn, 
+			Note[] availableNotes) {
+		
+		if (availableNotes != tableScale) {
+			buildTable(availableNotes);
+		}
+		
+		notesSentCount = 0;
+		notesSentOn = noteOn;
+		
+		int key = firstNote.getKeyNumber();
+		
+		// turn off the notes of the chord that was turned on, even if the
+		// scale or shape has changed since
+		if (!noteOn && activeNotes.isActive(key)) {
+			for (int i = 0; i < activeNotes.size(key); i++) {
+				Note note = activeNotes.get(key, i);
+				notifyObservers(note, false, availableNotes);
+				notesSent[notesSentCount++] = note;
 			}
-
-			// get the fourth note higher, ignore if outside valid
-			// range of notes
-			if (inSelectedScale + 4 < availableNotes.length) {
-				Note fourthNote = availableNotes[inSelectedScale + 4];
-				notifyObservers(fourthNote, noteOn, availableNotes);
-				notesSent.put(fourthNote, noteOn);
+			activeNotes.remove(key);
+			return;
+		}
+		
+		// not in the currently selected scale, ignore it
+		if (key < 0 || key >= NoteSet.CAPACITY) {
+			return;
+		}
+		
+		if (noteOn) {
+			activeNotes.remove(key);
+		}
+		
+		int base = key * MAX_CHORD_SIZE;
+		int size = chordSize[key];
+		
+		for (int i = 0; i < size; i++) {
+			Note note = notesByKey[chordKeys[base + i]];
+			notifyObservers(note, noteOn, availableNotes);
+			notesSent[notesSentCount++] = note;
+			
+			if (noteOn) {
+				activeNotes.add(key, note);
 			}
 		}
-
 	}
-
+	
 	/**
-	 * This method checks to see whether the note is in the current selected
-	 * scale
-	 * @param note - The note to check
-	 * @param availableNotes - The notes available in currently selected scale
-	 * @return the position in the available notes is if the note is in the
-	 * 		   currently selected scale, -1 other wise
+	 * Works out the keys of the chord for every note in the scale. Notes of
+	 * the chord that are above the highest note in the scale are left out.
+	 * @param availableNotes - The available notes in the set scale
 	 */
-	private int isInSelectedScale(Note note, Note[] availableNotes) {
-
+	private void buildTable(Note[] availableNotes) {
+		Arrays.fill(chordSize, 0);
+		Arrays.fill(notesByKey, null);
+		tableScale = availableNotes;
+		
+		if (availableNotes == null) {
+			return;
+		}
+		
+		for (Note note : availableNotes) {
+			if (note != null && note.getKeyNumber() >= 0 && 
+					note.getKeyNumber() < NoteSet.CAPACITY) {
+				notesByKey[note.getKeyNumber()] = note;
+			}
+		}
+		
 		for (int i = 0; i < availableNotes.length; i++) {
-			if (availableNotes[i].getKeyNumber() == note.getKeyNumber()) {
-				//is in the selected scale
-				return i;
+			if (availableNotes[i] == null) {
+				continue;
 			}
+			
+			int key = availableNotes[i].getKeyNumber();
+			if (key < 0 || key >= NoteSet.CAPACITY) {
+				continue;
+			}
+			
+			int base = key * MAX_CHORD_SIZE;
+			int size = 0;
+			
+			for (int j = 0; j < degrees.length; j++) {
+				int index = i + degrees[j];
+				if (index >= availableNotes.length || 
+						availableNotes[index] == null) {
+					continue;
+				}
+				
+				int chordKey = availableNotes[index].getKeyNumber();
+				
+				// the lowest notes of an inverted chord go up an octave
+				if (j < inversion) {
+					chordKey += OCTAVE;
+					if (chordKey > HIGHEST_KEY || chordKey >= NoteSet.CAPACITY
+							|| notesByKey[chordKey] == null) {
+						continue;
+					}
+				}
+				
+				chordKeys[base + size] = chordKey;
+				size++;
+			}
+			
+			chordSize[key] = size;
+		}
+	}
+	
+	/**
+	 * @param shape - The name of the chord shape
+	 * @return The steps up the scale from the played note for each note of
+	 * 		   the chord, or null if the shape is not valid
+	 */
+	private static int[] shapeDegrees(String shape) {
+		switch (shape) {
+		case TRIAD:
+			return new int[] { 0, 2, 4 };
+		case SEVENTH:
+			return new int[] { 0, 2, 4, 6 };
+		case SUS2:
+			return new int[] { 0, 1, 4 };
+		case SUS4:
+			return new int[] { 0, 3, 4 };
+		case ADD9:
+			return new int[] { 0, 2, 4, 8 };
+		default:
+			return null;
 		}
-
-		return -1;
 	}
 
 	/*************************************************
@@ -93,7 +240,11 @@ public class Chordify implements ProcessingBlock {
 
 	@Override
 	public String toString() {
-		return "Chordify";
+		if (shape.equals(TRIAD) && inversion == 0) {
+			return "Chordify";
+		}
+		return "Chordify: " + shape + 
+				(inversion == 0 ? "" : ", " + INVERSIONS[inversion]);
 	}
 
 	@Override
@@ -103,12 +254,131 @@ public class Chordify implements ProcessingBlock {
 
 	@Override
 	public String getParameters() {
-		return "NoParams,NoParams";
+		if (shape.equals(TRIAD) && inversion == 0) {
+			return "NoParams,NoParams";
+		}
+		return shape + "," + (inversion == 0 ? NO_PARAMS : INVERSIONS[inversion]);
+	}
+	
+	/**
+	 * Sets the chord shape and inversion from the parameters of the 
+	 * configuration file
+	 * @param shape - The chord shape, or "NoParams" for a triad
+	 * @param inversion - The inversion, or "NoParams" for root position
+	 * @throws IllegalArgumentException if the parameters are not valid
+	 */
+	@Override
+	public void setParameters(String shape, String inversion) {
+		String newShape = shape.trim().equals(NO_PARAMS) ? TRIAD : shape.trim();
+		String newInversion = inversion.trim().equals(NO_PARAMS) ? 
+				INVERSIONS[0] : inversion.trim();
+		
+		if (shapeDegrees(newShape) == null) {
+			throw new IllegalArgumentException(
+					"Chordify shape not valid: " + shape);
+		}
+		
+		int index = Arrays.asList(INVERSIONS).indexOf(newInversion);
+		if (index == -1 || index >= shapeDegrees(newShape).length) {
+			throw new IllegalArgumentException(
+					"Chordify inversion not valid: " + inversion);
+		}
+		
+		setShape(newShape);
+		setInversion(index);
+	}
+	
+	public String getShape() {
+		return shape;
+	}
+	
+	/**
+	 * @param shape - One of "Triad", "Seventh", "Sus2", "Sus4" or "Add9"
+	 * @throws IllegalArgumentException if the shape is not valid
+	 */
+	public synchronized void setShape(String shape) {
+		int[] newDegrees = shapeDegrees(shape);
+		if (newDegrees == null) {
+			throw new IllegalArgumentException(
+					"Chordify shape not valid: " + shape);
+		}
+		
+		this.shape = shape;
+		this.degrees = newDegrees;
+		this.inversion = Math.min(inversion, newDegrees.length - 1);
+		tableScale = null;
+	}
+	
+	public int getInversion() {
+		return inversion;
+	}
+	
+	/**
+	 * @param inversion - The number of notes of the chord moved up an octave,
+	 * 					  from 0 (root position) to one less than the number
+	 * 					  of notes in the chord
+	 */
+	public synchronized void setInversion(int inversion) {
+		this.inversion = Math.max(0, Math.min(degrees.length - 1, inversion));
+		tableScale = null;
+	}
+	
+	@Override
+	public int getMaxOutputKeys() {
+		return MAX_CHORD_SIZE;
+	}
+	
+	@Override
+	public synchronized int mapKey(int key, Note[] availableNotes, 
+			int[] keysOut, int offset) {
+		if (availableNotes != tableScale) {
+			buildTable(availableNotes);
+		}
+		
+		if (key < 0 || key >= NoteSet.CAPACITY) {
+			return 0;
+		}
+		
+		int size = chordSize[key];
+		System.arraycopy(chordKeys, key * MAX_CHORD_SIZE, keysOut, offset, size);
+		return size;
+	}
+	
+	@Override
+	public synchronized void releaseNotes() {
+		CompiledRun run = compiledRun;
+		if (run != null) {
+			run.releaseNotes(tableScale);
+		}
+		
+		for (int key = 0; key < NoteSet.CAPACITY; key++) {
+			for (int i = 0; i < activeNotes.size(key); i++) {
+				notifyObservers(activeNotes.get(key, i), false, tableScale);
+			}
+		}
+		activeNotes.clear();
+	}
+	
+	@Override
+	public CompiledRun getCompiledRun() {
+		return compiledRun;
+	}
+	
+	@Override
+	public void setCompiledRun(CompiledRun run) {
+		if (run != null && compiledRun != null) {
+			run.inheritActiveNotes(compiledRun);
+		}
+		this.compiledRun = run;
 	}
 	
 	// For testing
-	public HashMap<Note, Boolean> getNotesSent() {
-		return new HashMap<>(notesSent);
+	public synchronized HashMap<Note, Boolean> getNotesSent() {
+		HashMap<Note, Boolean> sent = new HashMap<>();
+		for (int i = 0; i < notesSentCount; i++) {
+			sent.put(notesSent[i], notesSentOn);
+		}
+		return sent;
 	}
 	
 	/*************************************************
@@ -132,12 +402,19 @@ public class Chordify implements ProcessingBlock {
 	}
 	
 	@Override
-	public void setAvailableNotes(Note[] availableNotes) {	}
+	public synchronized void setAvailableNotes(Note[] availableNotes) {
+		if (availableNotes != tableScale) {
+			buildTable(availableNotes);
+		}
+	}
+	
+	@Override
+	public void sendNote(Note note, Boolean noteOn, Note[] availableNotes) {
+		notifyObservers(note, noteOn, availableNotes);
+	}
 	
 	private void notifyObservers(Note note, Boolean noteOn, Note[] availableNotes) {
-		for (Observer observer : observers) {
-			observer.update(note, noteOn, availableNotes);
-		}
+		observers.notifyObservers(note, noteOn, availableNotes);
 	}
 	
 	/**
@@ -145,12 +422,7 @@ public class Chordify implements ProcessingBlock {
 	 * (so that the output processor does not receive duplicate events)
 	 */
 	public void removeAllObservers() {
-		Iterator<Observer> iterator = observers.iterator();
-
-		while (iterator.hasNext()){
-			iterator.next();
-			iterator.remove();
-		}
+		observers.clear();
 	}
 
 }
@@ -0,0 +1,17 @@
+package processingblocks;
+
+import midiblocks.Subdivision;
+
+/**
+ * This is the interface for Processing Blocks that are stepped by the master
+ * clock (via the tick bus) rather than only by incoming notes. Each step is
+ * given the number of the master clock sub-tick it falls on, so that blocks
+ * can line up with the bar.
+ * @author Lisa Liu-Thorrold
+ *
+ */
+public interface ClockedBlock extends ProcessingBlock {
+	void clockTick(long tick);
+	Subdivision getSubdivision();
+	void setSubdivision(Subdivision subdivision);
+}
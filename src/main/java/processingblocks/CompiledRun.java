@@ -0,0 +1,251 @@
+package processingblocks;
+
+import java.util.Arrays;
+
+import scales.Note;
+
+/**
+ * This class is a run of consecutive stateless processing blocks folded into
+ * one table, from each input key to the keys output by the last block of the
+ * run. The table is worked out again only when the globally set scale
+ * changes, so a note passes through the whole run with a single table read.
+ * The notes are output in the same order as if each block had processed them
+ * in turn. The notes sent for each input key that is on are recorded, so that
+ * the note off turns off the same notes even if the table has changed.
+ * @author Lisa Liu-Thorrold
+ *
+ */
+public class CompiledRun {
+
+	// Most output keys for one input key
+	public static final int MAX_WIDTH = 64;
+
+	// The blocks of the run, in chain order
+	private final StatelessBlock[] blocks;
+	
+	// The parameters of the blocks when the run was folded
+	private final String[] parameters;
+	
+	// Number of table slots for each input key
+	private final int width;
+	
+	// The output keys for each input key, width slots per key, and the
+	// number of output keys for each input key
+	private final int[] table;
+	private final int[] counts = new int[NoteSet.CAPACITY];
+	
+	// The notes of the scale, indexed by key
+	private final Note[] notesByKey = new Note[NoteSet.CAPACITY];
+	
+	// The scale the table was built for, null until it is built
+	private Note[] tableScale;
+	
+	// The notes sent for each input key that is on
+	private final ActiveNoteMap activeNotes = new ActiveNoteMap(MAX_WIDTH);
+	
+	// Keys passed between the blocks while the table is built
+	private final int[] keysIn;
+	private final int[] keysOut;
+	
+	/**
+	 * @param blocks - The blocks of the run, in chain order
+	 */
+	public CompiledRun(StatelessBlock[] blocks) {
+		this.blocks = blocks.clone();
+		this.parameters = new String[blocks.length];
+		for (int i = 0; i < blocks.length; i++) {
+			parameters[i] = blocks[i].getParameters();
+		}
+		this.width = getWidth(blocks);
+		this.table = new int[NoteSet.CAPACITY * width];
+		this.keysIn = new int[width];
+		this.keysOut = new int[width];
+	}
+	
+	/**
+	 * Processes a note through the run, and sends the output notes from the
+	 * last block of the run
+	 * @param note - The note received by the first block of the run
+	 * @param noteOn - Whether the note is on or not
+	 * @param availableNotes - The available notes in the set scale
+	 */
+	public void process(Note note, Boolean noteOn, Note[] availableNotes) {
+		int key = note.getKeyNumber();
+		StatelessBlock last = blocks[blocks.length - 1];
+		
+		// turn off the notes that were turned on for the key
+		if (!noteOn && activeNotes.isActive(key)) {
+			for (int i = 0; i < activeNotes.size(key); i++) {
+				last.sendNote(activeNotes.get(key, i), false, availableNotes);
+			}
+			activeNotes.remove(key);
+			return;
+		}
+		
+		if (availableNotes != tableScale) {
+			buildTable(availableNotes);
+		}
+		
+		if (key < 0 || key >= NoteSet.CAPACITY) {
+			return;
+		}
+		
+		if (noteOn) {
+			activeNotes.remove(key);
+		}
+		
+		int base = key * width;
+		int count = counts[key];
+		
+		for (int i = 0; i < count; i++) {
+			Note output = notesByKey[table[base + i]];
+			last.sendNote(output, noteOn, availableNotes);
+			
+			if (noteOn) {
+				activeNotes.add(key, output);
+			}
+		}
+	}
+	
+	/**
+	 * Turns off every note the run has turned on
+	 * @param availableNotes - The available notes in the set scale
+	 */
+	public void releaseNotes(Note[] availableNotes) {
+		StatelessBlock last = blocks[blocks.length - 1];
+		
+		for (int key = 0; key < NoteSet.CAPACITY; key++) {
+			for (int i = 0; i < activeNotes.size(key); i++) {
+				last.sendNote(activeNotes.get(key, i), false, availableNotes);
+			}
+		}
+		activeNotes.clear();
+	}
+	
+	/**
+	 * Turns off every note the run has turned on, in the scale the table was
+	 * last built for
+	 */
+	public void releaseNotes() {
+		releaseNotes(tableScale);
+	}
+	
+	/**
+	 * @param blocks - The blocks of a run
+	 * @return true if this run folds exactly these blocks, in this order
+	 */
+	public boolean hasBlocks(StatelessBlock[] blocks) {
+		return Arrays.equals(this.blocks, blocks);
+	}
+	
+	/**
+	 * @param block - A processing block
+	 * @return true if the block is one of the blocks of this run
+	 */
+	public boolean contains(ProcessingBlock block) {
+		for (StatelessBlock b : blocks) {
+			if (b == block) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Takes over the notes that are on from the run this run replaces, so
+	 * that they are still turned off when the chain is compiled again
+	 * @param previous - The run this run replaces
+	 */
+	public void inheritActiveNotes(CompiledRun previous) {
+		activeNotes.copyFrom(previous.activeNotes);
+	}
+	
+	/**
+	 * Works out the table for a scale ahead of time, so that the first note
+	 * processed in that scale does not have to
+	 * @param availableNotes - The available notes in the set scale
+	 */
+	public void prepare(Note[] availableNotes) {
+		if (availableNotes != tableScale) {
+			buildTable(availableNotes);
+		}
+	}
+	
+	/**
+	 * @return true if none of the parameters of the blocks have changed
+	 * 		   since the run was folded
+	 */
+	public boolean isUpToDate() {
+		for (int i = 0; i < blocks.length; i++) {
+			if (!blocks[i].getParameters().equals(parameters[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Works out the output keys of the run for every input key
+	 * @param availableNotes - The available notes in the set scale
+	 */
+	private void buildTable(Note[] availableNotes) {
+		Arrays.fill(counts, 0);
+		Arrays.fill(notesByKey, null);
+		tableScale = availableNotes;
+		
+		if (availableNotes == null || availableNotes.length == 0) {
+			return;
+		}
+		
+		for (Note note : availableNotes) {
+			if (note != null && note.getKeyNumber() >= 0 && 
+					note.getKeyNumber() < NoteSet.CAPACITY) {
+				notesByKey[note.getKeyNumber()] = note;
+			}
+		}
+		
+		for (int key = 0; key < NoteSet.CAPACITY; key++) {
+			int[] in = keysIn;
+			int[] out = keysOut;
+			in[0] = key;
+			int size = 1;
+			
+			// pass the keys through each block in turn
+			for (StatelessBlock block : blocks) {
+				int outSize = 0;
+				for (int i = 0; i < size; i++) {
+					outSize += block.mapKey(in[i], availableNotes, out, outSize);
+				}
+				
+				int[] temp = in;
+				in = out;
+				out = temp;
+				size = outSize;
+			}
+			
+			// only keep keys that can be sent as notes of the scale
+			int base = key * width;
+			int count = 0;
+			for (int i = 0; i < size; i++) {
+				if (in[i] >= 0 && in[i] < NoteSet.CAPACITY && 
+						notesByKey[in[i]] != null) {
+					table[base + count] = in[i];
+					count++;
+				}
+			}
+			counts[key] = count;
+		}
+	}
+	
+	/**
+	 * @param blocks - The blocks of a run
+	 * @return The most keys the run can output for one input key
+	 */
+	static int getWidth(StatelessBlock[] blocks) {
+		int width = 1;
+		for (StatelessBlock block : blocks) {
+			width *= block.getMaxOutputKeys();
+		}
+		return width;
+	}
+}
@@ -1,10 +1,10 @@
 package processingblocks;
 
 import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.concurrent.LinkedBlockingDeque;
 
 import midiblocks.Observer;
+import midiblocks.ObserverList;
+import midiblocks.Subdivision;
 import scales.Note;
 
 /**
@@ -13,9 +13,9 @@ import scales.Note;
  * @author Lisa Liu-Thorrold
  *
  */
-public class Gates implements ProcessingBlock {
+public class Gates implements ClockedBlock {
 	
-	private final ArrayList<Observer> observers = new ArrayList<>();
+	private final ObserverList observers = new ObserverList();
 	
 	// parameter specified by the user
 	private double notesPerTick;
@@ -23,25 +23,65 @@ public class Gates implements ProcessingBlock {
 	// the mode of the gates
 	private String mode;
 	
-	// notes to released each time the gate is opened
-	private int notesReleasedPerTick;
+	// credit for releasing notes, which builds up by notesPerTick on every 
+	// tick and is spent one credit per note released. The fraction left over
+	// carries on to the next tick.
+	private double releaseCredit;
 	
-	// to store the note messages that arrive into this processing block
-	private final LinkedBlockingDeque<Note> gateQueue;
+	// the most notes a single tick can release, so that a gate that has been
+	// idle does not release a burst of notes
+	private double maxReleaseCredit;
 	
-	// note on messages that have been outputted
-	private final LinkedBlockingDeque<Note> noteOnOutputted;
+	// to store the keys of the note messages that arrive into this 
+	// processing block
+	private final NoteQueue gateQueue;
 	
-	// note off messages to be send next time gate opens, so no notes are left
-	// on indefinitely
-	private final LinkedBlockingDeque<Note> sendWhenGateOpens;
+	// keys of the note on messages that have been outputted, and not yet 
+	// turned off
+	private final NoteQueue noteOnOutputted;
+	
+	// keys of the note off messages to be send next time gate opens, so no 
+	// notes are left on indefinitely
+	private final NoteQueue sendWhenGateOpens;
+	
+	// The most recent note received for each key
+	private final Note[] notes;
+	
+	// What to do with a note that arrives when the gate queue is full
+	private OverflowPolicy overflowPolicy = OverflowPolicy.DROP_NEWEST;
+	
+	// Notes dropped because the gate queue was full, and notes discarded by
+	// the first hold and last hold modes
+	private long droppedNotes;
+	private long discardedNotes;
 	
 	private Note[] availableNotes;
 	
+	// How often the tick bus opens the gate. Read by the clock thread.
+	private volatile Subdivision subdivision = Subdivision.QUARTER;
+	
 	// Constants for the gates mode
 	private final static String QUEUE = "Queue";
 	private final static String FIRST_HOLD = "First Hold";
 	private final static String LAST_HOLD = "Last Hold";
+	private final static String LOWEST_PITCH = "Lowest Pitch";
+	private final static String HIGHEST_PITCH = "Highest Pitch";
+	
+	// Allowance for rounding when the credit is built up from fractions
+	private final static double CREDIT_TOLERANCE = 1e-9;
+	
+	// The number of notes the gate queue holds by default
+	public final static int DEFAULT_CAPACITY = 32;
+	
+	/**
+	 * What to do with a note on that arrives when the gate queue is full
+	 */
+	public enum OverflowPolicy {
+		// The new note is dropped
+		DROP_NEWEST,
+		// The note at the front of the queue is dropped to make room
+		DROP_OLDEST
+	}
 	
 	/**
 	 * The gate block is responsible for ensuring the MIDI stream maintains a 
@@ -55,20 +95,28 @@ public class Gates implements ProcessingBlock {
 	 * 			       all additional notes are ignored
 	 * 3. Last Hold - Only the last (most recent) note should be passed on the
 	 * 				  next tick, earlier notes are discarded
+	 * 4. Lowest Pitch - The lowest notes are passed first, and the other notes
+	 * 					 wait in the block (eg. for bass lines)
+	 * 5. Highest Pitch - The highest notes are passed first, and the other 
+	 * 					  notes wait in the block (eg. for leads)
 	 * @param mode - One of the modes defined above
 	 * @param notesPerTick - The number of notes to pass through on each clock
-	 * 						 tick. If number < 1, the gate should release a note
-	 * 						 every (1/notes per tick) ticks, rounded up to the
-	 * 						 next integer.
+	 * 						 tick. Fractional rates are spread over the ticks,
+	 * 						 so 0.25 releases a note every fourth tick, and 1.5
+	 * 						 alternates between releasing 2 and 1 notes.
+	 * The gate queue holds each key at most once, and up to 32 notes by 
+	 * default. Notes that arrive when it is full are dropped according to the
+	 * overflow policy.
 	 */
 	public Gates(String mode, double notesPerTick) {		
   	    // constrain notes per tick to be a double with 2dp
   	    this.notesPerTick = Math.round(notesPerTick * 100.0) / 100.0;
 		this.mode = mode;
-		setNotesReleasedPerTick();
-		gateQueue = new LinkedBlockingDeque<>();
-		sendWhenGateOpens = new LinkedBlockingDeque<>();
-		noteOnOutputted = new LinkedBlockingDeque<>();
+		setReleaseRate();
+		gateQueue = new NoteQueue(DEFAULT_CAPACITY);
+		sendWhenGateOpens = new NoteQueue(NoteSet.CAPACITY);
+		noteOnOutputted = new NoteQueue(NoteSet.CAPACITY);
+		notes = new Note[NoteSet.CAPACITY];
 	}
 	
 
@@ -77,20 +125,46 @@ public class Gates implements ProcessingBlock {
 	 * If the message is a note of message, we add it to the queue.
 	 */
 	@Override
-	public void update(Note note, Boolean noteOn, Note[] availableNotes) {
+	public synchronized void update(Note note, Boolean noteOn, 
+			Note[] availableNotes) {
 		
 		if (this.availableNotes == null) {
 			this.availableNotes = availableNotes;
 		}
 		
 		if (noteOn) {
-			gateQueue.add(note);
+			handleNoteOn(note);
 		} else {
 			handleNoteOff(note);
 		}
 		
 	}
 	
+	/**
+	 * Handles a note on message. The note is added to the back of the gate 
+	 * queue, unless it is already waiting in the queue. If the queue is full,
+	 * a note is dropped according to the overflow policy.
+	 * @param note - The note to queue
+	 */
+	private void handleNoteOn(Note note) {
+		int key = note.getKeyNumber();
+		
+		if (gateQueue.contains(key)) {
+			return;
+		}
+		
+		if (gateQueue.isFull()) {
+			droppedNotes++;
+			if (overflowPolicy == OverflowPolicy.DROP_NEWEST) {
+				return;
+			}
+			gateQueue.pollFirst();
+		}
+		
+		notes[key] = note;
+		gateQueue.add(key);
+	}
+	
 	/**
 	 * Handles a note off message. 
 	 * - If the note is in the gate queue, it cancels and drops it from the queue
@@ -100,17 +174,16 @@ public class Gates implements ProcessingBlock {
 	 * @param note - The note to turn off
 	 */
 	private void handleNoteOff(Note note) {
+		int key = note.getKeyNumber();
 		
 		// If the note is in the gate queue, cancel and drop
-		if (gateQueue.contains(note)) {
-			gateQueue.remove(note);
-		}
+		gateQueue.remove(key);
 		
 		// If the note has been sent by a previous gate
-		if(noteOnOutputted.contains(note)) {
+		if(noteOnOutputted.contains(key)) {
 			
 			// Add it to the send when gate opens list
-			sendWhenGateOpens.add(note);
+			sendWhenGateOpens.add(key);
 		}
 	}
 	
@@ -119,95 +192,158 @@ public class Gates implements ProcessingBlock {
 	 * gets the note or notes to release from the gate depending on the input 
 	 * (via notifyObservers)
 	 */
-	public void release() {
-		System.out.println("Release!");
+	public synchronized void release() {
+		
+		// build up the credit for this tick
+		releaseCredit += notesPerTick;
 
 		//if we have nothing to send to the output controller, do nothing.
-		if (gateQueue.size() > 0 || sendWhenGateOpens.size() > 0) {
+		if (!gateQueue.isEmpty() || !sendWhenGateOpens.isEmpty()) {
 			
 			//release any off messages currently in the sendWhenGateOpensQueue
 			// these are all off notes that match with the on notes from the
-			// previously released lot.
-			for (Note n : sendWhenGateOpens) {
-				notifyObservers(n, false, availableNotes);
-				sendWhenGateOpens.remove(n);
-			}
+			// previously released lot. Note offs are not limited by the rate.
+			sendPendingNoteOffs();
 			
-			switch(mode) {
-			case QUEUE:
-				releaseQueue();
-				break;
-			case FIRST_HOLD:
-				releaseFirstHold();
-				break;
-			case LAST_HOLD:
-				releaseLastHold();
-				break;
-			} 
+			// the number of whole notes the credit allows
+			int notesAllowed = (int) (releaseCredit + CREDIT_TOLERANCE);
 			
+			if (notesAllowed > 0) {
+				int notesReleased = 0;
+				
+				switch(mode) {
+				case QUEUE:
+					notesReleased = releaseQueue(notesAllowed);
+					break;
+				case FIRST_HOLD:
+					notesReleased = releaseFirstHold();
+					break;
+				case LAST_HOLD:
+					notesReleased = releaseLastHold();
+					break;
+				case LOWEST_PITCH:
+				case HIGHEST_PITCH:
+					notesReleased = releasePriority(notesAllowed);
+					break;
+				} 
+				
+				releaseCredit -= notesReleased;
+			}
 		}
+		
+		// a gate with no notes waiting does not save up credit, so that the 
+		// next tick releases no more than its share of notes
+		if (gateQueue.isEmpty()) {
+			releaseCredit = Math.min(releaseCredit, 
+					maxReleaseCredit - notesPerTick);
+		}
+	}
+	
+	/**
+	 * Invoked by the tick bus at every step of this block's subdivision.
+	 * @param tick - The number of the master clock sub-tick
+	 */
+	@Override
+	public void clockTick(long tick) {
+		release();
 	}
 	
 	/**
 	 * Releases the notes according the queue mode. (Notes are released in a
 	 * first-in-first-out fashion
+	 * @param notesAllowed - The most notes to release
+	 * @return The number of notes released
 	 */
-	private void releaseQueue() {
+	private int releaseQueue(int notesAllowed) {
 		
 		// If the size of the queue is less the parameter supplied the user,
 		// then clear the queue.
-		int numIterations = Math.min(gateQueue.size(), notesReleasedPerTick);
+		int numIterations = Math.min(gateQueue.size(), notesAllowed);
 		
 		for (int i = 0; i < numIterations; i++) {
 			
-			// Get the note at the front of the queue
-			Note toRelease = gateQueue.getFirst();
-			
-			// Send to output
-			notifyObservers(toRelease, true, availableNotes);
-			
-			// Add it to the list of outputted notes
-			noteOnOutputted.add(toRelease);
-			
-			// Remove it from the front of the queue
-			gateQueue.removeFirst();
+			// Take the note at the front of the queue, and send to output
+			releaseNote(gateQueue.pollFirst());
 		}
+		
+		return numIterations;
 	}
 	
 	/**
 	 * Only the first note should be released (at the front of the queue)
+	 * @return The number of notes released
 	 */
-	private void releaseFirstHold() {
+	private int releaseFirstHold() {
 		
-		if (gateQueue.size() > 0) {
-			Note toRelease = gateQueue.getFirst();
+		if (!gateQueue.isEmpty()) {
 			
 			// Send to output
-			notifyObservers(toRelease, true, availableNotes);
-			
-			// Add it to the output list
-			noteOnOutputted.add(toRelease);
+			releaseNote(gateQueue.pollFirst());
 			
 			// Clear the queue (discard all other notes)
+			discardedNotes += gateQueue.size();
 			gateQueue.clear();
+			return 1;
 		}
+		return 0;
 	}
 	
 	/**
 	 * Only the last (most recent) note should be passed on the next tick.
+	 * @return The number of notes released
 	 */
-	private void releaseLastHold() {
-		if (gateQueue.size() > 0) {
-			Note toRelease = gateQueue.getLast();
+	private int releaseLastHold() {
+		if (!gateQueue.isEmpty()) {
 
 			// Send to output
-			notifyObservers(toRelease, true, availableNotes);
-
-			// Add it to the output list
-			noteOnOutputted.add(toRelease);
+			releaseNote(gateQueue.pollLast());
 
 			// Clear the queue (discard all the other notes)
+			discardedNotes += gateQueue.size();
 			gateQueue.clear();	
+			return 1;
+		}
+		return 0;
+	}
+	
+	/**
+	 * Releases the lowest or highest notes in the queue, depending on the 
+	 * mode. The queue indexes its keys in a bit set, so each note is found 
+	 * with a bit scan rather than by sorting the queue.
+	 * @param notesAllowed - The most notes to release
+	 * @return The number of notes released
+	 */
+	private int releasePriority(int notesAllowed) {
+		int numIterations = Math.min(gateQueue.size(), notesAllowed);
+		
+		for (int i = 0; i < numIterations; i++) {
+			int key = mode.equals(LOWEST_PITCH) ? gateQueue.lowest() : 
+				gateQueue.highest();
+			gateQueue.remove(key);
+			releaseNote(key);
+		}
+		
+		return numIterations;
+	}
+	
+	/**
+	 * Sends a note that has been taken from the gate queue to the output, 
+	 * and remembers it so that its note off can be sent later.
+	 * @param key - The key of the note to release
+	 */
+	private void releaseNote(int key) {
+		notifyObservers(notes[key], true, availableNotes);
+		noteOnOutputted.add(key);
+	}
+	
+	/**
+	 * Sends the note offs that have been received for released notes.
+	 */
+	private void sendPendingNoteOffs() {
+		for (int key = sendWhenGateOpens.pollFirst(); key != -1; 
+				key = sendWhenGateOpens.pollFirst()) {
+			noteOnOutputted.remove(key);
+			notifyObservers(notes[key], false, availableNotes);
 		}
 	}
 
@@ -215,21 +351,18 @@ public class Gates implements ProcessingBlock {
 	/**
 	 * Clears the gate so that input from old midi source is handled.
 	 */
-	public void clearGateQueue() {
+	public synchronized void clearGateQueue() {
 		// delete everything that is due to be sent next time the gate opens
 		gateQueue.clear();
 		
 		// send everything that was supposed to be sent next time the gate opens
-		for (Note n : sendWhenGateOpens) {
-			notifyObservers(n, false, availableNotes);
-			sendWhenGateOpens.remove(n);
-		}
+		sendPendingNoteOffs();
 		
 		// send the corresponding 'off notes' for the ones that have already 
 		// been released.
-		for (Note n : noteOnOutputted) {
-			notifyObservers(n, false, availableNotes);
-			noteOnOutputted.remove(n);
+		for (int key = noteOnOutputted.pollFirst(); key != -1; 
+				key = noteOnOutputted.pollFirst()) {
+			notifyObservers(notes[key], false, availableNotes);
 		}
 		
 		
@@ -242,21 +375,13 @@ public class Gates implements ProcessingBlock {
 	 *************************************************/
 	
 	/**
-	 * Sets the notes to be released each time the gate is opened.
+	 * Sets up the release credit for the notes per tick. A tick can release
+	 * up to one tick's worth of whole notes (and at least one note), and the
+	 * credit starts so that the first tick releases that many straight away.
 	 */
-	private void setNotesReleasedPerTick() {
-		// if notesPerTick < 1, notes released per tick = 1/notesPerTick, 
-		// rounded up to the next integer
-		if (notesPerTick < 1) {
-			notesReleasedPerTick = (int) Math.ceil(1/notesPerTick);
-		} else {
-			// greater than one, round to the nearest integer	
-			if (notesPerTick % 1 >= 0.5) {
-				notesReleasedPerTick = (int) Math.ceil(notesPerTick);
-			} else {
-				notesReleasedPerTick = (int) Math.floor(notesPerTick);
-			}
-		}
+	private void setReleaseRate() {
+		maxReleaseCredit = Math.max(1, Math.ceil(notesPerTick));
+		releaseCredit = maxReleaseCredit - notesPerTick;
 	}
 	
 	/*************************************************
@@ -270,52 +395,124 @@ public class Gates implements ProcessingBlock {
 
 	@Override
 	public String getParameters() {
-		return mode + "," + Double.toString(notesPerTick); 
+		return mode + "," + Subdivision.withRate(
+				Double.toString(notesPerTick), subdivision); 
 	}
 	
 	@Override
 	public String toString() {
-		return "Gates: " + mode + ", Notes released per tick: " + 
+		String description = "Gates: " + mode + ", Notes released per tick: " +
 				Double.toString(notesPerTick);
+		if (subdivision != Subdivision.QUARTER) {
+			description += ", " + subdivision + " steps";
+		}
+		return description;
 	}
 	
 	public String getMode() {
 		return mode;
 	}
 	
-	public void setGatesMode(String mode) {
+	public synchronized void setGatesMode(String mode) {
 		this.mode = mode;
 	}
 	
-	public void setGatesNotesPerTick(double notesPerTick) {
+	public synchronized void setGatesNotesPerTick(double notesPerTick) {
   	    // constrain notes per tick to be a double with 2dp
   	    this.notesPerTick = Math.round(notesPerTick * 100.0) / 100.0;
-  	    setNotesReleasedPerTick();
+  	    setReleaseRate();
+	}
+	
+	@Override
+	public void setParameters(String mode, String notesPerTick) {
+		Subdivision rate = Subdivision.rateOf(notesPerTick);
+		setGatesMode(mode);
+		setGatesNotesPerTick(Double.parseDouble(
+				Subdivision.withoutRate(notesPerTick).trim()));
+		setSubdivision(rate);
 	}
 	
 	public double getNotesPerTick() {
 		return notesPerTick;
 	}
 	
+	@Override
+	public Subdivision getSubdivision() {
+		return subdivision;
+	}
+	
+	@Override
+	public void setSubdivision(Subdivision subdivision) {
+		this.subdivision = subdivision;
+	}
+	
+	@Override
+	public void releaseNotes() {
+		clearGateQueue();
+	}
+	
 	@Override
 	public void setAvailableNotes(Note[] availableNotes) {
 		this.availableNotes = availableNotes;	
 	}
 	
+	public synchronized int getCapacity() {
+		return gateQueue.getCapacity();
+	}
+	
+	/**
+	 * @param capacity - The number of notes the gate queue holds, from 1 to
+	 * 					 128
+	 */
+	public synchronized void setCapacity(int capacity) {
+		gateQueue.setCapacity(capacity);
+	}
+	
+	public OverflowPolicy getOverflowPolicy() {
+		return overflowPolicy;
+	}
+	
+	public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+		this.overflowPolicy = overflowPolicy;
+	}
+	
+	/**
+	 * @return The number of notes dropped because the gate queue was full
+	 */
+	public synchronized long getDroppedNotes() {
+		return droppedNotes;
+	}
+	
+	/**
+	 * @return The number of notes discarded by the first hold and last hold 
+	 * 		   modes
+	 */
+	public synchronized long getDiscardedNotes() {
+		return discardedNotes;
+	}
+	
 	/*************************************************
 	 *  Getter methods used for unit testing
 	 *************************************************/
 	
-	public ArrayList<Note> getGateQueue() {
-		return new ArrayList<>(gateQueue);
+	public synchronized ArrayList<Note> getGateQueue() {
+		return toNotes(gateQueue);
+	}
+	
+	public synchronized ArrayList<Note> getNoteOnOutputted() {
+		return toNotes(noteOnOutputted);
 	}
 	
-	public ArrayList<Note> getNoteOnOutputted() {
-		return new ArrayList<>(noteOnOutputted);
+	public synchronized ArrayList<Note> getSendWhenGateOpens() {
+		return toNotes(sendWhenGateOpens);
 	}
 	
-	public ArrayList<Note> getSendWhenGateOpens() {
-		return new ArrayList<>(sendWhenGateOpens);
+	private ArrayList<Note> toNotes(NoteQueue queue) {
+		ArrayList<Note> list = new ArrayList<>();
+		for (int key : queue.toArray()) {
+			list.add(notes[key]);
+		}
+		return list;
 	}
 	
 	
@@ -327,9 +524,7 @@ public class Gates implements ProcessingBlock {
 	public void update(Note note, Boolean noteOn) { }
 	
 	private void notifyObservers(Note note, Boolean noteOn, Note[] availableNotes) {
-		for (Observer observer : observers) {
-			observer.update(note, noteOn, availableNotes);
-		}
+		observers.notifyObservers(note, noteOn, availableNotes);
 	}
 	
 
@@ -345,9 +540,7 @@ public class Gates implements ProcessingBlock {
 
 	@Override
 	public void notifyObservers(Note note, Boolean noteOn) {
-		for (Observer ob : observers) {
-			ob.update(note, noteOn);
-		}
+		observers.notifyObservers(note, noteOn);
 	}
 	
 	/**
@@ -355,12 +548,7 @@ public class Gates implements ProcessingBlock {
 	 * (so that the output processor does not receive duplicate events)
 	 */
 	public void removeAllObservers() {
-		Iterator<Observer> iterator = observers.iterator();
-
-		while (iterator.hasNext()){
-			iterator.next();
-			iterator.remove();
-		}
+		observers.clear();
 	}
 
 }
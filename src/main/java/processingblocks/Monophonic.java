@@ -1,9 +1,8 @@
 package processingblocks;
 
-import java.util.ArrayList;
-import java.util.Iterator;
 
 import midiblocks.Observer;
+import midiblocks.ObserverList;
 import scales.Note;
 
 /**
@@ -16,6 +15,12 @@ import scales.Note;
  * note is an 'on' signal for a new note the block outputs an 'off' for the old
  * note and then an 'on' for the new note. If the input is an 'off signal' for
  * any other note, it is simply ignored.
+ * The block remembers every note that is held down. When the note that is
+ * on is released while other notes are still held, the block falls back to
+ * one of the held notes, chosen by the note priority: the last (most recent)
+ * note, the lowest note, or the highest note. In legato mode the new note is
+ * turned on before the old note is turned off, so that the sound is not
+ * retriggered.
  * @author Lisa Liu-Thorrold
  *
  */
@@ -23,38 +28,157 @@ public class Monophonic implements ProcessingBlock {
 	
 	private Note currentNoteOn;
 	
-	private final ArrayList<Observer> observers = new ArrayList<>();
+	private final ObserverList observers = new ObserverList();
+	
+	// Which held note is on
+	private String priority;
+	
+	// Whether notes change without turning the old note off first
+	private boolean legato;
+	
+	// The keys that are held down
+	private final NoteSet held = new NoteSet();
+	
+	// The held keys in the order they were pressed, as a linked list through
+	// the arrays, indexed by key
+	private final int[] newerKey = new int[NoteSet.CAPACITY];
+	private final int[] olderKey = new int[NoteSet.CAPACITY];
+	private int newestKey = NONE;
+	
+	// The most recent note received for each key
+	private final Note[] notes = new Note[NoteSet.CAPACITY];
+	
+	// The available notes of the last note received
+	private Note[] availableNotes;
+	
+	// Constants for the note priority
+	private final static String LAST_NOTE = "Last Note";
+	private final static String LOWEST_NOTE = "Lowest Note";
+	private final static String HIGHEST_NOTE = "Highest Note";
+	
+	private final static String LEGATO = "Legato";
+	private final static String NO_PARAMS = "NoParams";
+	
+	private final static int NONE = -1;
+	
+	public Monophonic() {
+		this(LAST_NOTE, false);
+	}
+	
+	/**
+	 * @param priority - Which held note is on, one of "Last Note", 
+	 * 					 "Lowest Note" or "Highest Note"
+	 * @param legato - Whether notes change without turning the old note off
+	 * 				   first
+	 */
+	public Monophonic(String priority, boolean legato) {
+		this.priority = priority;
+		this.legato = legato;
+	}
 
 	/**
 	 * This method is invoked when we receive a new note through the processing
-	 * block. This method turns the current note off (if it's on), and turns 
-	 * the new note on.
+	 * block. The held notes are updated, and if the note chosen by the 
+	 * priority has changed, this method turns the current note off (if it's 
+	 * on), and turns the new note on.
 	 */
 	@Override
 	public void update(Note note, Boolean noteOn, Note[] availableNotes) {
-		// If the note is a new note on message, and there is a note that is
-		// currently on
-		if (currentNoteOn != null && noteOn) {
-			// Turn the current note off				
-			notifyObservers(currentNoteOn, false, availableNotes);
-
-			// Assign the new note to be the current note
-			currentNoteOn = note;
-
-			// Turn on the new note
-			notifyObservers(currentNoteOn, true, availableNotes);
-
-			// The note is the first note on message
-		} else if (currentNoteOn == null && noteOn) {
-			currentNoteOn = note;
-			notifyObservers(currentNoteOn, true, availableNotes);
-			// note off message received
-		} else if (currentNoteOn != null) {
-			if (note.equals(currentNoteOn)) {
-				//this is the last note, turn it off!
+		int key = note.getKeyNumber();
+		this.availableNotes = availableNotes;
+		
+		if (noteOn) {
+			// a key pressed again moves to the top of the stack
+			if (held.contains(key)) {
+				removeHeld(key);
+			}
+			pushHeld(key);
+			notes[key] = note;
+			
+		} else if (held.contains(key)) {
+			removeHeld(key);
+			
+		} else {
+			// off signal for a note that is not held, ignore it
+			return;
+		}
+		
+		int selected = selectHeldNote();
+		
+		if (selected == NONE) {
+			//this is the last note, turn it off!
+			if (currentNoteOn != null) {
 				notifyObservers(currentNoteOn, false, availableNotes);
 				currentNoteOn = null;
 			}
+			
+		} else if (currentNoteOn == null) {
+			// The note is the first note on message
+			currentNoteOn = notes[selected];
+			notifyObservers(currentNoteOn, true, availableNotes);
+			
+		} else if (selected != currentNoteOn.getKeyNumber() || 
+				(noteOn && key == selected && !legato)) {
+			// Change to the new note (or retrigger the same note)
+			Note oldNote = currentNoteOn;
+			currentNoteOn = notes[selected];
+			
+			if (legato) {
+				notifyObservers(currentNoteOn, true, availableNotes);
+				notifyObservers(oldNote, false, availableNotes);
+			} else {
+				notifyObservers(oldNote, false, availableNotes);
+				notifyObservers(currentNoteOn, true, availableNotes);
+			}
+		}
+	}
+	
+	/**
+	 * @return The key of the held note that should be on, according to the
+	 * 		   priority, or -1 if no notes are held
+	 */
+	private int selectHeldNote() {
+		switch (priority) {
+		case LOWEST_NOTE:
+			return held.lowest();
+		case HIGHEST_NOTE:
+			return held.highest();
+		default:
+			return newestKey;
+		}
+	}
+	
+	/**
+	 * Adds a key to the top of the held note stack
+	 * @param key - The key that was pressed
+	 */
+	private void pushHeld(int key) {
+		held.add(key);
+		olderKey[key] = newestKey;
+		newerKey[key] = NONE;
+		if (newestKey != NONE) {
+			newerKey[newestKey] = key;
+		}
+		newestKey = key;
+	}
+	
+	/**
+	 * Removes a key from anywhere in the held note stack
+	 * @param key - The key that was released
+	 */
+	private void removeHeld(int key) {
+		held.remove(key);
+		
+		int older = olderKey[key];
+		int newer = newerKey[key];
+		
+		if (older != NONE) {
+			newerKey[older] = newer;
+		}
+		if (newer != NONE) {
+			olderKey[newer] = older;
+		} else {
+			newestKey = older;
 		}
 	}
 	
@@ -63,7 +187,10 @@ public class Monophonic implements ProcessingBlock {
 	 *************************************************/
 	@Override
 	public String toString() {
-		return "Monophonic";
+		if (priority.equals(LAST_NOTE) && !legato) {
+			return "Monophonic";
+		}
+		return "Monophonic: " + priority + (legato ? ", Legato" : "");
 	}
 	
 	@Override
@@ -73,7 +200,66 @@ public class Monophonic implements ProcessingBlock {
 	
 	@Override
 	public String getParameters() {
-		return "NoParams,NoParams";
+		if (priority.equals(LAST_NOTE) && !legato) {
+			return "NoParams,NoParams";
+		}
+		return priority + "," + (legato ? LEGATO : NO_PARAMS);
+	}
+	
+	/**
+	 * Sets the priority and legato from the parameters of the configuration
+	 * file
+	 * @param priority - The note priority, or "NoParams" for the last note
+	 * @param legato - "Legato", or "NoParams" to retrigger every note
+	 * @throws IllegalArgumentException if the parameters are not valid
+	 */
+	@Override
+	public void setParameters(String priority, String legato) {
+		String newPriority = priority.trim().equals(NO_PARAMS) ? LAST_NOTE :
+				priority.trim();
+		
+		if (!newPriority.equals(LAST_NOTE) && 
+				!newPriority.equals(LOWEST_NOTE) &&
+				!newPriority.equals(HIGHEST_NOTE)) {
+			throw new IllegalArgumentException(
+					"Monophonic priority not valid: " + priority);
+		}
+		if (!legato.trim().equals(LEGATO) && !legato.trim().equals(NO_PARAMS)) {
+			throw new IllegalArgumentException(
+					"Monophonic parameter not valid: " + legato);
+		}
+		
+		this.priority = newPriority;
+		this.legato = legato.trim().equals(LEGATO);
+	}
+	
+	public String getPriority() {
+		return priority;
+	}
+	
+	public void setPriority(String priority) {
+		this.priority = priority;
+	}
+	
+	public boolean isLegato() {
+		return legato;
+	}
+	
+	public void setLegato(boolean legato) {
+		this.legato = legato;
+	}
+	
+	@Override
+	public void releaseNotes() {
+		if (currentNoteOn != null) {
+			notifyObservers(currentNoteOn, false, availableNotes);
+			currentNoteOn = null;
+		}
+		
+		// the keys still held are forgotten, so their note offs are ignored
+		while (newestKey != NONE) {
+			removeHeld(newestKey);
+		}
 	}
 	
 	@Override
@@ -107,9 +293,7 @@ public class Monophonic implements ProcessingBlock {
 	}
 	
 	private void notifyObservers(Note note, Boolean noteOn, Note[] availableNotes) {
-		for (Observer observer : observers) {
-			observer.update(note, noteOn, availableNotes);
-		}
+		observers.notifyObservers(note, noteOn, availableNotes);
 	}
 	
 	/**
@@ -117,12 +301,7 @@ public class Monophonic implements ProcessingBlock {
 	 * (so that the output processor does not receive duplicate events)
 	 */
 	public void removeAllObservers() {
-		Iterator<Observer> iterator = observers.iterator();
-
-		while (iterator.hasNext()){
-			iterator.next();
-			iterator.remove();
-		}
+		observers.clear();
 	}
 
 }
@@ -0,0 +1,48 @@
+package processingblocks;
+
+import java.util.Arrays;
+
+import scales.Note;
+
+/**
+ * This class holds notes waiting to be passed on, by the processing chain
+ * and the processing graph. The notes are kept in arrays that only grow, so
+ * once the buffer is large enough no more memory is allocated. A buffer is
+ * only used by the thread that owns it.
+ * @author Lisa Liu-Thorrold
+ *
+ */
+final class NoteBuffer {
+
+	Note[] notes = new Note[8];
+	Boolean[] noteOns = new Boolean[8];
+	Note[][] availableNotes = new Note[8][];
+	int size;
+
+	/**
+	 * Adds a note to the end of the buffer
+	 */
+	void add(Note note, Boolean noteOn, Note[] available) {
+		if (size == notes.length) {
+			int capacity = size * 2;
+			notes = Arrays.copyOf(notes, capacity);
+			noteOns = Arrays.copyOf(noteOns, capacity);
+			availableNotes = Arrays.copyOf(availableNotes, capacity);
+		}
+		notes[size] = note;
+		noteOns[size] = noteOn;
+		availableNotes[size] = available;
+		size++;
+	}
+
+	/**
+	 * Empties the buffer, so that the notes in it can be freed
+	 */
+	void clear() {
+		for (int i = 0; i < size; i++) {
+			notes[i] = null;
+			availableNotes[i] = null;
+		}
+		size = 0;
+	}
+}
@@ -0,0 +1,197 @@
+package processingblocks;
+
+/**
+ * This class is a first-in-first-out queue of MIDI key numbers (0-127),
+ * holding each key at most once. The keys are kept in a ring buffer, and the
+ * position of every key in the ring is indexed, so that adding a key,
+ * removing any key and taking the first or last key are all O(1) with no
+ * allocation. The lowest and highest keys can also be found in O(1), as
+ * the keys are indexed in a note set. A removed key leaves an empty slot in
+ * the ring, which is skipped when the queue is read and reclaimed when the
+ * ring fills up.
+ * @author Lisa Liu-Thorrold
+ *
+ */
+public class NoteQueue {
+
+	// Marks a slot whose key has been removed
+	private static final int EMPTY = -1;
+
+	// Room for every key, plus as many empty slots again before the ring
+	// needs to be compacted
+	private static final int RING_SIZE = 2 * NoteSet.CAPACITY;
+	private static final int RING_MASK = RING_SIZE - 1;
+
+	private final int[] ring = new int[RING_SIZE];
+
+	// Position in the ring of each key in the queue
+	private final int[] positionOfKey = new int[NoteSet.CAPACITY];
+
+	// The keys in the queue
+	private final NoteSet keys = new NoteSet();
+
+	// Positions of the first slot and one past the last slot. They only ever
+	// increase, and are wrapped into the ring when it is indexed.
+	private int head;
+	private int tail;
+
+	// Maximum number of keys in the queue
+	private int capacity;
+
+	/**
+	 * @param capacity - The maximum number of keys in the queue, from 1 to 128
+	 */
+	public NoteQueue(int capacity) {
+		setCapacity(capacity);
+	}
+
+	/**
+	 * Adds a key to the end of the queue
+	 * @param key - The key to add
+	 * @return false if the key is already in the queue, or the queue is full
+	 */
+	public boolean add(int key) {
+		if (keys.contains(key) || isFull() || key < 0 ||
+				key >= NoteSet.CAPACITY) {
+			return false;
+		}
+
+		if (tail - head == RING_SIZE) {
+			compact();
+		}
+
+		ring[tail & RING_MASK] = key;
+		positionOfKey[key] = tail;
+		tail++;
+		keys.add(key);
+		return true;
+	}
+
+	/**
+	 * Removes a key from anywhere in the queue
+	 * @param key - The key to remove
+	 * @return true if the key was in the queue
+	 */
+	public boolean remove(int key) {
+		if (!keys.remove(key)) {
+			return false;
+		}
+
+		ring[positionOfKey[key] & RING_MASK] = EMPTY;
+		return true;
+	}
+
+	/**
+	 * Removes the key at the front of the queue
+	 * @return The key, or -1 if the queue is empty
+	 */
+	public int pollFirst() {
+		while (head != tail) {
+			int key = ring[head & RING_MASK];
+			head++;
+			if (key != EMPTY) {
+				keys.remove(key);
+				return key;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Removes the key at the end of the queue
+	 * @return The key, or -1 if the queue is empty
+	 */
+	public int pollLast() {
+		while (head != tail) {
+			tail--;
+			int key = ring[tail & RING_MASK];
+			if (key != EMPTY) {
+				keys.remove(key);
+				return key;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return The lowest key in the queue, or -1 if the queue is empty
+	 */
+	public int lowest() {
+		return keys.lowest();
+	}
+
+	/**
+	 * @return The highest key in the queue, or -1 if the queue is empty
+	 */
+	public int highest() {
+		return keys.highest();
+	}
+
+	public boolean contains(int key) {
+		return keys.contains(key);
+	}
+
+	public void clear() {
+		head = 0;
+		tail = 0;
+		keys.clear();
+	}
+
+	public int size() {
+		return keys.size();
+	}
+
+	public boolean isEmpty() {
+		return keys.isEmpty();
+	}
+
+	public boolean isFull() {
+		return keys.size() >= capacity;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Sets the maximum number of keys in the queue. Keys already in the queue
+	 * are kept, even if there are more than the new capacity.
+	 * @param capacity - The maximum number of keys, from 1 to 128
+	 */
+	public void setCapacity(int capacity) {
+		this.capacity = Math.max(1, Math.min(NoteSet.CAPACITY, capacity));
+	}
+
+	/**
+	 * @return The keys in the queue, from front to back
+	 */
+	public int[] toArray() {
+		int[] result = new int[size()];
+		int i = 0;
+		for (int position = head; position != tail; position++) {
+			int key = ring[position & RING_MASK];
+			if (key != EMPTY) {
+				result[i++] = key;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Moves the keys to the front of the ring, reclaiming the empty slots.
+	 * There are at most 128 keys in a ring of 256 slots, so this happens at
+	 * most once every 128 additions.
+	 */
+	private void compact() {
+		int write = head;
+		for (int position = head; position != tail; position++) {
+			int key = ring[position & RING_MASK];
+			if (key != EMPTY) {
+				ring[write & RING_MASK] = key;
+				positionOfKey[key] = write;
+				write++;
+			}
+		}
+		tail = write;
+	}
+}
@@ -0,0 +1,274 @@
+package processingblocks;
+
+/**
+ * This class is a set of MIDI key numbers (0-127), stored as the bits of two
+ * longs. Keys are always kept in ascending order, and every operation is a
+ * handful of bit operations with no allocation. Processing blocks use it to
+ * track the notes that are currently held.
+ * @author Lisa Liu-Thorrold
+ *
+ */
+public class NoteSet {
+
+	public static final int CAPACITY = 128;
+
+	// Keys 0-63 and 64-127
+	private long low;
+	private long high;
+
+	public NoteSet() { }
+
+	/**
+	 * @param other - The set to copy
+	 */
+	public NoteSet(NoteSet other) {
+		this.low = other.low;
+		this.high = other.high;
+	}
+
+	/**
+	 * Adds a key to the set
+	 * @param key - The key to add
+	 * @return true if the key was not already in the set
+	 */
+	public boolean add(int key) {
+		if (key < 0 || key >= CAPACITY) {
+			return false;
+		}
+
+		boolean added = !contains(key);
+		if (key < 64) {
+			low |= 1L << key;
+		} else {
+			high |= 1L << (key - 64);
+		}
+		return added;
+	}
+
+	/**
+	 * Removes a key from the set
+	 * @param key - The key to remove
+	 * @return true if the key was in the set
+	 */
+	public boolean remove(int key) {
+		if (!contains(key)) {
+			return false;
+		}
+
+		if (key < 64) {
+			low &= ~(1L << key);
+		} else {
+			high &= ~(1L << (key - 64));
+		}
+		return true;
+	}
+
+	public boolean contains(int key) {
+		if (key < 0 || key >= CAPACITY) {
+			return false;
+		}
+
+		if (key < 64) {
+			return (low & (1L << key)) != 0;
+		}
+		return (high & (1L << (key - 64))) != 0;
+	}
+
+	public void clear() {
+		low = 0;
+		high = 0;
+	}
+
+	/**
+	 * Makes this set a copy of another set
+	 * @param other - The set to copy
+	 */
+	public void copyFrom(NoteSet other) {
+		this.low = other.low;
+		this.high = other.high;
+	}
+
+	/**
+	 * @return The bits of keys 0-63
+	 */
+	public long getLowBits() {
+		return low;
+	}
+
+	/**
+	 * @return The bits of keys 64-127
+	 */
+	public long getHighBits() {
+		return high;
+	}
+
+	/**
+	 * Makes this set the set of keys whose bits are given
+	 * @param low - The bits of keys 0-63
+	 * @param high - The bits of keys 64-127
+	 */
+	public void setBits(long low, long high) {
+		this.low = low;
+		this.high = high;
+	}
+
+	public int size() {
+		return Long.bitCount(low) + Long.bitCount(high);
+	}
+
+	public boolean isEmpty() {
+		return low == 0 && high == 0;
+	}
+
+	/**
+	 * @return The lowest key in the set, or -1 if the set is empty
+	 */
+	public int lowest() {
+		if (low != 0) {
+			return Long.numberOfTrailingZeros(low);
+		}
+		if (high != 0) {
+			return 64 + Long.numberOfTrailingZeros(high);
+		}
+		return -1;
+	}
+
+	/**
+	 * @return The highest key in the set, or -1 if the set is empty
+	 */
+	public int highest() {
+		if (high != 0) {
+			return 127 - Long.numberOfLeadingZeros(high);
+		}
+		if (low != 0) {
+			return 63 - Long.numberOfLeadingZeros(low);
+		}
+		return -1;
+	}
+
+	/**
+	 * @param key - The key to start from (which need not be in the set)
+	 * @return The lowest key in the set above the given key, or -1 if none
+	 */
+	public int next(int key) {
+		int from = key + 1;
+
+		if (from < 0) {
+			from = 0;
+		}
+
+		if (from < 64) {
+			long bits = low & (-1L << from);
+			if (bits != 0) {
+				return Long.numberOfTrailingZeros(bits);
+			}
+			from = 64;
+		}
+
+		if (from < CAPACITY) {
+			long bits = high & (-1L << (from - 64));
+			if (bits != 0) {
+				return 64 + Long.numberOfTrailingZeros(bits);
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * @param key - The key to start from (which need not be in the set)
+	 * @return The highest key in the set below the given key, or -1 if none
+	 */
+	public int previous(int key) {
+		int to = key - 1;
+
+		if (to >= CAPACITY) {
+			to = CAPACITY - 1;
+		}
+
+		if (to >= 64) {
+			long bits = high & (-1L >>> (127 - to));
+			if (bits != 0) {
+				return 127 - Long.numberOfLeadingZeros(bits);
+			}
+			to = 63;
+		}
+
+		if (to >= 0) {
+			long bits = low & (-1L >>> (63 - to));
+			if (bits != 0) {
+				return 63 - Long.numberOfLeadingZeros(bits);
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Returns the key at a position in the set, in ascending order
+	 * @param index - The position of the key (0 is the lowest key)
+	 * @return The key at that position, or -1 if the index is out of range
+	 */
+	public int get(int index) {
+		if (index < 0) {
+			return -1;
+		}
+
+		int lowCount = Long.bitCount(low);
+		if (index < lowCount) {
+			return select(low, index);
+		}
+
+		index -= lowCount;
+		if (index < Long.bitCount(high)) {
+			return 64 + select(high, index);
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Returns the position of a key in the set, in ascending order
+	 * @param key - The key to find
+	 * @return The position of the key, or -1 if the key is not in the set
+	 */
+	public int indexOf(int key) {
+		if (!contains(key)) {
+			return -1;
+		}
+
+		if (key < 64) {
+			return Long.bitCount(low & ((1L << key) - 1));
+		}
+		return Long.bitCount(low) +
+				Long.bitCount(high & ((1L << (key - 64)) - 1));
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof NoteSet)) {
+			return false;
+		}
+		NoteSet s = (NoteSet) obj;
+		return low == s.low && high == s.high;
+	}
+
+	@Override
+	public int hashCode() {
+		return Long.hashCode(low) * 31 + Long.hashCode(high);
+	}
+
+	/**
+	 * Returns the position of the nth set bit of a word
+	 * @param word - The word to search
+	 * @param n - Which set bit to find (0 is the lowest)
+	 * @return The position of the bit
+	 */
+	private static int select(long word, int n) {
+		for (int i = 0; i < n; i++) {
+			// clear the lowest set bit
+			word &= word - 1;
+		}
+		return Long.numberOfTrailingZeros(word);
+	}
+}
@@ -1,9 +1,8 @@
 package processingblocks;
 
-import java.util.ArrayList;
-import java.util.Iterator;
 
 import midiblocks.Observer;
+import midiblocks.ObserverList;
 import scales.Note;
 
 /**
@@ -19,7 +18,7 @@ import scales.Note;
  * @author Lisa Liu-Thorrold
  *
  */
-public class PitchShift implements ProcessingBlock {
+public class PitchShift implements StatelessBlock {
 
 	// The pitch to shift by as defined by the user
 	private int pitch;
@@ -30,7 +29,16 @@ public class PitchShift implements ProcessingBlock {
 	
 	private Note lastNoteSent;
 	
-	private final ArrayList<Observer> observers = new ArrayList<>();
+	private final ObserverList observers = new ObserverList();
+	
+	// The folded run this block is the first block of, if any
+	private volatile CompiledRun compiledRun;
+	
+	// The shifted note sent for each key that is on
+	private final ActiveNoteMap activeNotes = new ActiveNoteMap(1);
+	
+	// The available notes of the last note received
+	private Note[] availableNotes;
 	
 	public PitchShift(int pitch) {
 		this.pitch = pitch;
@@ -44,9 +52,49 @@ public class PitchShift implements ProcessingBlock {
 	 */
 	@Override
 	public void update(Note note, Boolean noteOn, Note[] availableNotes) {
+		
+		int key = note.getKeyNumber();
+		this.availableNotes = availableNotes;
+		
+		// a note turned on before the run was folded is turned off by this
+		// block
+		CompiledRun run = compiledRun;
+		if (run != null && (noteOn || !activeNotes.isActive(key))) {
+			run.process(note, noteOn, availableNotes);
+			return;
+		}
+		
+		Note newNote;
+		
+		if (!noteOn && activeNotes.isActive(key)) {
+			// turn off the note that was turned on, even if the pitch or
+			// scale has changed since
+			newNote = activeNotes.get(key, 0);
+			activeNotes.remove(key);
+		} else {
+			newNote = shift(key, availableNotes);
 			
-		// Get the current note number
-		int noteNumber = note.getKeyNumber();
+			if (noteOn) {
+				activeNotes.remove(key);
+				activeNotes.add(key, newNote);
+			}
+		}
+		
+		lastNoteSent = newNote;
+		notifyObservers(newNote, noteOn, availableNotes);
+		
+	}
+	
+	/**
+	 * This method constrains a note to the selected scale, and shifts it by
+	 * the pitch
+	 * @param noteNumber - The key of the note to shift
+	 * @param availableNotes - The notes available in currently selected scale
+	 * @return The shifted note
+	 */
+	private Note shift(int noteNumber, Note[] availableNotes) {
+		
+		int keyNumber = noteNumber;
 
 		// Check if the note is the highest or lowest
 		if (noteNumber < LOWEST_PLAYABLE_KEY) {
@@ -57,11 +105,11 @@ public class PitchShift implements ProcessingBlock {
 		} else {
 			// Check if the current note is in the selected scale
 			boolean inSelectedScale = 
-					isInSelectedScale(note, availableNotes);
+					isInSelectedScale(keyNumber, availableNotes);
 
 			if (!inSelectedScale) {
 				// Get the closest note number
-				noteNumber = getClosestNote(note, availableNotes).
+				noteNumber = getClosestNote(keyNumber, availableNotes).
 						getKeyNumber();
 			}
 
@@ -85,9 +133,7 @@ public class PitchShift implements ProcessingBlock {
 			newNote = availableNotes[newPositionInAvailableNotes];
 		}
 		
-		lastNoteSent = newNote;
-		notifyObservers(newNote, noteOn, availableNotes);
-		
+		return newNote;
 	}
 
 	
@@ -98,24 +144,23 @@ public class PitchShift implements ProcessingBlock {
 	 * the lowest available note. Otherwise, it will get the closest note to 
 	 * the input note in the currently selected scale. If the current note is
 	 * equidistant from two notes, it will return the lower of the two notes.
-	 * @param note - The note to constrain to the selected scale
+	 * @param keyNumber - The key of the note to constrain to the selected scale
 	 * @param availableNotes - The notes available to the user.
 	 * @return the closest note to the given note.
 	 */
-	private Note getClosestNote(Note note, Note[] availableNotes) {
+	private Note getClosestNote(int keyNumber, Note[] availableNotes) {
 		
 		Note closestNote = null;
 		
 		// Note is below the lowest available note
-		if (note.getKeyNumber() < availableNotes[0].getKeyNumber()) {
+		if (keyNumber < availableNotes[0].getKeyNumber()) {
 			closestNote = availableNotes[0];
 			return closestNote;
 		}
 		
 		// Note is higher than the highest available note
 		int lastNote= availableNotes.length-1;
-		if (note.getKeyNumber() > 
-				availableNotes[lastNote].getKeyNumber()) {
+		if (keyNumber > availableNotes[lastNote].getKeyNumber()) {
 			closestNote = availableNotes[lastNote];
 			return closestNote;
 		}
@@ -125,8 +170,7 @@ public class PitchShift implements ProcessingBlock {
 		// notes, the note will be shifted to the lower of the two.
 		int smallestDifference = 88; //some sentinel value
 		for (Note current : availableNotes) {
-			int tempDifference = Math.abs(note.getKeyNumber() -
-					current.getKeyNumber());
+			int tempDifference = Math.abs(keyNumber - current.getKeyNumber());
 
 			if (tempDifference < smallestDifference) {
 				smallestDifference = tempDifference;
@@ -140,14 +184,14 @@ public class PitchShift implements ProcessingBlock {
 	/**
 	 * This method checks to see whether the note is in the current selected
 	 * scale
-	 * @param note - The new shifted note
+	 * @param keyNumber - The key of the note to check
 	 * @param availableNotes - The notes available in currently selected scale
 	 * @return true if the new shifted note is in the currently selected scale
 	 */
-	private boolean isInSelectedScale(Note note, Note[] availableNotes) {
+	private boolean isInSelectedScale(int keyNumber, Note[] availableNotes) {
 
 		for (Note availableNote : availableNotes) {
-			if (availableNote.getKeyNumber() == note.getKeyNumber()) {
+			if (availableNote.getKeyNumber() == keyNumber) {
 				//is in the selected scale
 				return true;
 			}
@@ -207,6 +251,51 @@ public class PitchShift implements ProcessingBlock {
 		this.pitch = pitch;
 	}
 	
+	@Override
+	public void setParameters(String pitch, String parameter2) {
+		setPitch(Integer.parseInt(pitch.trim()));
+	}
+	
+	@Override
+	public int getMaxOutputKeys() {
+		return 1;
+	}
+	
+	@Override
+	public int mapKey(int key, Note[] availableNotes, int[] keysOut, 
+			int offset) {
+		keysOut[offset] = shift(key, availableNotes).getKeyNumber();
+		return 1;
+	}
+	
+	@Override
+	public void releaseNotes() {
+		CompiledRun run = compiledRun;
+		if (run != null) {
+			run.releaseNotes(availableNotes);
+		}
+		
+		for (int key = 0; key < NoteSet.CAPACITY; key++) {
+			if (activeNotes.isActive(key)) {
+				notifyObservers(activeNotes.get(key, 0), false, availableNotes);
+			}
+		}
+		activeNotes.clear();
+	}
+	
+	@Override
+	public CompiledRun getCompiledRun() {
+		return compiledRun;
+	}
+	
+	@Override
+	public void setCompiledRun(CompiledRun run) {
+		if (run != null && compiledRun != null) {
+			run.inheritActiveNotes(compiledRun);
+		}
+		this.compiledRun = run;
+	}
+	
 	@Override
 	public void setAvailableNotes(Note[] availableNotes) {	}
 	
@@ -235,10 +324,13 @@ public class PitchShift implements ProcessingBlock {
 		observers.remove(observer);	
 	}
 	
+	@Override
+	public void sendNote(Note note, Boolean noteOn, Note[] availableNotes) {
+		notifyObservers(note, noteOn, availableNotes);
+	}
+	
 	private void notifyObservers(Note note, Boolean noteOn, Note[] availableNotes) {
-		for (Observer observer : observers) {
-			observer.update(note, noteOn, availableNotes);
-		}
+		observers.notifyObservers(note, noteOn, availableNotes);
 	}
 	
 	/**
@@ -246,12 +338,7 @@ public class PitchShift implements ProcessingBlock {
 	 * (so that the output processor does not receive duplicate events)
 	 */
 	public void removeAllObservers() {
-		Iterator<Observer> iterator = observers.iterator();
-
-		while (iterator.hasNext()){
-			iterator.next();
-			iterator.remove();
-		}
+		observers.clear();
 	}
 
 }
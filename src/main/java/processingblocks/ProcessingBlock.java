@@ -14,6 +14,20 @@ public interface ProcessingBlock extends Observer, Subject {
 	String toString();
 	String getName();
 	String getParameters();
+	
+	/**
+	 * Sets the parameters of the block, in the format returned by 
+	 * getParameters (and stored in the configuration file)
+	 * @param parameter1 - The first parameter
+	 * @param parameter2 - The second parameter
+	 */
+	void setParameters(String parameter1, String parameter2);
 	void setAvailableNotes(Note[] availableNotes);
 	void update(Note note, Boolean noteOn, Note[] availableNotes);
+	
+	/**
+	 * Turns off every note this block has turned on, so that the block can
+	 * be moved, removed or changed without the notes it sent being left on
+	 */
+	void releaseNotes();
 }
@@ -0,0 +1,232 @@
+package processingblocks;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import midiblocks.Observer;
+import scales.Note;
+
+/**
+ * This class runs notes through a linear chain of processing blocks. The
+ * blocks are held in an array, and each block (except the last) sends its
+ * notes to a stage of the chain rather than to the next block. While the
+ * chain is running a block, the notes it sends are held in the buffer of its
+ * stage, and once the block returns they are passed to the next block in
+ * order, by a direct call. The notes of the MIDI source are given to the
+ * first block by process(). Every block is therefore called from a single
+ * place, and the time spent in each block can be measured on its own.
+ *
+ * Notes sent by a block outside of a run of the chain (such as notes played
+ * on a clock tick, or released when the chain is changed) are passed
+ * straight on to the next block. The last block keeps the observers it was
+ * connected to, so its notes go to the output as before.
+ *
+ * The buffers belong to the thread running the chain, so the MIDI input and
+ * the clock can run notes through the chain at the same time, as they could
+ * when the blocks observed each other.
+ * @author Lisa Liu-Thorrold
+ *
+ */
+public final class ProcessingChain {
+
+	private final ProcessingBlock[] blocks;
+
+	// The stage each block sends its notes to, null for the last block
+	private final Stage[] stages;
+
+	// The run state of each thread that runs notes through the chain
+	private final ThreadLocal<Run> runs;
+
+	// The time spent in, and number of notes received by, each block
+	private final AtomicLongArray stageNanos;
+	private final AtomicLongArray stageNotes;
+
+	private volatile boolean profiling;
+
+	/**
+	 * @param chain - The processing blocks, in chain order
+	 */
+	public ProcessingChain(List<ProcessingBlock> chain) {
+		blocks = chain.toArray(new ProcessingBlock[chain.size()]);
+		stages = new Stage[blocks.length];
+		for (int i = 0; i < blocks.length - 1; i++) {
+			stages[i] = new Stage(i);
+		}
+
+		runs = ThreadLocal.withInitial(() -> new Run(blocks.length));
+		stageNanos = new AtomicLongArray(blocks.length);
+		stageNotes = new AtomicLongArray(blocks.length);
+	}
+
+	/**
+	 * Connects every block but the last to its stage, in place of the blocks
+	 * it was connected to. The last block keeps its observers.
+	 */
+	public void connect() {
+		for (int i = 0; i < blocks.length - 1; i++) {
+			blocks[i].removeAllObservers();
+			blocks[i].registerObserver(stages[i]);
+		}
+	}
+
+	/**
+	 * Runs a note through the chain, from the first block
+	 * @param note - The note
+	 * @param noteOn - Whether the note is on or off
+	 * @param availableNotes - The notes of the globally set scale
+	 */
+	public void process(Note note, Boolean noteOn, Note[] availableNotes) {
+		if (blocks.length > 0) {
+			deliver(0, note, noteOn, availableNotes, runs.get());
+		}
+	}
+
+	/*************************************************
+	 * Getter/setter methods
+	 *************************************************/
+
+	public int size() {
+		return blocks.length;
+	}
+
+	public ProcessingBlock getBlock(int index) {
+		return blocks[index];
+	}
+
+	public boolean contains(ProcessingBlock block) {
+		for (ProcessingBlock b : blocks) {
+			if (b == block) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public boolean isProfiling() {
+		return profiling;
+	}
+
+	/**
+	 * Turns the measurement of the time spent in each block on or off. The
+	 * measurements are not cleared.
+	 * @param profiling - Whether to measure the blocks
+	 */
+	public void setProfiling(boolean profiling) {
+		this.profiling = profiling;
+	}
+
+	/**
+	 * @param index - The position of the block in the chain
+	 * @return The total time spent in the block while profiling, in
+	 * nanoseconds. This does not include the blocks after it.
+	 */
+	public long getStageNanos(int index) {
+		return stageNanos.get(index);
+	}
+
+	/**
+	 * @param index - The position of the block in the chain
+	 * @return The number of notes the block received while profiling
+	 */
+	public long getStageNotes(int index) {
+		return stageNotes.get(index);
+	}
+
+	public void resetProfile() {
+		for (int i = 0; i < blocks.length; i++) {
+			stageNanos.set(i, 0);
+			stageNotes.set(i, 0);
+		}
+	}
+
+	/*************************************************
+	 *  Helper methods
+	 *************************************************/
+
+	/**
+	 * Sends a note to a block, then passes on the notes the block sent, in
+	 * order
+	 */
+	private void deliver(int index, Note note, Boolean noteOn,
+			Note[] availableNotes, Run run) {
+		ProcessingBlock block = blocks[index];
+		NoteBuffer buffer = run.buffers[index];
+		boolean nested = run.running[index];
+
+		run.running[index] = true;
+		if (profiling) {
+			long start = System.nanoTime();
+			block.update(note, noteOn, availableNotes);
+			stageNanos.addAndGet(index, System.nanoTime() - start);
+			stageNotes.incrementAndGet(index);
+		} else {
+			block.update(note, noteOn, availableNotes);
+		}
+		run.running[index] = nested;
+
+		// a block that is run again from within its own update passes its
+		// notes on when the outer update returns
+		if (nested || stages[index] == null) {
+			return;
+		}
+
+		for (int i = 0; i < buffer.size; i++) {
+			deliver(index + 1, buffer.notes[i], buffer.noteOns[i],
+					buffer.availableNotes[i], run);
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * Called when a block sends a note to its stage
+	 */
+	private void sent(int index, Note note, Boolean noteOn,
+			Note[] availableNotes) {
+		Run run = runs.get();
+
+		if (run.running[index]) {
+			run.buffers[index].add(note, noteOn, availableNotes);
+		} else {
+			deliver(index + 1, note, noteOn, availableNotes, run);
+		}
+	}
+
+	/**
+	 * The observer of a block, which sends the block's notes to the chain
+	 */
+	private final class Stage implements Observer {
+
+		private final int index;
+
+		private Stage(int index) {
+			this.index = index;
+		}
+
+		@Override
+		public void update(Note note, Boolean noteOn) { }
+
+		@Override
+		public void update(Note note, Boolean noteOn, Note[] availableNotes) {
+			sent(index, note, noteOn, availableNotes);
+		}
+	}
+
+	/**
+	 * The buffers and running blocks of one thread
+	 */
+	private static final class Run {
+
+		private final NoteBuffer[] buffers;
+
+		// Whether each block is being run by this thread
+		private final boolean[] running;
+
+		private Run(int size) {
+			buffers = new NoteBuffer[size];
+			for (int i = 0; i < size; i++) {
+				buffers[i] = new NoteBuffer();
+			}
+			running = new boolean[size];
+		}
+	}
+}
@@ -0,0 +1,710 @@
+package processingblocks;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+import midiblocks.Observer;
+import midiblocks.ObserverList;
+import scales.Note;
+
+/**
+ * This class is a processing block made of other processing blocks, connected
+ * as a directed acyclic graph rather than a single chain. As well as
+ * processing blocks, the graph can hold:
+ * 1. Split nodes, which send each note to every node connected to them
+ * 2. Merge nodes, which join branches back together. A key is turned on when
+ *    the first branch turns it on, and off when the last branch turns it off.
+ * 3. Zone split nodes, which send the keys below a split point to one output
+ *    and the rest to another, to split the keyboard into two zones.
+ * Every graph has an input node and an output node. Once the nodes are
+ * connected, the graph is compiled into an execution plan, which orders the
+ * nodes so that every node comes after the nodes connected to it. A note is
+ * run through the graph by going through the plan once, with each node
+ * passing the notes in its buffer on to the buffers of the nodes after it.
+ *
+ * The graph is added to the processing block chain like any other block, and
+ * its notes are sent to its observers from the output node. Its parameters
+ * describe its nodes and connections, so a graph can be saved in a
+ * configuration file and made again by parse().
+ * @author Lisa Liu-Thorrold
+ *
+ */
+public class ProcessingGraph implements ProcessingBlock {
+
+	// The input and output nodes of every graph
+	public static final int INPUT = 0;
+	public static final int OUTPUT = 1;
+
+	// Kinds of node
+	public static final String BLOCK = "Block";
+	public static final String SPLIT = "Split";
+	public static final String MERGE = "Merge";
+	public static final String ZONE_SPLIT = "Zone Split";
+	private static final String INPUT_NODE = "Input";
+	private static final String OUTPUT_NODE = "Output";
+
+	// Separators of the parameters of a graph
+	private static final String NO_PARAMS = "NoParams";
+	private static final String ITEM_SEPARATOR = " ";
+	private static final String FIELD_SEPARATOR = ":";
+
+	// The outputs of a zone split node
+	public static final int LOWER_ZONE = 0;
+	public static final int UPPER_ZONE = 1;
+
+	private static final int KEYS = 128;
+
+	private final ObserverList observers = new ObserverList();
+
+	// The nodes, by id, as they are being built
+	private final ArrayList<Node> nodes = new ArrayList<>();
+
+	// The compiled plan that notes are run through
+	private volatile Plan plan;
+
+	private Note[] availableNotes;
+
+	public ProcessingGraph() {
+		nodes.add(new Node(INPUT_NODE, null, 0));
+		nodes.add(new Node(OUTPUT_NODE, null, 0));
+		compile();
+	}
+
+	/*************************************************
+	 * Building the graph
+	 *************************************************/
+
+	/**
+	 * @param block - The processing block to add
+	 * @return The id of the new node
+	 */
+	public synchronized int addBlock(ProcessingBlock block) {
+		if (block == this) {
+			throw new IllegalArgumentException("A graph cannot contain itself");
+		}
+		return addNode(new Node(BLOCK, block, 0));
+	}
+
+	/**
+	 * @return The id of a new node that sends each note to every node
+	 * connected to it
+	 */
+	public synchronized int addSplit() {
+		return addNode(new Node(SPLIT, null, 0));
+	}
+
+	/**
+	 * @return The id of a new node that joins branches together
+	 */
+	public synchronized int addMerge() {
+		return addNode(new Node(MERGE, null, 0));
+	}
+
+	/**
+	 * @param splitKey - The lowest key of the upper zone
+	 * @return The id of a new node that sends the keys below the split key to
+	 * its LOWER_ZONE output, and the rest to its UPPER_ZONE output
+	 */
+	public synchronized int addZoneSplit(int splitKey) {
+		return addNode(new Node(ZONE_SPLIT, null, splitKey));
+	}
+
+	/**
+	 * Makes a graph from its parameters, as returned by getParameters(). The
+	 * first parameter lists the nodes after the input and output nodes, in 
+	 * order of their ids, separated by spaces:
+	 * 1. Block:name:parameter1:parameter2 for a processing block
+	 * 2. Split, Merge, or Zone Split:splitKey
+	 * The second parameter lists the connections, separated by spaces, as
+	 * from:output:to. A list that is empty is written as NoParams. Spaces,
+	 * colons, commas and percent signs in a field are written as %20, %3A,
+	 * %2C and %25.
+	 * @param nodes - The nodes of the graph
+	 * @param connections - The connections between the nodes
+	 * @param makeBlock - Makes a processing block from its name and two
+	 * 					  parameters, returning null if they are not valid
+	 * @return The compiled graph, or null if a block could not be made
+	 * @throws IllegalArgumentException if the parameters are not valid
+	 * @throws IllegalStateException if the nodes are connected in a loop
+	 */
+	public static ProcessingGraph parse(String nodes, String connections,
+			Function<String[], ProcessingBlock> makeBlock) {
+		ProcessingGraph graph = new ProcessingGraph();
+
+		for (String item : split(nodes)) {
+			String[] fields = item.split(FIELD_SEPARATOR, -1);
+			String kind = unescape(fields[0]);
+
+			if (kind.equals(BLOCK) && fields.length == 4) {
+				ProcessingBlock block = makeBlock.apply(new String[] {
+						unescape(fields[1]), unescape(fields[2]),
+						unescape(fields[3]) });
+				if (block == null) {
+					return null;
+				}
+				graph.addBlock(block);
+			} else if (kind.equals(SPLIT) && fields.length == 1) {
+				graph.addSplit();
+			} else if (kind.equals(MERGE) && fields.length == 1) {
+				graph.addMerge();
+			} else if (kind.equals(ZONE_SPLIT) && fields.length == 2) {
+				graph.addZoneSplit(parseNumber(fields[1]));
+			} else {
+				throw new IllegalArgumentException("Node not valid: " + item);
+			}
+		}
+
+		for (String item : split(connections)) {
+			String[] fields = item.split(FIELD_SEPARATOR, -1);
+			if (fields.length != 3) {
+				throw new IllegalArgumentException(
+						"Connection not valid: " + item);
+			}
+			graph.connect(parseNumber(fields[0]), parseNumber(fields[1]),
+					parseNumber(fields[2]));
+		}
+
+		graph.compile();
+		return graph;
+	}
+
+	/**
+	 * Connects the first output of a node to another node
+	 * @param from - The id of the node sending notes
+	 * @param to - The id of the node receiving them
+	 */
+	public void connect(int from, int to) {
+		connect(from, 0, to);
+	}
+
+	/**
+	 * Connects an output of a node to another node
+	 * @param from - The id of the node sending notes
+	 * @param output - The output of the node, LOWER_ZONE or UPPER_ZONE for a
+	 * 				   zone split node and 0 otherwise
+	 * @param to - The id of the node receiving them
+	 */
+	public synchronized void connect(int from, int output, int to) {
+		Node source = getNode(from);
+		getNode(to);
+
+		if (from == OUTPUT || to == INPUT || from == to) {
+			throw new IllegalArgumentException("Cannot connect node " + from +
+					" to node " + to);
+		}
+		if (output < 0 || output >= source.outputs.length) {
+			throw new IllegalArgumentException("Node " + from +
+					" has no output " + output);
+		}
+
+		source.outputs[output].add(to);
+	}
+
+	/**
+	 * Works out the order the nodes are run in, and connects each block to
+	 * the graph. This must be called after the graph is changed, and the
+	 * new plan is used from the next note onwards.
+	 * @throws IllegalStateException if the nodes are connected in a loop
+	 */
+	public synchronized void compile() {
+		int size = nodes.size();
+
+		// Kahn's algorithm, taking nodes in the order they were added
+		// whenever there is a choice
+		int[] inputs = new int[size];
+		for (Node node : nodes) {
+			for (List<Integer> output : node.outputs) {
+				for (int to : output) {
+					inputs[to]++;
+				}
+			}
+		}
+
+		ArrayDeque<Integer> ready = new ArrayDeque<>();
+		for (int id = 0; id < size; id++) {
+			if (inputs[id] == 0) {
+				ready.add(id);
+			}
+		}
+
+		int[] order = new int[size];
+		int count = 0;
+		while (!ready.isEmpty()) {
+			int id = ready.poll();
+			order[count++] = id;
+			for (List<Integer> output : nodes.get(id).outputs) {
+				for (int to : output) {
+					if (--inputs[to] == 0) {
+						ready.add(to);
+					}
+				}
+			}
+		}
+
+		if (count < size) {
+			throw new IllegalStateException(
+					"The processing graph contains a loop");
+		}
+
+		Plan compiled = new Plan(nodes, order);
+		for (int id = 0; id < size; id++) {
+			ProcessingBlock block = compiled.blocks[id];
+			if (block != null) {
+				block.removeAllObservers();
+				block.registerObserver(new Port(id));
+				if (availableNotes != null) {
+					block.setAvailableNotes(availableNotes);
+				}
+			}
+		}
+		plan = compiled;
+	}
+
+	/**
+	 * @return The processing blocks in the graph, in the order they are run
+	 */
+	public List<ProcessingBlock> getBlocks() {
+		Plan current = plan;
+		ArrayList<ProcessingBlock> blocks = new ArrayList<>();
+		for (int id : current.order) {
+			if (current.blocks[id] != null) {
+				blocks.add(current.blocks[id]);
+			}
+		}
+		return blocks;
+	}
+
+	/**
+	 * Lists the blocks of a chain, with any graphs in it replaced by the
+	 * blocks inside them, so that the clock can step every block
+	 * @param chain - The processing block chain
+	 * @return The blocks, in the order they are run
+	 */
+	public static List<ProcessingBlock> expand(List<ProcessingBlock> chain) {
+		ArrayList<ProcessingBlock> blocks = new ArrayList<>();
+		for (ProcessingBlock block : chain) {
+			if (block instanceof ProcessingGraph) {
+				blocks.addAll(expand(((ProcessingGraph) block).getBlocks()));
+			} else {
+				blocks.add(block);
+			}
+		}
+		return blocks;
+	}
+
+	/*************************************************
+	 * Processing notes
+	 *************************************************/
+
+	/**
+	 * Runs a note through the graph, from the input node
+	 */
+	@Override
+	public void update(Note note, Boolean noteOn, Note[] availableNotes) {
+		Plan current = plan;
+		Run run = current.runs.get();
+		run.buffers[INPUT].add(note, noteOn, availableNotes);
+		execute(current, run, 0);
+	}
+
+	@Override
+	public void update(Note note, Boolean noteOn) { }
+
+	@Override
+	public void setAvailableNotes(Note[] availableNotes) {
+		this.availableNotes = availableNotes;
+		for (ProcessingBlock block : plan.blocks) {
+			if (block != null) {
+				block.setAvailableNotes(availableNotes);
+			}
+		}
+	}
+
+	/**
+	 * Releases the notes of every block, in the order they are run, so the
+	 * note offs pass through the rest of the graph
+	 */
+	@Override
+	public void releaseNotes() {
+		Plan current = plan;
+		for (int id : current.order) {
+			if (current.blocks[id] != null) {
+				current.blocks[id].releaseNotes();
+			}
+		}
+		for (int[] counts : current.mergeCounts) {
+			if (counts != null) {
+				synchronized (counts) {
+					Arrays.fill(counts, 0);
+				}
+			}
+		}
+	}
+
+	/*************************************************
+	 * Getter/setter methods
+	 *************************************************/
+
+	@Override
+	public String getName() {
+		return "Processing Graph";
+	}
+
+	/**
+	 * @return The nodes and the connections of the graph, in the form read by
+	 * 		   parse()
+	 */
+	@Override
+	public synchronized String getParameters() {
+		StringBuilder nodeList = new StringBuilder();
+		StringBuilder connectionList = new StringBuilder();
+
+		for (int id = 0; id < nodes.size(); id++) {
+			Node node = nodes.get(id);
+
+			if (id > OUTPUT) {
+				if (nodeList.length() > 0) {
+					nodeList.append(ITEM_SEPARATOR);
+				}
+				nodeList.append(escape(node.kind));
+
+				if (node.kind.equals(BLOCK)) {
+					String[] parameters =
+							node.block.getParameters().split(",", 2);
+					nodeList.append(FIELD_SEPARATOR)
+							.append(escape(node.block.getName()))
+							.append(FIELD_SEPARATOR)
+							.append(escape(parameters[0]))
+							.append(FIELD_SEPARATOR)
+							.append(escape(parameters.length > 1 ?
+									parameters[1] : ""));
+				} else if (node.kind.equals(ZONE_SPLIT)) {
+					nodeList.append(FIELD_SEPARATOR).append(node.splitKey);
+				}
+			}
+
+			for (int output = 0; output < node.outputs.length; output++) {
+				for (int to : node.outputs[output]) {
+					if (connectionList.length() > 0) {
+						connectionList.append(ITEM_SEPARATOR);
+					}
+					connectionList.append(id).append(FIELD_SEPARATOR)
+							.append(output).append(FIELD_SEPARATOR)
+							.append(to);
+				}
+			}
+		}
+
+		return (nodeList.length() == 0 ? NO_PARAMS : nodeList) + "," +
+				(connectionList.length() == 0 ? NO_PARAMS : connectionList);
+	}
+
+	/**
+	 * The nodes of a graph are set when it is made, by parse()
+	 */
+	@Override
+	public void setParameters(String parameter1, String parameter2) { }
+
+	/**
+	 * @param id - The id of a node
+	 * @return The kind of the node
+	 */
+	public synchronized String getKind(int id) {
+		return getNode(id).kind;
+	}
+
+	public synchronized int getNodeCount() {
+		return nodes.size();
+	}
+
+	@Override
+	public String toString() {
+		return "Processing Graph: " + getBlocks().size() + " blocks";
+	}
+
+	/*************************************************
+	 *  Observer methods
+	 *************************************************/
+
+	@Override
+	public void registerObserver(Observer observer) {
+		observers.add(observer);
+	}
+
+	@Override
+	public void removeObserver(Observer observer) {
+		observers.remove(observer);
+	}
+
+	@Override
+	public void notifyObservers(Note note, Boolean noteOn) { }
+
+	@Override
+	public void removeAllObservers() {
+		observers.clear();
+	}
+
+	/*************************************************
+	 *  Helper methods
+	 *************************************************/
+
+	/**
+	 * @return The items of a list in the parameters of a graph
+	 */
+	private static String[] split(String list) {
+		if (list == null || list.isEmpty() || list.equals(NO_PARAMS)) {
+			return new String[0];
+		}
+		return list.split(ITEM_SEPARATOR);
+	}
+
+	private static int parseNumber(String field) {
+		try {
+			return Integer.parseInt(field);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Not a number: " + field);
+		}
+	}
+
+	/**
+	 * Replaces the characters that separate the parameters of a graph, and
+	 * the parameters in a configuration file
+	 */
+	private static String escape(String field) {
+		return field.replace("%", "%25").replace(" ", "%20")
+				.replace(":", "%3A").replace(",", "%2C");
+	}
+
+	private static String unescape(String field) {
+		return field.replace("%2C", ",").replace("%3A", ":")
+				.replace("%20", " ").replace("%25", "%");
+	}
+
+	private int addNode(Node node) {
+		nodes.add(node);
+		return nodes.size() - 1;
+	}
+
+	private Node getNode(int id) {
+		if (id < 0 || id >= nodes.size()) {
+			throw new IllegalArgumentException("No node " + id);
+		}
+		return nodes.get(id);
+	}
+
+	/**
+	 * Runs the nodes of the plan in order, from a position in the plan, until
+	 * every buffer is empty. A run that is already going on this thread
+	 * reaches the later nodes by itself.
+	 */
+	private void execute(Plan plan, Run run, int from) {
+		if (run.running) {
+			return;
+		}
+
+		run.running = true;
+		try {
+			for (int position = from; position < plan.order.length;
+					position++) {
+				int id = plan.order[position];
+				NoteBuffer buffer = run.buffers[id];
+				for (int i = 0; i < buffer.size; i++) {
+					runNode(plan, run, id, buffer.notes[i], buffer.noteOns[i],
+							buffer.availableNotes[i]);
+				}
+				buffer.clear();
+			}
+		} finally {
+			run.running = false;
+		}
+	}
+
+	/**
+	 * Passes a note through a single node
+	 */
+	private void runNode(Plan plan, Run run, int id, Note note,
+			Boolean noteOn, Note[] availableNotes) {
+		switch (plan.kinds[id]) {
+		case BLOCK:
+			plan.blocks[id].update(note, noteOn, availableNotes);
+			break;
+		case OUTPUT_NODE:
+			observers.notifyObservers(note, noteOn, availableNotes);
+			break;
+		case ZONE_SPLIT:
+			int output = note.getKeyNumber() < plan.splitKeys[id] ?
+					LOWER_ZONE : UPPER_ZONE;
+			send(plan, run, id, output, note, noteOn, availableNotes);
+			break;
+		case MERGE:
+			if (merge(plan.mergeCounts[id], note.getKeyNumber(), noteOn)) {
+				send(plan, run, id, 0, note, noteOn, availableNotes);
+			}
+			break;
+		default:
+			send(plan, run, id, 0, note, noteOn, availableNotes);
+		}
+	}
+
+	/**
+	 * Puts a note in the buffers of the nodes connected to an output
+	 */
+	private static void send(Plan plan, Run run, int id, int output,
+			Note note, Boolean noteOn, Note[] availableNotes) {
+		int[] targets = plan.outputs[id][output];
+		for (int i = 0; i < targets.length; i++) {
+			run.buffers[targets[i]].add(note, noteOn, availableNotes);
+		}
+	}
+
+	/**
+	 * Counts the branches that have turned a key on
+	 * @return true if the note should be passed on
+	 */
+	private static boolean merge(int[] counts, int key, Boolean noteOn) {
+		if (key < 0 || key >= KEYS) {
+			return true;
+		}
+
+		synchronized (counts) {
+			if (noteOn) {
+				return ++counts[key] == 1;
+			}
+			if (counts[key] == 0) {
+				return true;
+			}
+			return --counts[key] == 0;
+		}
+	}
+
+	/**
+	 * Called when a block in the graph sends a note
+	 */
+	private void sent(int id, Note note, Boolean noteOn,
+			Note[] availableNotes) {
+		Plan current = plan;
+		Run run = current.runs.get();
+		send(current, run, id, 0, note, noteOn, availableNotes);
+
+		// notes sent outside a run (eg. on a clock tick) are run through the
+		// nodes after the block
+		execute(current, run, current.positions[id] + 1);
+	}
+
+	/**
+	 * A node of the graph, as it is being built
+	 */
+	private static final class Node {
+		private final String kind;
+		private final ProcessingBlock block;
+		private final int splitKey;
+
+		// The nodes connected to each output
+		private final List<Integer>[] outputs;
+
+		@SuppressWarnings("unchecked")
+		private Node(String kind, ProcessingBlock block, int splitKey) {
+			this.kind = kind;
+			this.block = block;
+			this.splitKey = splitKey;
+
+			int count = kind.equals(ZONE_SPLIT) ? 2 : 1;
+			outputs = (List<Integer>[]) new List<?>[count];
+			for (int i = 0; i < count; i++) {
+				outputs[i] = new ArrayList<>();
+			}
+		}
+	}
+
+	/**
+	 * The compiled graph. It is never changed once made, so notes can be run
+	 * through it while the graph is being rebuilt.
+	 */
+	private static final class Plan {
+		private final int[] order;
+		private final int[] positions;
+		private final String[] kinds;
+		private final ProcessingBlock[] blocks;
+		private final int[] splitKeys;
+		private final int[][][] outputs;
+
+		// The count of branches holding each key on, for each merge node
+		private final int[][] mergeCounts;
+
+		// The buffers of each thread that runs notes through the graph
+		private final ThreadLocal<Run> runs;
+
+		private Plan(List<Node> nodes, int[] order) {
+			int size = nodes.size();
+			this.order = order;
+			positions = new int[size];
+			kinds = new String[size];
+			blocks = new ProcessingBlock[size];
+			splitKeys = new int[size];
+			outputs = new int[size][][];
+			mergeCounts = new int[size][];
+
+			for (int position = 0; position < size; position++) {
+				positions[order[position]] = position;
+			}
+
+			for (int id = 0; id < size; id++) {
+				Node node = nodes.get(id);
+				kinds[id] = node.kind;
+				blocks[id] = node.block;
+				splitKeys[id] = node.splitKey;
+				if (node.kind.equals(MERGE)) {
+					mergeCounts[id] = new int[KEYS];
+				}
+
+				outputs[id] = new int[node.outputs.length][];
+				for (int output = 0; output < node.outputs.length; output++) {
+					List<Integer> targets = node.outputs[output];
+					outputs[id][output] = new int[targets.size()];
+					for (int i = 0; i < targets.size(); i++) {
+						outputs[id][output][i] = targets.get(i);
+					}
+				}
+			}
+
+			runs = ThreadLocal.withInitial(() -> new Run(size));
+		}
+	}
+
+	/**
+	 * The observer of a block in the graph
+	 */
+	private final class Port implements Observer {
+		private final int id;
+
+		private Port(int id) {
+			this.id = id;
+		}
+
+		@Override
+		public void update(Note note, Boolean noteOn) { }
+
+		@Override
+		public void update(Note note, Boolean noteOn, Note[] availableNotes) {
+			sent(id, note, noteOn, availableNotes);
+		}
+	}
+
+	/**
+	 * The buffers of one thread
+	 */
+	private static final class Run {
+		private final NoteBuffer[] buffers;
+		private boolean running;
+
+		private Run(int size) {
+			buffers = new NoteBuffer[size];
+			for (int i = 0; i < size; i++) {
+				buffers[i] = new NoteBuffer();
+			}
+		}
+	}
+}
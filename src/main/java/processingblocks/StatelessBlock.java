@@ -0,0 +1,47 @@
+package processingblocks;
+
+import scales.Note;
+
+/**
+ * This is the interface implemented by processing blocks whose output for a
+ * note depends only on the note and the globally set scale. A run of these
+ * blocks in the chain can be folded into a single lookup table by the chain
+ * compiler.
+ * @author Lisa Liu-Thorrold
+ *
+ */
+public interface StatelessBlock extends ProcessingBlock {
+	
+	/**
+	 * @return The most keys this block can output for one input key
+	 */
+	int getMaxOutputKeys();
+	
+	/**
+	 * Works out the keys this block outputs for an input key
+	 * @param key - The input key
+	 * @param availableNotes - The available notes in the set scale
+	 * @param keysOut - The array to write the output keys to
+	 * @param offset - The position in the array to write the first key to
+	 * @return The number of keys written
+	 */
+	int mapKey(int key, Note[] availableNotes, int[] keysOut, int offset);
+	
+	/**
+	 * Sends a note to the observers of this block, without processing it
+	 */
+	void sendNote(Note note, Boolean noteOn, Note[] availableNotes);
+	
+	/**
+	 * Sets the folded run this block is the first block of. While it is set,
+	 * notes received by this block are processed by the run instead, and are
+	 * sent from the last block of the run.
+	 * @param run - The folded run, or null to process notes one block at a time
+	 */
+	void setCompiledRun(CompiledRun run);
+	
+	/**
+	 * @return The folded run this block is the first block of, or null
+	 */
+	CompiledRun getCompiledRun();
+}
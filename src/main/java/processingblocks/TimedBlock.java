@@ -0,0 +1,14 @@
+package processingblocks;
+
+import midiblocks.TimingWheel;
+
+/**
+ * This is the interface for Processing Blocks that schedule delayed events
+ * (eg. note lengths or delayed releases). They are given the shared timing
+ * wheel when the chain is connected, rather than running their own timers.
+ * @author Lisa Liu-Thorrold
+ *
+ */
+public interface TimedBlock extends ProcessingBlock {
+	void setTimingWheel(TimingWheel timingWheel);
+}
@@ -45,4 +45,8 @@ public class Scale {
 		return rootNote;
 	}
 	
+	public String getMode() {
+		return mode;
+	}
+	
 }
@@ -444,4 +444,113 @@ public class ArpeggiatorTest {
 		
 	}
 	
+	@Test
+	public void testOctaveRange() {
+		Arpeggiator arpeggiator = new Arpeggiator(ASCENDING);
+		arpeggiator.setOctaves(2);
+		
+		arpeggiator.update(n1, true, availableNotes); 
+		arpeggiator.update(n3, true, availableNotes); 
+		
+		// the held notes, then the same notes an octave higher
+		int[] expectedKeys = { 22, 24, 34, 36, 22 };
+		for (int key : expectedKeys) {
+			arpeggiator.arpeggiate();
+			assertEquals(key, arpeggiator.getLastArpeggiatedNote().getKeyNumber());
+		}
+	}
+	
+	@Test
+	public void testPatternAndRepeats() {
+		Arpeggiator arpeggiator = new Arpeggiator(ASCENDING);
+		arpeggiator.setSequenceParameters("pattern=1 3 2 4;repeats=2");
+		
+		arpeggiator.update(n1, true, availableNotes); 
+		arpeggiator.update(n4, true, availableNotes); 
+		arpeggiator.update(n3, true, availableNotes); 
+		arpeggiator.update(n2, true, availableNotes); 
+		
+		Note[] expected = { n1, n1, n3, n3, n2, n2, n4, n4, n1 };
+		for (Note note : expected) {
+			arpeggiator.arpeggiate();
+			assertEquals(note, arpeggiator.getLastArpeggiatedNote());
+		}
+	}
+	
+	@Test
+	public void testSequenceParameters() {
+		Arpeggiator arpeggiator = new Arpeggiator(PING_PONG);
+		assertEquals("Ping pong,NoParams", arpeggiator.getParameters());
+		
+		arpeggiator.setSequenceParameters("octaves=3;pattern=1 3 2 4");
+		assertEquals(3, arpeggiator.getOctaves());
+		assertEquals("1 3 2 4", arpeggiator.getPattern());
+		assertEquals(1, arpeggiator.getRepeats());
+		assertEquals("Ping pong,octaves=3;pattern=1 3 2 4", 
+				arpeggiator.getParameters());
+		
+		// parameters that are left out go back to their defaults
+		arpeggiator.setSequenceParameters("NoParams");
+		assertEquals(1, arpeggiator.getOctaves());
+		assertEquals("", arpeggiator.getPattern());
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidSequenceParameters() {
+		Arpeggiator arpeggiator = new Arpeggiator(ASCENDING);
+		arpeggiator.setSequenceParameters("octaves=5");
+	}
+	
+	@Test
+	public void testLatch() {
+		Arpeggiator arpeggiator = new Arpeggiator(ASCENDING);
+		arpeggiator.setLatch(true);
+		
+		arpeggiator.update(n1, true, availableNotes); 
+		arpeggiator.update(n2, true, availableNotes); 
+		arpeggiator.update(n1, false, availableNotes); 
+		arpeggiator.update(n2, false, availableNotes); 
+		
+		// the notes keep playing after the keys are released
+		arpeggiator.arpeggiate();
+		assertEquals(n1, arpeggiator.getLastArpeggiatedNote());
+		arpeggiator.arpeggiate();
+		assertEquals(n2, arpeggiator.getLastArpeggiatedNote());
+		
+		// a new chord replaces the latched notes
+		arpeggiator.update(n4, true, availableNotes); 
+		assertEquals(1, arpeggiator.getNotesCurrentlyOn().size());
+		arpeggiator.arpeggiate();
+		assertEquals(n4, arpeggiator.getLastArpeggiatedNote());
+		
+		// turning latch off releases the notes whose keys are not held
+		arpeggiator.update(n4, false, availableNotes); 
+		arpeggiator.setLatch(false);
+		assertEquals(0, arpeggiator.getNotesCurrentlyOn().size());
+	}
+	
+	@Test
+	public void testRestartOnBar() {
+		Arpeggiator arpeggiator = new Arpeggiator(ASCENDING);
+		arpeggiator.setRestartOnBar(true);
+		
+		arpeggiator.update(n1, true, availableNotes); 
+		arpeggiator.update(n2, true, availableNotes); 
+		
+		// the new chord waits for the first beat of the next bar
+		arpeggiator.clockTick(24);
+		arpeggiator.clockTick(72);
+		assertEquals(null, arpeggiator.getLastArpeggiatedNote());
+		
+		arpeggiator.clockTick(96);
+		assertEquals(n1, arpeggiator.getLastArpeggiatedNote());
+		arpeggiator.clockTick(120);
+		assertEquals(n2, arpeggiator.getLastArpeggiatedNote());
+		
+		// adding a note to the chord does not restart the sequence
+		arpeggiator.update(n3, true, availableNotes); 
+		arpeggiator.clockTick(144);
+		assertEquals(n3, arpeggiator.getLastArpeggiatedNote());
+	}
+	
 }
@@ -0,0 +1,206 @@
+package engg2800g07;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import processingblocks.Arpeggiator;
+import processingblocks.ChainCompiler;
+import processingblocks.CompiledRun;
+import processingblocks.Chordify;
+import processingblocks.PitchShift;
+import processingblocks.ProcessingBlock;
+import scales.Note;
+import scales.NoteDictionary;
+
+/**
+ * Tests that folded runs of stateless blocks send the same notes as the
+ * blocks processing each note in turn
+ * @author Lisa
+ *
+ */
+public class ChainCompilerTest {
+	
+	private final NoteDictionary noteDictionary = new NoteDictionary();
+	
+	private final String[] notes = { "C#/Db", "D#/Eb", "E", "F#/Gb", "G#/Ab",
+			"A", "C" };
+	
+	private final Note[] availableNotes = noteDictionary.filterAvailableNotes(notes);
+	
+	/**
+	 * Connects the blocks in order, and records the notes sent by the last
+	 */
+	private NoteRecorder connect(List<ProcessingBlock> chain) {
+		for (int i = 0; i < chain.size() - 1; i++) {
+			chain.get(i).registerObserver(chain.get(i + 1));
+		}
+		NoteRecorder recorder = new NoteRecorder();
+		chain.get(chain.size() - 1).registerObserver(recorder);
+		return recorder;
+	}
+	
+	/**
+	 * Sends every key on and off through the first block of the chain
+	 */
+	private String playAllKeys(List<ProcessingBlock> chain, 
+			NoteRecorder recorder) {
+		recorder.clear();
+		for (int key = 1; key <= 88; key++) {
+			Note note = noteDictionary.getNote(key);
+			chain.get(0).update(note, true, availableNotes);
+			chain.get(0).update(note, false, availableNotes);
+		}
+		return recorder.getSent();
+	}
+
+	@Test
+	public void testFoldedRunMatchesBlocks() {
+		Chordify chordify = new Chordify();
+		chordify.setParameters("Seventh", "First Inversion");
+		PitchShift middle = new PitchShift(-2);
+		
+		List<ProcessingBlock> chain = new ArrayList<>(Arrays.asList(
+				new PitchShift(3), middle, chordify, new Chordify()));
+		NoteRecorder recorder = connect(chain);
+		
+		String unfolded = playAllKeys(chain, recorder);
+		
+		ChainCompiler.compile(chain);
+		Note before = middle.getLastNoteSent();
+		String folded = playAllKeys(chain, recorder);
+		
+		assertEquals(unfolded, folded);
+		
+		// the notes went through the table, not the middle block
+		assertEquals(before, middle.getLastNoteSent());
+	}
+	
+	@Test
+	public void testStatefulBlockEndsRun() {
+		PitchShift first = new PitchShift(1);
+		PitchShift last = new PitchShift(1);
+		
+		List<ProcessingBlock> chain = new ArrayList<>(Arrays.asList(
+				first, new Arpeggiator("Ascending"), last));
+		connect(chain);
+		ChainCompiler.compile(chain);
+		
+		// both shifts still process the note themselves
+		first.update(noteDictionary.getNote(40), true, availableNotes);
+		assertNotEquals(null, first.getLastNoteSent());
+	}
+	
+	@Test
+	public void testRecompileKeepsUnchangedRuns() {
+		PitchShift first = new PitchShift(1);
+		PitchShift changed = new PitchShift(2);
+		
+		List<ProcessingBlock> chain = new ArrayList<>(Arrays.asList(
+				new PitchShift(1), new Chordify(), new Arpeggiator("Ascending"),
+				first, changed));
+		connect(chain);
+		ChainCompiler.compile(chain);
+		
+		CompiledRun unchanged = 
+				((PitchShift) chain.get(0)).getCompiledRun();
+		CompiledRun before = first.getCompiledRun();
+		
+		ChainCompiler.recompile(chain, changed);
+		
+		// only the run with the changed block is worked out again
+		assertSame(unchanged, ((PitchShift) chain.get(0)).getCompiledRun());
+		assertNotSame(before, first.getCompiledRun());
+	}
+	
+	@Test
+	public void testReleaseFoldedNotes() {
+		List<ProcessingBlock> chain = new ArrayList<>(Arrays.asList(
+				new PitchShift(1), new Chordify()));
+		NoteRecorder recorder = connect(chain);
+		ChainCompiler.compile(chain);
+		
+		chain.get(0).update(noteDictionary.getNote(8), true, availableNotes);
+		((PitchShift) chain.get(0)).setPitch(3);
+		recorder.clear();
+		
+		// the chord that was turned on is turned off
+		chain.get(0).releaseNotes();
+		assertEquals("10- 13- 17- ", recorder.getSent());
+		
+		// and only once
+		chain.get(0).releaseNotes();
+		assertEquals("10- 13- 17- ", recorder.getSent());
+	}
+	
+	@Test
+	public void testDissolvedRunReleasesNotes() {
+		PitchShift first = new PitchShift(3);
+		PitchShift second = new PitchShift(2);
+		List<ProcessingBlock> chain = new ArrayList<>(Arrays.asList(
+				first, second));
+		NoteRecorder recorder = connect(chain);
+		ChainCompiler.compile(chain);
+		
+		first.update(noteDictionary.getNote(40), true, availableNotes);
+		String on = recorder.getSent();
+		recorder.clear();
+		
+		// the run is dissolved once the second block is removed, and the
+		// note it turned on is turned off rather than left stuck
+		chain.remove(second);
+		ChainCompiler.compile(chain);
+		assertEquals(on.replace('+', '-'), recorder.getSent());
+	}
+	
+	@Test
+	public void testReleaseLaterBlockOfRun() {
+		PitchShift first = new PitchShift(3);
+		PitchShift second = new PitchShift(2);
+		List<ProcessingBlock> chain = new ArrayList<>(Arrays.asList(
+				first, second, new Chordify()));
+		NoteRecorder recorder = connect(chain);
+		ChainCompiler.compile(chain);
+		
+		first.update(noteDictionary.getNote(40), true, availableNotes);
+		String on = recorder.getSent();
+		recorder.clear();
+		
+		// editing a block that is not the first of the run turns off the
+		// notes of the whole run, as the model does before a change
+		ChainCompiler.releaseNotes(chain, second);
+		assertEquals(on.replace('+', '-'), recorder.getSent());
+		
+		// and only once
+		ChainCompiler.releaseNotes(chain, first);
+		assertEquals(on.replace('+', '-'), recorder.getSent());
+	}
+	
+	@Test
+	public void testCompileKeepsPreparedTables() {
+		PitchShift first = new PitchShift(1);
+		List<ProcessingBlock> chain = new ArrayList<>(Arrays.asList(
+				first, new Chordify()));
+		connect(chain);
+		
+		ChainCompiler.compile(chain);
+		ChainCompiler.prepare(chain, availableNotes);
+		CompiledRun prepared = first.getCompiledRun();
+		
+		// connecting the same chain again keeps the prepared run
+		ChainCompiler.compile(chain);
+		assertSame(prepared, first.getCompiledRun());
+		
+		// but not once a parameter has changed
+		first.setPitch(2);
+		ChainCompiler.compile(chain);
+		assertNotSame(prepared, first.getCompiledRun());
+	}
+}
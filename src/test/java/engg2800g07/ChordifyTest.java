@@ -116,4 +116,71 @@ public class ChordifyTest {
 		assertEquals(true, chordify.getNotesSent().get(n1));
 	}
 
+	@Test
+	public void testChordifySeventh() {
+		Chordify chordify = new Chordify();
+		chordify.setParameters("Seventh", "NoParams");
+		
+		Note n1 = new Note(8, 'E', false, 1);
+		Note n2 = new Note(12, 'G',	true, 1);
+		Note n3 = new Note(16, 'C', false, 2);
+		Note n4 = new Note(19, 'D', true, 2);
+		
+		chordify.update(n1, true, availableNotes); 
+		
+		// the seventh is 6 notes higher within the scale
+		assertEquals(4, chordify.getNotesSent().size());
+		assertEquals(true, chordify.getNotesSent().get(n1));
+		assertEquals(true, chordify.getNotesSent().get(n2));
+		assertEquals(true, chordify.getNotesSent().get(n3));
+		assertEquals(true, chordify.getNotesSent().get(n4));
+		assertEquals("Seventh,NoParams", chordify.getParameters());
+	}
+	
+	@Test
+	public void testChordifyInversion() {
+		Chordify chordify = new Chordify();
+		chordify.setParameters("NoParams", "First Inversion");
+		
+		// the played note moves up an octave
+		Note n1 = new Note(8, 'E', false, 1);
+		Note n2 = new Note(12, 'G',	true, 1);
+		Note n3 = new Note(16, 'C', false, 2);
+		Note n4 = new Note(20, 'E', false, 2);
+		
+		chordify.update(n1, false, availableNotes); 
+		
+		assertEquals(3, chordify.getNotesSent().size());
+		assertEquals(false, chordify.getNotesSent().get(n2));
+		assertEquals(false, chordify.getNotesSent().get(n3));
+		assertEquals(false, chordify.getNotesSent().get(n4));
+		assertEquals(null, chordify.getNotesSent().get(n1));
+		assertEquals("Triad,First Inversion", chordify.getParameters());
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testChordifyInvalidInversion() {
+		// a triad only has two inversions
+		new Chordify().setParameters("Sus4", "Third Inversion");
+	}
+	
+	@Test
+	public void testChordifyShapeChangeWhileNoteOn() {
+		Chordify chordify = new Chordify();
+		
+		Note n1 = new Note(8, 'E', false, 1);
+		Note n2 = new Note(12, 'G',	true, 1);
+		Note n3 = new Note(16, 'C', false, 2);
+		
+		chordify.update(n1, true, availableNotes); 
+		chordify.setShape("Seventh");
+		
+		// the note off turns off the triad that was turned on
+		chordify.update(n1, false, availableNotes); 
+		assertEquals(3, chordify.getNotesSent().size());
+		assertEquals(false, chordify.getNotesSent().get(n1));
+		assertEquals(false, chordify.getNotesSent().get(n2));
+		assertEquals(false, chordify.getNotesSent().get(n3));
+	}
+
 }
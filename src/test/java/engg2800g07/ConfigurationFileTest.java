@@ -0,0 +1,97 @@
+package engg2800g07;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import midiblocks.ConfigurationFile;
+import processingblocks.Chordify;
+import processingblocks.PitchShift;
+import processingblocks.ProcessingBlock;
+import scales.Scale;
+
+/**
+ * Tests the binary format of configuration files and scale libraries
+ * @author Lisa
+ *
+ */
+public class ConfigurationFileTest {
+
+	@Test
+	public void testChainRoundTrip() throws IOException {
+		File file = File.createTempFile("chain", ".midb");
+		file.deleteOnExit();
+
+		Chordify chordify = new Chordify();
+		chordify.setParameters("Seventh", "First Inversion");
+		ConfigurationFile.writeChain(file, "Keyboard", Arrays.asList(
+				(ProcessingBlock) new PitchShift(3), chordify));
+
+		ConfigurationFile.Chain chain = ConfigurationFile.readChain(file);
+		assertEquals("Keyboard", chain.getMidiSource());
+		assertEquals(2, chain.getBlocks().size());
+		assertEquals(new PitchShift(3).getName(),
+				chain.getBlocks().get(0)[0]);
+		assertArrayEquals(new String[] {chordify.getName(), "Seventh",
+				"First Inversion"}, chain.getBlocks().get(1));
+	}
+
+	@Test
+	public void testScalesRoundTrip() throws IOException {
+		File file = File.createTempFile("scales", ".midb");
+		file.deleteOnExit();
+
+		Map<Scale, String[]> scales = new LinkedHashMap<>();
+		scales.put(new Scale("Major", "C"),
+				new String[] {"C", "D", "E", "F", "G", "A", "B"});
+		scales.put(new Scale("Pentatonic", "C#/Db"),
+				new String[] {"C#/Db", "D#/Eb", "F", "G#/Ab", "A#/Bb"});
+		ConfigurationFile.writeScales(file, scales);
+
+		Map<Scale, String[]> read = ConfigurationFile.readScales(file);
+		assertEquals(2, read.size());
+		assertArrayEquals(scales.get(new Scale("Major", "C")),
+				read.get(new Scale("Major", "C")));
+		assertArrayEquals(scales.get(new Scale("Pentatonic", "C#/Db")),
+				read.get(new Scale("Pentatonic", "C#/Db")));
+	}
+
+	@Test
+	public void testIncorrectFilesRejected() throws IOException {
+		File file = File.createTempFile("scales", ".midb");
+		file.deleteOnExit();
+
+		Map<Scale, String[]> scales = new LinkedHashMap<>();
+		scales.put(new Scale("Major", "C"),
+				new String[] {"C", "D", "E", "F", "G", "A", "B"});
+		ConfigurationFile.writeScales(file, scales);
+
+		// a scales file is not a configuration file
+		try {
+			ConfigurationFile.readChain(file);
+			fail();
+		} catch (IOException e) {
+			// expected
+		}
+
+		// nor is a file that has been cut short
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.setLength(raf.length() - 1);
+		}
+		try {
+			ConfigurationFile.readScales(file);
+			fail();
+		} catch (IOException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,133 @@
+package engg2800g07;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.EventQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import midiblocks.DispatchLane;
+import midiblocks.EventEmitter;
+import midiblocks.EventType;
+import midiblocks.ListenerSubscription;
+
+/**
+ * Tests the subscription and dispatch of emitted events
+ * @author Lisa
+ *
+ */
+public class EventEmitterTest {
+
+	private static final EventType FIRST = EventType.of("testFirst");
+	private static final EventType SECOND = EventType.of("testSecond");
+
+	@Test
+	public void testEmitAndUnsubscribe() {
+		EventEmitter emitter = new EventEmitter();
+		StringBuilder output = new StringBuilder();
+
+		ListenerSubscription a = emitter.addListener(FIRST,
+				event -> output.append("a"));
+		emitter.addListener(FIRST, event -> output.append("b"));
+		emitter.addListener(SECOND, event -> output.append("c"));
+
+		// listeners are invoked in the order they were added
+		emitter.emit(FIRST);
+		assertEquals("ab", output.toString());
+
+		assertTrue(a.unsubscribe());
+		assertFalse(a.unsubscribe());
+		assertEquals(1, emitter.getListenerCount(FIRST));
+
+		emitter.emit(FIRST);
+		emitter.emit(SECOND);
+		assertEquals("abbc", output.toString());
+
+		// an event type with no listeners on this emitter
+		emitter.emit(EventType.of("testUnused"));
+		assertEquals("abbc", output.toString());
+	}
+
+	@Test
+	public void testUnsubscribeWhileEmitting() {
+		EventEmitter emitter = new EventEmitter();
+		StringBuilder output = new StringBuilder();
+		ListenerSubscription[] b = new ListenerSubscription[1];
+
+		// the first listener removes the second, which still hears the event
+		// being emitted, but not the next one
+		emitter.addListener(FIRST, event -> {
+			output.append("a");
+			b[0].unsubscribe();
+		});
+		b[0] = emitter.addListener(FIRST, event -> output.append("b"));
+
+		emitter.emit(FIRST);
+		emitter.emit(FIRST);
+		assertEquals("aba", output.toString());
+	}
+
+	@Test
+	public void testEventTypesAreShared() {
+		assertSame(FIRST, EventType.of("testFirst"));
+		assertEquals("testFirst", FIRST.getName());
+	}
+
+	@Test
+	public void testEdtLane() throws Exception {
+		EventEmitter emitter = new EventEmitter();
+		AtomicInteger count = new AtomicInteger();
+
+		emitter.addListener(FIRST, DispatchLane.EDT, false, event -> {
+			assertTrue(EventQueue.isDispatchThread());
+			count.incrementAndGet();
+		});
+
+		emitter.emit(FIRST);
+		emitter.emit(FIRST);
+
+		// wait for the events to be delivered
+		EventQueue.invokeAndWait(() -> { });
+		assertEquals(2, count.get());
+	}
+
+	@Test
+	public void testAsyncLaneCoalesces() throws Exception {
+		EventEmitter emitter = new EventEmitter();
+		AtomicInteger count = new AtomicInteger();
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch done = new CountDownLatch(2);
+
+		emitter.addListener(FIRST, DispatchLane.ASYNC, true, event -> {
+			count.incrementAndGet();
+			started.countDown();
+			try {
+				release.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+			}
+			done.countDown();
+		});
+
+		// the emitting thread is not held up by the slow listener
+		emitter.emit(FIRST);
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+
+		// a burst while the listener is busy is delivered once
+		emitter.emit(FIRST);
+		emitter.emit(FIRST);
+		emitter.emit(FIRST);
+		release.countDown();
+
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		Thread.sleep(50);
+		assertEquals(2, count.get());
+	}
+}
@@ -23,7 +23,7 @@ public class GatesTest {
 	// notes per tick >= 1
 	private final static double NOTES_PER_TICK_NORMAL = 2.0;
 	
-	// 0 < notes per tick < 1
+	// 0 < notes per tick < 1 (a note every 2.2 ticks)
 	private final static double NOTES_PER_TICK = 0.45;
 	
 	@Before
@@ -50,16 +50,92 @@ public class GatesTest {
 		// Should be 0, as no note off messages received so far
 		assertEquals(0, gates.getSendWhenGateOpens().size());
 
-		// verify the queue released three notes sent, so one remaining
-		assertEquals(n2, gates.getGateQueue().get(0));
+		// verify the queue released one note, so three remaining
+		assertEquals(3, gates.getGateQueue().size());
+		assertEquals(n4, gates.getGateQueue().get(0));
 		
-		// verify 3 notes sent
+		// verify 1 note sent
+		assertEquals(1, gates.getNoteOnOutputted().size());
 		assertEquals(n1, gates.getNoteOnOutputted().get(0));
+		
+		// the next note waits until 0.45 notes per tick adds up to a note
+		gates.release();
+		gates.release();
+		assertEquals(1, gates.getNoteOnOutputted().size());
+		gates.release();
+		assertEquals(2, gates.getNoteOnOutputted().size());
 		assertEquals(n4, gates.getNoteOnOutputted().get(1));
-		assertEquals(n3, gates.getNoteOnOutputted().get(2));
+		
+		// the 0.35 left over carries on, so the note after comes sooner
+		gates.release();
+		assertEquals(2, gates.getNoteOnOutputted().size());
+		gates.release();
+		assertEquals(3, gates.getNoteOnOutputted().size());
 
 	}
 	
+	@Test
+	public void testAverageRates() {
+		assertEquals(0.45, averageRate(0.45), 0.01);
+		assertEquals(0.7, averageRate(0.7), 0.01);
+		assertEquals(2.4, averageRate(2.4), 0.01);
+	}
+	
+	/**
+	 * Releases a gate that always has notes waiting for many ticks
+	 * @return The average number of notes released per tick
+	 */
+	private double averageRate(double notesPerTick) {
+		Gates gates = new Gates(QUEUE, notesPerTick);
+		
+		int ticks = 1000;
+		int key = 0;
+		for (int tick = 0; tick < ticks; tick++) {
+			// keep the queue full, and turn off the notes already released
+			while (gates.getGateQueue().size() < Gates.DEFAULT_CAPACITY) {
+				gates.update(new Note(key % 128, 'C', false, 3), true, 
+						availableNotes);
+				key++;
+			}
+			gates.release();
+		}
+		
+		// every note that was queued and is no longer waiting was released
+		return (double) (key - gates.getGateQueue().size()) / ticks;
+	}
+	
+	@Test
+	public void testQuarterNotesPerTick() {
+		Gates gates = new Gates(QUEUE, 0.25);
+		
+		gates.update(n1, true, availableNotes); 
+		gates.update(n4, true, availableNotes); 
+		gates.update(n3, true, availableNotes); 
+		
+		// one note on the first tick, then one every fourth tick
+		int[] expectedOutputted = { 1, 1, 1, 1, 2, 2, 2, 2, 3 };
+		for (int outputted : expectedOutputted) {
+			gates.release();
+			assertEquals(outputted, gates.getNoteOnOutputted().size());
+		}
+	}
+	
+	@Test
+	public void testOneAndAHalfNotesPerTick() {
+		Gates gates = new Gates(QUEUE, 1.5);
+		
+		for (int key = 30; key < 40; key++) {
+			gates.update(new Note(key, 'C', false, 3), true, availableNotes);
+		}
+		
+		// alternates between releasing two notes and one note
+		int[] expectedOutputted = { 2, 3, 5, 6, 8, 9 };
+		for (int outputted : expectedOutputted) {
+			gates.release();
+			assertEquals(outputted, gates.getNoteOnOutputted().size());
+		}
+	}
+	
 	@Test
 	public void testSimpleQueueGateRelease() throws Exception {
 		
@@ -305,4 +381,47 @@ public class GatesTest {
 		assertEquals(n2, gates.getSendWhenGateOpens().get(0));
 	}
 	
+	@Test
+	public void testOverflow() {
+		Gates gates = new Gates(QUEUE, NOTES_PER_TICK_NORMAL);
+		gates.setCapacity(2);
+		
+		gates.update(n1, true, availableNotes); 
+		gates.update(n4, true, availableNotes); 
+		
+		// the queue is full, so the newest note is dropped
+		gates.update(n3, true, availableNotes); 
+		assertEquals(2, gates.getGateQueue().size());
+		assertEquals(n4, gates.getGateQueue().get(1));
+		assertEquals(1, gates.getDroppedNotes());
+		
+		// the oldest note makes room for the new one
+		gates.setOverflowPolicy(Gates.OverflowPolicy.DROP_OLDEST);
+		gates.update(n2, true, availableNotes); 
+		assertEquals(n4, gates.getGateQueue().get(0));
+		assertEquals(n2, gates.getGateQueue().get(1));
+		assertEquals(2, gates.getDroppedNotes());
+	}
+	
+	@Test
+	public void testPitchPriority() {
+		Gates gates = new Gates("Lowest Pitch", 1);
+		
+		gates.update(n3, true, availableNotes); 
+		gates.update(n1, true, availableNotes); 
+		gates.update(n4, true, availableNotes); 
+		
+		// the lowest note is released first, whatever order they arrived in
+		gates.release();
+		assertEquals(n1, gates.getNoteOnOutputted().get(0));
+		
+		gates.setGatesMode("Highest Pitch");
+		gates.release();
+		assertEquals(n4, gates.getNoteOnOutputted().get(1));
+		
+		// the other notes keep waiting
+		assertEquals(1, gates.getGateQueue().size());
+		assertEquals(n3, gates.getGateQueue().get(0));
+	}
+	
 }
@@ -0,0 +1,91 @@
+package engg2800g07;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import midiblocks.MasterClock;
+import midiblocks.MidiClockSync;
+
+/**
+ * Tests the phase correction applied to the master clock by the MIDI clock
+ * sync
+ * @author Lisa
+ *
+ */
+public class MidiClockSyncTest {
+
+	private static final double TEMPO = 120;
+
+	// The time between two pulses at the tempo, in nanoseconds
+	private static final long PERIOD =
+			(long) (60000000000L / (TEMPO * MasterClock.PPQN));
+
+	private FakeClock masterClock;
+	private MidiClockSync sync;
+
+	/**
+	 * A running master clock whose last tick is set by the test, and which
+	 * records the phase corrections applied to it
+	 */
+	private static class FakeClock extends MasterClock {
+		private long lastTickTime;
+		private long correction;
+
+		FakeClock() {
+			super(TEMPO);
+		}
+
+		@Override
+		public boolean isRunning() { return true; }
+
+		@Override
+		public long getLastTickTime() { return lastTickTime; }
+
+		@Override
+		public void adjustPhase(long nanos) { correction += nanos; }
+	}
+
+	@Before
+	public void beforeEach() throws Exception {
+		masterClock = new FakeClock();
+		sync = new MidiClockSync(masterClock);
+	}
+
+	/**
+	 * Sends a pulse a fraction of a period after the last master clock tick
+	 */
+	private void pulse(double fraction) {
+		long time = 1000000000L;
+		sync.clockPulse(time - PERIOD);
+		masterClock.lastTickTime = time - (long) (fraction * PERIOD);
+		sync.clockPulse(time);
+	}
+
+	@Test
+	public void testPulseAfterTick() {
+		pulse(0.25);
+		assertEquals(PERIOD / 16, masterClock.correction, 1);
+	}
+
+	@Test
+	public void testPulseBeforeNextTick() {
+		pulse(0.75);
+		assertEquals(-PERIOD / 16, masterClock.correction, 1);
+	}
+
+	@Test
+	public void testTickSetAfterPulse() {
+		// the clock thread set the last tick three quarters of a period after
+		// the pulse, so the pulse is a quarter of a period after the tick
+		// before it
+		pulse(-0.75);
+		assertEquals(PERIOD / 16, masterClock.correction, 1);
+
+		// and a quarter of a period before the pulse is left as it is
+		masterClock.correction = 0;
+		pulse(-0.25);
+		assertEquals(-PERIOD / 16, masterClock.correction, 1);
+	}
+}
@@ -4,6 +4,7 @@ import static org.junit.Assert.assertEquals;
 
 import org.junit.Test;
 
+import midiblocks.Observer;
 import processingblocks.Monophonic;
 import scales.Note;
 
@@ -58,9 +59,73 @@ public class MonophonicTest {
 		monophonic.update(n3, true, availableNotes); 
 		assertEquals(n3, monophonic.getCurrentNoteOn());
 		
-		// turn the last note off for monophonic
+		// turn the last note off, falls back to the notes still held
 		monophonic.update(n3, false, availableNotes); 
+		assertEquals(n2, monophonic.getCurrentNoteOn());
+		
+		monophonic.update(n2, false, availableNotes); 
+		assertEquals(n1, monophonic.getCurrentNoteOn());
+		
+		// turn the last note off for monophonic
+		monophonic.update(n1, false, availableNotes); 
 		assertEquals(null, monophonic.getCurrentNoteOn());
 	}
 	
+	@Test
+	public void testMonophonicLowestPriority() {
+		Monophonic monophonic = new Monophonic("Lowest Note", false);
+		
+    	Note n1 = new Note(22,	'F',	true, 	2);
+		Note n2 = new Note(23,	'G',	false, 	2);
+		Note n3 = new Note(24,	'G',	true,	2);
+		
+		Note[] availableNotes = { n1, n2, n3};
+		
+		monophonic.update(n2, true, availableNotes); 
+		assertEquals(n2, monophonic.getCurrentNoteOn());
+		
+		// a higher note does not take over
+		monophonic.update(n3, true, availableNotes); 
+		assertEquals(n2, monophonic.getCurrentNoteOn());
+		
+		monophonic.update(n1, true, availableNotes); 
+		assertEquals(n1, monophonic.getCurrentNoteOn());
+		
+		// falls back to the lowest note still held
+		monophonic.update(n1, false, availableNotes); 
+		assertEquals(n2, monophonic.getCurrentNoteOn());
+		
+		// releasing a note that is not on changes nothing
+		monophonic.update(n3, false, availableNotes); 
+		assertEquals(n2, monophonic.getCurrentNoteOn());
+	}
+	
+	@Test
+	public void testMonophonicLegato() {
+		Monophonic monophonic = new Monophonic("Last Note", true);
+		final StringBuilder output = new StringBuilder();
+		monophonic.registerObserver(new Observer() {
+			@Override
+			public void update(Note note, Boolean noteOn) { }
+
+			@Override
+			public void update(Note note, Boolean noteOn, 
+					Note[] availableNotes) {
+				output.append(note.getKeyNumber()).append(noteOn ? "+" : "-");
+			}
+		});
+		
+    	Note n1 = new Note(22,	'F',	true, 	2);
+		Note n2 = new Note(23,	'G',	false, 	2);
+		
+		Note[] availableNotes = { n1, n2 };
+		
+		monophonic.update(n1, true, availableNotes); 
+		monophonic.update(n2, true, availableNotes); 
+		monophonic.update(n2, false, availableNotes); 
+		
+		// the new note is turned on before the old one is turned off
+		assertEquals("22+23+22-22+23-", output.toString());
+	}
+	
 }
@@ -0,0 +1,55 @@
+package engg2800g07;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import org.junit.Test;
+
+import processingblocks.NoteQueue;
+
+/**
+ * Tests the ordering and cancelling of the note queue
+ * @author Lisa
+ *
+ */
+public class NoteQueueTest {
+
+	@Test
+	public void testOrderAndCancel() {
+		NoteQueue queue = new NoteQueue(8);
+
+		queue.add(30);
+		queue.add(10);
+		queue.add(20);
+		queue.add(40);
+
+		// keys are only queued once
+		assertFalse(queue.add(10));
+
+		// cancel from the middle of the queue
+		queue.remove(20);
+		assertArrayEquals(new int[] { 30, 10, 40 }, queue.toArray());
+
+		assertEquals(30, queue.pollFirst());
+		assertEquals(40, queue.pollLast());
+		assertEquals(10, queue.pollFirst());
+		assertEquals(-1, queue.pollFirst());
+	}
+
+	@Test
+	public void testCompaction() {
+		NoteQueue queue = new NoteQueue(128);
+
+		// fill the ring with cancelled notes, keeping one note queued
+		queue.add(0);
+		for (int i = 0; i < 1000; i++) {
+			queue.add(1 + i % 100);
+			queue.remove(1 + i % 100);
+		}
+		queue.add(127);
+
+		assertEquals(2, queue.size());
+		assertArrayEquals(new int[] { 0, 127 }, queue.toArray());
+	}
+}
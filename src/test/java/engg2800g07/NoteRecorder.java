@@ -0,0 +1,34 @@
+package engg2800g07;
+
+import midiblocks.Observer;
+import scales.Note;
+
+/**
+ * Records the notes sent to it by a processing block, a chain or a graph, as
+ * the key number of each note followed by + for on or - for off
+ * @author Lisa
+ *
+ */
+class NoteRecorder implements Observer {
+
+	private final StringBuilder sent = new StringBuilder();
+
+	@Override
+	public void update(Note note, Boolean noteOn) { }
+
+	@Override
+	public void update(Note note, Boolean noteOn, Note[] availableNotes) {
+		sent.append(note.getKeyNumber()).append(noteOn ? "+ " : "- ");
+	}
+
+	/**
+	 * @return The notes recorded, eg. "29+ 29- "
+	 */
+	String getSent() {
+		return sent.toString();
+	}
+
+	void clear() {
+		sent.setLength(0);
+	}
+}
@@ -0,0 +1,79 @@
+package engg2800g07;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import processingblocks.NoteSet;
+
+/**
+ * Tests the ordering and searching of the held note set
+ * @author Lisa
+ *
+ */
+public class NoteSetTest {
+
+	@Test
+	public void testAddRemove() {
+		NoteSet set = new NoteSet();
+
+		assertTrue(set.add(25));
+		assertTrue(set.add(100));
+		assertFalse(set.add(25));
+		assertEquals(2, set.size());
+
+		assertTrue(set.remove(25));
+		assertFalse(set.remove(25));
+		assertFalse(set.contains(25));
+		assertTrue(set.contains(100));
+		assertEquals(1, set.size());
+	}
+
+	@Test
+	public void testOrdering() {
+		NoteSet set = new NoteSet();
+
+		// keys either side of the boundary between the two words
+		set.add(70);
+		set.add(3);
+		set.add(63);
+		set.add(64);
+
+		assertEquals(3, set.lowest());
+		assertEquals(70, set.highest());
+
+		assertEquals(3, set.get(0));
+		assertEquals(63, set.get(1));
+		assertEquals(64, set.get(2));
+		assertEquals(70, set.get(3));
+		assertEquals(-1, set.get(4));
+
+		assertEquals(2, set.indexOf(64));
+		assertEquals(-1, set.indexOf(65));
+
+		assertEquals(63, set.next(3));
+		assertEquals(64, set.next(63));
+		assertEquals(-1, set.next(70));
+		assertEquals(3, set.next(-1));
+
+		assertEquals(63, set.previous(64));
+		assertEquals(3, set.previous(63));
+		assertEquals(-1, set.previous(3));
+		assertEquals(70, set.previous(NoteSet.CAPACITY));
+	}
+
+	@Test
+	public void testBits() {
+		NoteSet set = new NoteSet();
+		set.add(3);
+		set.add(100);
+
+		NoteSet copy = new NoteSet();
+		copy.setBits(set.getLowBits(), set.getHighBits());
+		assertEquals(set, copy);
+		assertEquals(1L << 3, copy.getLowBits());
+		assertEquals(1L << 36, copy.getHighBits());
+	}
+}
@@ -0,0 +1,88 @@
+package engg2800g07;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import midiblocks.Observer;
+import midiblocks.ObserverList;
+import scales.Note;
+
+/**
+ * Tests the copy-on-write observers of a subject
+ * @author Lisa
+ *
+ */
+public class ObserverListTest {
+
+	/**
+	 * Records the keys of the notes it is sent
+	 */
+	private static class Recorder implements Observer {
+		private final StringBuilder output;
+		private final String name;
+
+		Recorder(StringBuilder output, String name) {
+			this.output = output;
+			this.name = name;
+		}
+
+		@Override
+		public void update(Note note, Boolean noteOn) {
+			output.append(name).append(note.getKeyNumber()).append(' ');
+		}
+
+		@Override
+		public void update(Note note, Boolean noteOn, Note[] availableNotes) {
+			update(note, noteOn);
+		}
+	}
+
+	@Test
+	public void testAddRemove() {
+		StringBuilder output = new StringBuilder();
+		ObserverList observers = new ObserverList();
+		Recorder a = new Recorder(output, "a");
+		Recorder b = new Recorder(output, "b");
+
+		observers.add(a);
+		observers.add(b);
+		observers.notifyObservers(new Note(28, 'C', false, 3), true);
+		assertEquals("a28 b28 ", output.toString());
+
+		assertTrue(observers.remove(a));
+		assertFalse(observers.remove(a));
+		observers.notifyObservers(new Note(30, 'D', false, 3), true, null);
+		assertEquals("a28 b28 b30 ", output.toString());
+
+		assertEquals(1, observers.clear().length);
+		assertTrue(observers.isEmpty());
+	}
+
+	@Test
+	public void testRemoveWhileNotifying() {
+		StringBuilder output = new StringBuilder();
+		ObserverList observers = new ObserverList();
+		Recorder b = new Recorder(output, "b");
+
+		// the first observer removes every observer as the note is sent, but
+		// the note still reaches the second
+		observers.add(new Observer() {
+			@Override
+			public void update(Note note, Boolean noteOn) {
+				observers.clear();
+			}
+
+			@Override
+			public void update(Note note, Boolean noteOn,
+					Note[] availableNotes) { }
+		});
+		observers.add(b);
+
+		observers.notifyObservers(new Note(28, 'C', false, 3), true);
+		observers.notifyObservers(new Note(30, 'D', false, 3), true);
+		assertEquals("b28 ", output.toString());
+	}
+}
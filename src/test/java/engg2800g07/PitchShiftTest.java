@@ -98,5 +98,20 @@ public class PitchShiftTest {
 		assertEquals(correctNote, pitchShift.getLastNoteSent());
 		
 	}
+	
+	@Test
+	public void pitchChangeWhileNoteOnTest() {
+		PitchShift pitchShift = new PitchShift(3);
+		
+		Note n1 = new Note(8, 'E', false, 1);
+		Note correctNote = new Note(13,	'A', false, 1);
+		
+		pitchShift.update(n1, true, availableNotes);
+		pitchShift.setPitch(-3);
+		
+		// the note off turns off the note that was turned on
+		pitchShift.update(n1, false, availableNotes);
+		assertEquals(correctNote, pitchShift.getLastNoteSent());
+	}
 
 }
@@ -0,0 +1,118 @@
+package engg2800g07;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+
+import org.junit.Test;
+
+import midiblocks.ChainSnapshot;
+import midiblocks.ProcessingBlockStack;
+import processingblocks.Chordify;
+import processingblocks.PitchShift;
+import processingblocks.ProcessingBlock;
+
+/**
+ * Tests the undo history of the processing block chain
+ * @author Lisa
+ *
+ */
+public class ProcessingBlockStackTest {
+
+	@Test
+	public void testUndoKeepsParameters() {
+		PitchShift pitchShift = new PitchShift(1);
+		LinkedList<ProcessingBlock> chain = 
+				new LinkedList<>(Arrays.asList(pitchShift, new Chordify()));
+		ChainSnapshot snapshot = ChainSnapshot.of(chain);
+		
+		ProcessingBlockStack history = 
+				new ProcessingBlockStack(ChainSnapshot.EMPTY);
+		
+		// change the pitch in place, after saving the state
+		history.push(snapshot);
+		pitchShift.setPitch(5);
+		snapshot = snapshot.changedFrom(chain, 0);
+		
+		// then remove a block
+		history.push(snapshot);
+		chain.removeLast();
+		snapshot = snapshot.changedFrom(chain, 1);
+		
+		ChainSnapshot undone = history.pop();
+		assertEquals(2, undone.size());
+		assertEquals("5", undone.getRest().getLast().getParameter1());
+		
+		undone = history.pop();
+		assertEquals("Pitchshift", undone.getRest().getLast().getName());
+		assertEquals("1", undone.getRest().getLast().getParameter1());
+		
+		// nothing left to undo, back to the empty chain
+		assertEquals(0, history.pop().size());
+	}
+	
+	@Test
+	public void testAppendSharesChain() {
+		LinkedList<ProcessingBlock> chain = new LinkedList<>();
+		ChainSnapshot snapshot = ChainSnapshot.EMPTY;
+		
+		// each block added to the end only adds one node
+		for (int i = 0; i < 100; i++) {
+			PitchShift block = new PitchShift(i);
+			chain.add(block);
+			
+			ChainSnapshot appended = snapshot.append(block);
+			assertSame(snapshot, appended.getRest());
+			assertEquals(1, appended.countNodesNotIn(snapshot));
+			snapshot = appended;
+		}
+		
+		assertEquals(100, snapshot.size());
+		assertEquals("99", snapshot.getLast().getParameter1());
+	}
+	
+	@Test
+	public void testUndoKeepsUnchangedBlocks() {
+		LinkedList<ProcessingBlock> chain = new LinkedList<>();
+		for (int i = 0; i < 100; i++) {
+			chain.add(new PitchShift(i));
+		}
+		ChainSnapshot before = ChainSnapshot.of(chain);
+		
+		// undoing an added block keeps every block before it
+		PitchShift added = new PitchShift(100);
+		chain.add(added);
+		ChainSnapshot after = before.append(added);
+		assertEquals(100, after.sharedSize(before));
+		assertEquals(0, before.restoreFrom(after.sharedSize(before)).size());
+		
+		// undoing a change keeps the blocks before the changed block
+		((PitchShift) chain.get(40)).setPitch(0);
+		ChainSnapshot changed = after.changedFrom(chain, 40);
+		assertEquals(40, changed.sharedSize(after));
+		assertEquals(40, after.sharedSize(changed));
+	}
+	
+	@Test
+	public void testChangeSharesBlocksBefore() {
+		LinkedList<ProcessingBlock> chain = new LinkedList<>(Arrays.asList(
+				new PitchShift(1), new PitchShift(2), new Chordify(), 
+				new PitchShift(3)));
+		ChainSnapshot first = ChainSnapshot.of(chain);
+		
+		// changing the second block keeps the node of the first block
+		((PitchShift) chain.get(1)).setPitch(4);
+		ChainSnapshot second = first.changedFrom(chain, 1);
+		assertSame(first.getRest().getRest().getRest(), 
+				second.getRest().getRest().getRest());
+		assertEquals(3, second.countNodesNotIn(first));
+		assertEquals("4", second.getRest().getRest().getLast().getParameter1());
+		
+		// removing the last block keeps all the others
+		chain.removeLast();
+		ChainSnapshot third = second.changedFrom(chain, 3);
+		assertSame(second.getRest(), third);
+	}
+}
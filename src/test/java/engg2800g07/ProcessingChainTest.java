@@ -0,0 +1,114 @@
+package engg2800g07;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import processingblocks.Chordify;
+import processingblocks.Monophonic;
+import processingblocks.PitchShift;
+import processingblocks.ProcessingBlock;
+import processingblocks.ProcessingChain;
+import scales.Note;
+import scales.NoteDictionary;
+
+/**
+ * Tests that the processing chain sends the same notes, in the same order,
+ * as blocks observing each other
+ * @author Lisa
+ *
+ */
+public class ProcessingChainTest {
+
+	private final NoteDictionary noteDictionary = new NoteDictionary();
+
+	private final String[] notes = { "C#/Db", "D#/Eb", "E", "F#/Gb", "G#/Ab",
+			"A", "C" };
+
+	private final Note[] availableNotes =
+			noteDictionary.filterAvailableNotes(notes);
+
+	private List<ProcessingBlock> makeBlocks() {
+		return Arrays.asList(new Chordify(), new PitchShift(1),
+				new Monophonic());
+	}
+
+	/**
+	 * Sends every key on, then every key off
+	 */
+	private void playAllKeys(ProcessingBlock first, ProcessingChain chain) {
+		for (int key = 1; key <= 88; key++) {
+			Note note = noteDictionary.getNote(key);
+			if (chain == null) {
+				first.update(note, true, availableNotes);
+			} else {
+				chain.process(note, true, availableNotes);
+			}
+		}
+		for (int key = 1; key <= 88; key++) {
+			Note note = noteDictionary.getNote(key);
+			if (chain == null) {
+				first.update(note, false, availableNotes);
+			} else {
+				chain.process(note, false, availableNotes);
+			}
+		}
+	}
+
+	@Test
+	public void testChainMatchesObservers() {
+		// the blocks observing each other
+		List<ProcessingBlock> observed = makeBlocks();
+		observed.get(0).registerObserver(observed.get(1));
+		observed.get(1).registerObserver(observed.get(2));
+		NoteRecorder expected = new NoteRecorder();
+		observed.get(2).registerObserver(expected);
+		playAllKeys(observed.get(0), null);
+
+		// the same blocks in a processing chain
+		List<ProcessingBlock> blocks = makeBlocks();
+		blocks.get(0).registerObserver(blocks.get(1));
+		blocks.get(1).registerObserver(blocks.get(2));
+		NoteRecorder recorder = new NoteRecorder();
+		blocks.get(2).registerObserver(recorder);
+
+		ProcessingChain chain = new ProcessingChain(blocks);
+		chain.connect();
+		chain.setProfiling(true);
+		playAllKeys(null, chain);
+
+		assertTrue(!expected.getSent().isEmpty());
+		assertEquals(expected.getSent(), recorder.getSent());
+
+		// every key reached the chordify block, and each chord reached the
+		// blocks after it
+		assertEquals(176, chain.getStageNotes(0));
+		assertTrue(chain.getStageNotes(1) > 176);
+		assertEquals(chain.getStageNotes(1), chain.getStageNotes(2));
+	}
+
+	@Test
+	public void testNotesSentOutsideRun() {
+		List<ProcessingBlock> blocks = makeBlocks();
+		NoteRecorder recorder = new NoteRecorder();
+		blocks.get(2).registerObserver(recorder);
+
+		ProcessingChain chain = new ProcessingChain(blocks);
+		chain.connect();
+
+		// a note sent by the first block itself, as the controller does,
+		// still reaches the end of the chain
+		blocks.get(0).update(noteDictionary.getNote(20), true,
+				availableNotes);
+		String sent = recorder.getSent();
+		assertTrue(sent.endsWith("+ "));
+
+		// releasing the chord sends note offs through the rest of the chain
+		blocks.get(0).releaseNotes();
+		assertTrue(recorder.getSent().endsWith("- "));
+	}
+}
@@ -0,0 +1,168 @@
+package engg2800g07;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import midiblocks.TickBus;
+import processingblocks.Arpeggiator;
+import processingblocks.PitchShift;
+import processingblocks.ProcessingBlock;
+import processingblocks.ProcessingGraph;
+import scales.Note;
+import scales.NoteDictionary;
+
+/**
+ * Tests the routing of notes through split, merge and zone split nodes of a
+ * processing graph
+ * @author Lisa
+ *
+ */
+public class ProcessingGraphTest {
+
+	private final NoteDictionary noteDictionary = new NoteDictionary();
+
+	private final String[] notes = { "C#/Db", "D#/Eb", "E", "F#/Gb", "G#/Ab",
+			"A", "C" };
+
+	private final Note[] availableNotes =
+			noteDictionary.filterAvailableNotes(notes);
+
+	private void play(ProcessingGraph graph, int key) {
+		Note note = noteDictionary.getNote(key);
+		graph.update(note, true, availableNotes);
+		graph.update(note, false, availableNotes);
+	}
+
+	@Test
+	public void testZoneSplit() {
+		ProcessingGraph graph = new ProcessingGraph();
+		int zones = graph.addZoneSplit(40);
+		int lower = graph.addBlock(new PitchShift(1));
+		int upper = graph.addBlock(new PitchShift(-1));
+		int merge = graph.addMerge();
+
+		graph.connect(ProcessingGraph.INPUT, zones);
+		graph.connect(zones, ProcessingGraph.LOWER_ZONE, lower);
+		graph.connect(zones, ProcessingGraph.UPPER_ZONE, upper);
+		graph.connect(lower, merge);
+		graph.connect(upper, merge);
+		graph.connect(merge, ProcessingGraph.OUTPUT);
+		graph.compile();
+
+		NoteRecorder recorder = new NoteRecorder();
+		graph.registerObserver(recorder);
+
+		// key 29 is shifted up a step of the scale, key 49 down a step
+		play(graph, 29);
+		play(graph, 49);
+		assertEquals("31+ 31- 48+ 48- ", recorder.getSent());
+	}
+
+	@Test
+	public void testSplitAndMerge() {
+		ProcessingGraph graph = new ProcessingGraph();
+		int split = graph.addSplit();
+		int first = graph.addBlock(new PitchShift(0));
+		int second = graph.addBlock(new PitchShift(0));
+		int merge = graph.addMerge();
+
+		// added out of order, to check the plan is sorted
+		graph.connect(merge, ProcessingGraph.OUTPUT);
+		graph.connect(first, merge);
+		graph.connect(second, merge);
+		graph.connect(split, first);
+		graph.connect(split, second);
+		graph.connect(ProcessingGraph.INPUT, split);
+		graph.compile();
+
+		NoteRecorder recorder = new NoteRecorder();
+		graph.registerObserver(recorder);
+
+		// both branches send the same key, which is only turned on once, and
+		// turned off once both branches have turned it off
+		play(graph, 29);
+		assertEquals("29+ 29- ", recorder.getSent());
+	}
+
+	@Test
+	public void testParametersMakeSameGraph() {
+		ProcessingGraph graph = new ProcessingGraph();
+		int zones = graph.addZoneSplit(40);
+		int lower = graph.addBlock(new PitchShift(1));
+		int upper = graph.addBlock(new PitchShift(-1));
+		int merge = graph.addMerge();
+		graph.connect(ProcessingGraph.INPUT, zones);
+		graph.connect(zones, ProcessingGraph.LOWER_ZONE, lower);
+		graph.connect(zones, ProcessingGraph.UPPER_ZONE, upper);
+		graph.connect(lower, merge);
+		graph.connect(upper, merge);
+		graph.connect(merge, ProcessingGraph.OUTPUT);
+		graph.compile();
+
+		String[] parameters = graph.getParameters().split(",", 2);
+		assertEquals("Zone%20Split:40 Block:Pitchshift:1:NoParams "
+				+ "Block:Pitchshift:-1:NoParams Merge", parameters[0]);
+
+		ProcessingGraph copy = ProcessingGraph.parse(parameters[0],
+				parameters[1], fields -> new PitchShift(
+						Integer.parseInt(fields[1])));
+		assertEquals(graph.getParameters(), copy.getParameters());
+
+		NoteRecorder recorder = new NoteRecorder();
+		copy.registerObserver(recorder);
+		play(copy, 29);
+		play(copy, 49);
+		assertEquals("31+ 31- 48+ 48- ", recorder.getSent());
+	}
+
+	@Test
+	public void testEmptyGraphParameters() {
+		ProcessingGraph graph = new ProcessingGraph();
+		assertEquals("NoParams,NoParams", graph.getParameters());
+
+		ProcessingGraph copy = ProcessingGraph.parse("NoParams", "NoParams",
+				fields -> null);
+		assertEquals(2, copy.getNodeCount());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testBadParametersRejected() {
+		ProcessingGraph.parse("Split", "0:0:7", fields -> null);
+	}
+
+	@Test
+	public void testLoopRejected() {
+		ProcessingGraph graph = new ProcessingGraph();
+		int first = graph.addBlock(new PitchShift(1));
+		int second = graph.addBlock(new PitchShift(1));
+		graph.connect(ProcessingGraph.INPUT, first);
+		graph.connect(first, second);
+		graph.connect(second, first);
+
+		try {
+			graph.compile();
+			fail();
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testClockedBlocksInGraph() {
+		ProcessingGraph graph = new ProcessingGraph();
+		int arpeggiator = graph.addBlock(new Arpeggiator("Ascending Scale"));
+		graph.connect(ProcessingGraph.INPUT, arpeggiator);
+		graph.connect(arpeggiator, ProcessingGraph.OUTPUT);
+		graph.compile();
+
+		// the tick bus steps the blocks inside the graph
+		TickBus tickBus = new TickBus();
+		tickBus.subscribeChain(Arrays.asList((ProcessingBlock) graph,
+				new PitchShift(1)));
+		assertEquals(1, tickBus.getSubscriberCount());
+	}
+}
@@ -0,0 +1,127 @@
+package engg2800g07;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.LinkedList;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import midiblocks.Subdivision;
+import midiblocks.TickBus;
+import processingblocks.Arpeggiator;
+import processingblocks.Chordify;
+import processingblocks.Gates;
+import processingblocks.ProcessingBlock;
+import scales.Note;
+
+/**
+ * Tests that the tick bus steps clock driven blocks at their subdivision
+ * @author Lisa
+ *
+ */
+public class TickBusTest {
+
+	private Note n1, n2;
+	private final Note[] availableNotes = { n1, n2 };
+
+	private final static String ASCENDING = "Ascending Scale";
+	private final static String QUEUE = "Queue";
+
+	@Before
+	public void beforeEach() throws Exception {
+		n1 = new Note(22,	'F',	true, 	2);
+		n2 = new Note(23,	'G',	false, 	2);
+	}
+
+	@Test
+	public void testSubscribeChain() {
+		TickBus tickBus = new TickBus();
+
+		LinkedList<ProcessingBlock> chain = new LinkedList<>();
+		chain.add(new Arpeggiator(ASCENDING));
+		chain.add(new Chordify());
+		chain.add(new Gates(QUEUE, 1));
+
+		tickBus.subscribeChain(chain);
+
+		// only the arpeggiator and the gates are driven by the clock
+		assertEquals(2, tickBus.getSubscriberCount());
+
+		chain.clear();
+		tickBus.subscribeChain(chain);
+		assertEquals(0, tickBus.getSubscriberCount());
+	}
+
+	@Test
+	public void testSubdivisionStepping() {
+		TickBus tickBus = new TickBus();
+
+		Arpeggiator arpeggiator = new Arpeggiator(ASCENDING);
+		arpeggiator.setSubdivision(Subdivision.EIGHTH);
+		arpeggiator.update(n1, true, availableNotes);
+		arpeggiator.update(n2, true, availableNotes);
+
+		tickBus.subscribe(arpeggiator, arpeggiator.getSubdivision());
+
+		// the first step is on the first tick
+		tickBus.tick(0);
+		assertEquals(n1, arpeggiator.getLastArpeggiatedNote());
+
+		// no step until an eighth note has passed
+		for (int tick = 1; tick < 12; tick++) {
+			tickBus.tick(tick);
+			assertEquals(n1, arpeggiator.getLastArpeggiatedNote());
+		}
+
+		tickBus.tick(12);
+		assertEquals(n2, arpeggiator.getLastArpeggiatedNote());
+
+		tickBus.unsubscribe(arpeggiator);
+		tickBus.tick(24);
+		assertEquals(n2, arpeggiator.getLastArpeggiatedNote());
+	}
+
+	@Test
+	public void testSubdivisionChangeApplies() {
+		TickBus tickBus = new TickBus();
+
+		Arpeggiator arpeggiator = new Arpeggiator(ASCENDING);
+		arpeggiator.update(n1, true, availableNotes);
+		arpeggiator.update(n2, true, availableNotes);
+
+		LinkedList<ProcessingBlock> chain = new LinkedList<>();
+		chain.add(arpeggiator);
+		tickBus.subscribeChain(chain);
+
+		tickBus.tick(0);
+		assertEquals(n1, arpeggiator.getLastArpeggiatedNote());
+
+		// a change of subdivision applies without subscribing again
+		arpeggiator.setSubdivision(Subdivision.SIXTEENTH);
+		tickBus.tick(6);
+		assertEquals(n2, arpeggiator.getLastArpeggiatedNote());
+	}
+
+	@Test
+	public void testSubdivisionParameter() {
+		Gates gates = new Gates(QUEUE, 1);
+		assertEquals("Queue,1.0", gates.getParameters());
+
+		gates.setSubdivision(Subdivision.EIGHTH_TRIPLET);
+		assertEquals("Queue,1.0;rate=Eighth triplet", gates.getParameters());
+
+		// the subdivision is read back with the other parameters
+		Gates loaded = new Gates(QUEUE, 1);
+		loaded.setParameters("Queue", "1.0;rate=Eighth triplet");
+		assertEquals(Subdivision.EIGHTH_TRIPLET, loaded.getSubdivision());
+		assertEquals(1.0, loaded.getNotesPerTick(), 0);
+
+		Arpeggiator arpeggiator = new Arpeggiator(ASCENDING);
+		arpeggiator.setParameters(ASCENDING, "octaves=2;rate=Sixteenth");
+		assertEquals(Subdivision.SIXTEENTH, arpeggiator.getSubdivision());
+		assertEquals(2, arpeggiator.getOctaves());
+		assertEquals("Ascending Scale,octaves=2;rate=Sixteenth",
+				arpeggiator.getParameters());
+	}
+}
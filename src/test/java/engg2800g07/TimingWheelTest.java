@@ -0,0 +1,114 @@
+package engg2800g07;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import midiblocks.TimedEvent;
+import midiblocks.TimingWheel;
+
+/**
+ * Tests the scheduling and cancelling of timers on the timing wheel
+ * @author Lisa
+ *
+ */
+public class TimingWheelTest {
+
+	private TimingWheel timingWheel;
+
+	// The keys of the events that have expired, and the tick they expired on
+	private ArrayList<Integer> expiredKeys;
+	private ArrayList<Long> expiredTicks;
+
+	private final TimedEvent recorder = key -> {
+		expiredKeys.add(key);
+		expiredTicks.add(timingWheel.getCurrentTick());
+	};
+
+	@Before
+	public void beforeEach() throws Exception {
+		timingWheel = new TimingWheel(64);
+		expiredKeys = new ArrayList<>();
+		expiredTicks = new ArrayList<>();
+	}
+
+	private void advance(long ticks) {
+		for (long i = 0; i < ticks; i++) {
+			timingWheel.tick(i);
+		}
+	}
+
+	@Test
+	public void testExpiry() {
+		timingWheel.schedule(3, recorder, 40);
+		timingWheel.schedule(1, recorder, 41);
+		assertEquals(2, timingWheel.getTimersScheduled());
+
+		advance(1);
+		assertEquals(1, expiredKeys.size());
+		assertEquals(41, (int) expiredKeys.get(0));
+
+		advance(1);
+		assertEquals(1, expiredKeys.size());
+
+		advance(1);
+		assertEquals(2, expiredKeys.size());
+		assertEquals(40, (int) expiredKeys.get(1));
+		assertEquals(0, timingWheel.getTimersScheduled());
+	}
+
+	@Test
+	public void testCascadingLongDelays() {
+		// delays that start on the higher levels of the wheel
+		long[] delays = { 255, 256, 300, 16383, 16384, 20000, 100000 };
+
+		for (int i = 0; i < delays.length; i++) {
+			timingWheel.schedule(delays[i], recorder, i);
+		}
+
+		advance(100000);
+
+		assertEquals(delays.length, expiredKeys.size());
+		for (int i = 0; i < delays.length; i++) {
+			assertEquals(i, (int) expiredKeys.get(i));
+			// the wheel has moved on by one after firing the timer
+			assertEquals(delays[i], (long) expiredTicks.get(i));
+		}
+	}
+
+	@Test
+	public void testCancel() {
+		int handle = timingWheel.schedule(10, recorder, 40);
+		timingWheel.schedule(10, recorder, 41);
+
+		assertTrue(timingWheel.cancel(handle));
+
+		// a handle can only be cancelled once
+		assertFalse(timingWheel.cancel(handle));
+
+		advance(10);
+		assertEquals(1, expiredKeys.size());
+		assertEquals(41, (int) expiredKeys.get(0));
+
+		// the timer has expired, so it can no longer be cancelled
+		assertFalse(timingWheel.cancel(handle));
+	}
+
+	@Test
+	public void testFullWheel() {
+		for (int i = 0; i < 64; i++) {
+			assertTrue(timingWheel.schedule(5, recorder, i) >= 0);
+		}
+
+		assertEquals(-1, timingWheel.schedule(5, recorder, 64));
+
+		timingWheel.cancelAll(recorder);
+		assertEquals(0, timingWheel.getTimersScheduled());
+	}
+
+}